@@ -5,32 +5,204 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.node.ArrayNode;
 import com.fasterxml.jackson.databind.node.ObjectNode;
 import org.java_websocket.client.WebSocketClient;
+import org.java_websocket.drafts.Draft_6455;
+import org.java_websocket.exceptions.WebsocketNotConnectedException;
+import org.java_websocket.extensions.IExtension;
 import org.java_websocket.handshake.ServerHandshake;
+import org.java_websocket.protocols.Protocol;
 import org.msgpack.core.MessagePack;
 import org.msgpack.core.MessagePacker;
 import org.msgpack.core.MessageUnpacker;
 
 import java.io.ByteArrayOutputStream;
+import java.io.File;
 import java.io.IOException;
 import java.net.URI;
 import java.nio.ByteBuffer;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class NT4Client extends WebSocketClient {
 
     private final ObjectMapper objectMapper = new ObjectMapper();
     private final Map<String, Integer> topicIdMap = new HashMap<>();
     private int nextTopicId = 1;
+    private NetworkTablesDeflateExtension m_compression = null;
+    /**
+     * Map of topic IDs announced by the server to their names
+     */
+    private final Map<Long, String> m_announcedTopics = new ConcurrentHashMap<>();
+    /**
+     * Listener receiving every decoded value, null if none was set
+     */
+    private volatile NT4ValueListener m_valueListener = null;
+    private final AtomicInteger m_nextSubUID = new AtomicInteger(1);
+    /**
+     * Transport carrying the frames when the client doesn't connect with a WebSocket, null for WebSocket clients
+     */
+    private final NT4ClientTransport m_transport;
 
     public NT4Client(URI serverUri) {
         super(serverUri);
+        this.m_transport = null;
 
+        addShutdownHook();
+    }
+
+    /**
+     * Constructs a client that negotiates the NT4 subprotocol and optionally permessage-deflate.
+     *
+     * @param serverUri   the URI of the NT4 server
+     * @param compression the compression settings for frames sent by the client, or null to disable compression
+     */
+    public NT4Client(URI serverUri, NetworkTablesDeflateExtension compression) {
+        super(serverUri, createDraft(compression));
+        this.m_transport = null;
+        this.m_compression = compression;
+
+        addShutdownHook();
+    }
+
+    /**
+     * Constructs a client connecting through shared memory to a server on the same host, which must accept shared
+     * memory clients in the directory with {@link NT4Server#startSharedMemory(File)}. The same frames as over a
+     * WebSocket are exchanged through memory-mapped ring buffers, without the WebSocket framing and the TCP stack.
+     *
+     * @param sharedMemoryDirectory the directory watched by the server
+     * @throws UnsupportedOperationException if the runtime has no memory fences to order the shared accesses
+     */
+    public NT4Client(File sharedMemoryDirectory) {
+        this(new NT4SharedMemoryClientTransport(sharedMemoryDirectory));
+
+        addShutdownHook();
+    }
+
+    /**
+     * Constructs a client whose frames are carried by a transport other than a WebSocket.
+     *
+     * @param transport the transport
+     */
+    NT4Client(NT4ClientTransport transport) {
+        super(transport.getURI());
+        this.m_transport = transport;
+    }
+
+    private static Draft_6455 createDraft(NetworkTablesDeflateExtension compression) {
+        List<IExtension> extensions = compression == null ? Collections.emptyList() : Collections.singletonList(compression);
+        return new Draft_6455(extensions, Collections.singletonList(new Protocol("v4.1.networktables.first.wpi.edu")));
+    }
+
+    private void addShutdownHook() {
         Runtime.getRuntime().addShutdownHook(new Thread(() -> {
             this.close(1000, "Closed connections");
         }));
     }
 
+    /**
+     * Returns the permessage-deflate extension requested from the server.
+     *
+     * @return the compression extension, or null if compression is disabled
+     */
+    public NetworkTablesDeflateExtension getCompression() {
+        return m_compression;
+    }
+
+    /**
+     * @return true if the client connects through shared memory instead of a WebSocket
+     */
+    public boolean isSharedMemory() {
+        return m_transport instanceof NT4SharedMemoryClientTransport;
+    }
+
+    @Override
+    public void connect() {
+        if (m_transport == null) {
+            super.connect();
+            return;
+        }
+        try {
+            m_transport.connect(this);
+        } catch (IOException e) {
+            onError(e);
+        }
+    }
+
+    @Override
+    public boolean connectBlocking() throws InterruptedException {
+        if (m_transport == null) return super.connectBlocking();
+        connect();
+        return isOpen();
+    }
+
+    @Override
+    public boolean connectBlocking(long timeout, TimeUnit timeUnit) throws InterruptedException {
+        if (m_transport == null) return super.connectBlocking(timeout, timeUnit);
+        connect();
+        return isOpen();
+    }
+
+    @Override
+    public void send(String text) {
+        if (m_transport == null) {
+            super.send(text);
+        } else if (!m_transport.sendText(text)) {
+            throw new WebsocketNotConnectedException();
+        }
+    }
+
+    @Override
+    public void send(ByteBuffer bytes) {
+        if (m_transport == null) {
+            super.send(bytes);
+            return;
+        }
+        if (!m_transport.sendBinary(bytes)) throw new WebsocketNotConnectedException();
+        bytes.position(bytes.limit());
+    }
+
+    @Override
+    public void send(byte[] data) {
+        if (m_transport == null) {
+            super.send(data);
+        } else if (!m_transport.sendBinary(ByteBuffer.wrap(data))) {
+            throw new WebsocketNotConnectedException();
+        }
+    }
+
+    @Override
+    public boolean isOpen() {
+        return m_transport == null ? super.isOpen() : m_transport.isOpen();
+    }
+
+    @Override
+    public boolean isClosed() {
+        return m_transport == null ? super.isClosed() : m_transport.isClosed();
+    }
+
+    @Override
+    public void close() {
+        close(1000, "");
+    }
+
+    @Override
+    public void close(int code) {
+        close(code, "");
+    }
+
+    @Override
+    public void close(int code, String message) {
+        if (m_transport == null) {
+            super.close(code, message);
+        } else {
+            m_transport.close();
+        }
+    }
+
     @Override
     public void onOpen(ServerHandshake handshakedata) {
 //        System.out.println("Connected to server");
@@ -38,6 +210,7 @@ public class NT4Client extends WebSocketClient {
 
     @Override
     public void onMessage(String message) {
+        if (!message.startsWith("[")) return; // Not an NT4 control message, e.g. the server's protocol greeting
         try {
             JsonNode data = objectMapper.readTree(message);
 //            System.out.println(message);
@@ -57,6 +230,57 @@ public class NT4Client extends WebSocketClient {
     }
 
     void processMessage(JsonNode node) {
+        for (JsonNode message : node) {
+            JsonNode params = message.get("params");
+            if (params == null || !"announce".equals(message.path("method").asText())) continue;
+
+            m_announcedTopics.put(params.get("id").asLong(), params.get("name").asText());
+        }
+    }
+
+    /**
+     * Sets the listener receiving every value sent by the server.
+     *
+     * @param listener the listener, or null to stop listening
+     */
+    public void setValueListener(NT4ValueListener listener) {
+        this.m_valueListener = listener;
+    }
+
+    /**
+     * Subscribes to a topic, the server sends its current value and every following update.
+     *
+     * @param topic the topic name
+     */
+    public void subscribe(String topic) {
+        subscribe(topic, objectMapper.createObjectNode());
+    }
+
+    /**
+     * Subscribes to a topic, the server sends its current value then one aggregate of its values per period.
+     *
+     * @param topic         the topic name
+     * @param periodSeconds the period (in seconds) between two aggregates
+     * @param downsampling  the aggregate of the values written during a period
+     */
+    public void subscribe(String topic, double periodSeconds, NetworkTablesDownsampling downsampling) {
+        ObjectNode options = objectMapper.createObjectNode();
+        options.put("periodic", periodSeconds);
+        options.put("downsample", downsampling.getOption());
+        subscribe(topic, options);
+    }
+
+    private void subscribe(String topic, ObjectNode options) {
+        ObjectNode message = objectMapper.createObjectNode();
+        message.put("method", "subscribe");
+        ObjectNode params = objectMapper.createObjectNode();
+        params.putArray("topics").add(topic.startsWith("/") ? topic : "/" + topic);
+        params.put("subuid", m_nextSubUID.getAndIncrement());
+        params.set("options", options);
+        message.set("params", params);
+        ArrayNode messageArray = objectMapper.createArrayNode();
+        messageArray.add(message);
+        send(messageArray.toString());
     }
 
     @Override
@@ -70,7 +294,11 @@ public class NT4Client extends WebSocketClient {
     }
 
     public void publish(String topic, Object value) {
+        Integer knownId = topicIdMap.get(topic);
         int topicId = topicIdMap.computeIfAbsent(topic, k -> nextTopicId++);
+        if (knownId == null) {
+            announcePublisher(topic, topicId, NetworkTablesValueType.getFromId(determineDataType(value)).typeString);
+        }
         try {
             ByteBuffer encodedMessage = encodeNT4Message(System.currentTimeMillis(), topicId, topicId, determineDataType(value), value);
             send(encodedMessage);
@@ -79,6 +307,20 @@ public class NT4Client extends WebSocketClient {
         }
     }
 
+    private void announcePublisher(String topic, int pubUID, String type) {
+        ObjectNode message = objectMapper.createObjectNode();
+        message.put("method", "publish");
+        ObjectNode params = objectMapper.createObjectNode();
+        params.put("name", topic.startsWith("/") ? topic : "/" + topic);
+        params.put("pubuid", pubUID);
+        params.put("type", type);
+        params.set("properties", objectMapper.createObjectNode());
+        message.set("params", params);
+        ArrayNode messageArray = objectMapper.createArrayNode();
+        messageArray.add(message);
+        send(messageArray.toString());
+    }
+
     private void publishEntry(NetworkTablesEntry entry) {
         ObjectNode message = objectMapper.createObjectNode();
         message.put("method", "publish");
@@ -121,9 +363,7 @@ public class NT4Client extends WebSocketClient {
                 packer.packString((String) dataValue);
                 break;
             case 5: // binary
-                byte[] binaryData = (byte[]) dataValue;
-                packer.packBinaryHeader(binaryData.length);
-                packer.writePayload(binaryData);
+                NT4Server.packRaw(packer, dataValue);
                 break;
             case 16: // boolean array
                 boolean[] boolArray = (boolean[]) dataValue;
@@ -174,7 +414,7 @@ public class NT4Client extends WebSocketClient {
         if (value instanceof Integer) return 2;
         if (value instanceof Float) return 3;
         if (value instanceof String) return 4;
-        if (value instanceof byte[]) return 5;
+        if (value instanceof byte[] || value instanceof ByteBuffer) return 5;
         if (value instanceof boolean[]) return 16;
         if (value instanceof double[]) return 17;
         if (value instanceof int[]) return 18;
@@ -213,9 +453,9 @@ public class NT4Client extends WebSocketClient {
                         dataValue = unpacker.unpackString();
                         break;
                     case 5: // binary
+                        // A read-only view of the payload inside the received frame, the bytes aren't copied
                         int binarySize = unpacker.unpackBinaryHeader();
-                        byte[] binaryData = unpacker.readPayload(binarySize);
-                        dataValue = binaryData;
+                        dataValue = unpacker.readPayloadAsReference(binarySize).sliceAsByteBuffer().asReadOnlyBuffer();
                         break;
                     case 16: // boolean array
                         int boolArraySize = unpacker.unpackArrayHeader();
@@ -267,7 +507,10 @@ public class NT4Client extends WebSocketClient {
     }
 
     private void processMessage(long topicId, long timestamp, int dataType, Object dataValue) {
-        // Implement message processing logic here
+        NT4ValueListener listener = m_valueListener;
+        if (listener != null) {
+            listener.apply(m_announcedTopics.get(topicId), timestamp, dataValue);
+        }
 //        System.out.println("Received data - Topic ID: " + topicId + ", Timestamp: " + timestamp + ", Data Type: " + dataType + ", Data Value: " + dataValue);
     }
 }
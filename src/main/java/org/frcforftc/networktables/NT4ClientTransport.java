@@ -0,0 +1,56 @@
+package org.frcforftc.networktables;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.ByteBuffer;
+
+/**
+ * Transport carrying the frames of an {@link NT4Client} that doesn't connect with a WebSocket, see
+ * {@link NT4SharedMemoryClientTransport} and {@link NetworkTablesLoopback}. Frames received from the server are
+ * handed to the {@code onMessage} methods of the client, like frames read from its WebSocket.
+ */
+interface NT4ClientTransport {
+    /**
+     * @return the URI reported by the client
+     */
+    URI getURI();
+
+    /**
+     * Connects the client, calling its {@link NT4Client#onOpen} once connected.
+     *
+     * @param client the client
+     * @throws IOException if the connection can't be set up
+     */
+    void connect(NT4Client client) throws IOException;
+
+    /**
+     * Sends a text frame.
+     *
+     * @param text the frame text
+     * @return false if the transport is closed
+     */
+    boolean sendText(String text);
+
+    /**
+     * Sends a binary frame, copying it if it is kept.
+     *
+     * @param payload the frame payload, from its position to its limit. Its position is left unchanged.
+     * @return false if the transport is closed or the frame was dropped
+     */
+    boolean sendBinary(ByteBuffer payload);
+
+    /**
+     * @return true once connected and until closed
+     */
+    boolean isOpen();
+
+    /**
+     * @return true once closed by either side
+     */
+    boolean isClosed();
+
+    /**
+     * Closes the connection, the client's {@link NT4Client#onClose} is called once it is closed.
+     */
+    void close();
+}
@@ -0,0 +1,218 @@
+package org.frcforftc.networktables;
+
+import org.java_websocket.WebSocket;
+import org.java_websocket.WebSocketImpl;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Server side state of a single client connection, attached to its {@link WebSocket}.
+ */
+public class NT4Connection {
+    /**
+     * The WebSocket of the connection
+     */
+    private final WebSocket m_socket;
+    /**
+     * The NT4 subprotocol the client connected with
+     */
+    private final String m_protocol;
+    private final AtomicLong m_bytesSent = new AtomicLong();
+    private final AtomicLong m_framesSent = new AtomicLong();
+    private final AtomicLong m_bytesReceived = new AtomicLong();
+    private final AtomicLong m_framesReceived = new AtomicLong();
+    /**
+     * Map of subscription UIDs to the subscriptions of the client, which may cover the same topics. Subscriptions
+     * keep the names and prefixes the client sent, so they also cover topics created later
+     */
+    private final Map<Integer, Subscription> m_subscriptions = new ConcurrentHashMap<>();
+    /**
+     * Publishers of the client by publisher UID, which are only unique per client
+     */
+    private final NT4Publishers m_publishers = new NT4Publishers();
+
+    /**
+     * Constructs the state of a connection.
+     *
+     * @param socket   the WebSocket of the connection
+     * @param protocol the NT4 subprotocol the client connected with
+     */
+    NT4Connection(WebSocket socket, String protocol) {
+        this.m_socket = socket;
+        this.m_protocol = protocol;
+    }
+
+    /**
+     * Retrieves the state attached to a WebSocket.
+     *
+     * @param socket the WebSocket of the connection
+     * @return the connection state, or null if the client did not negotiate an NT4 subprotocol
+     */
+    static NT4Connection of(WebSocket socket) {
+        Object attachment = socket.getAttachment();
+        return attachment instanceof NT4Connection ? (NT4Connection) attachment : null;
+    }
+
+    /**
+     * @return the WebSocket of the connection
+     */
+    public WebSocket getSocket() {
+        return m_socket;
+    }
+
+    /**
+     * @return the NT4 subprotocol the client connected with
+     */
+    public String getProtocol() {
+        return m_protocol;
+    }
+
+    /**
+     * @return a readable name for the connection, its remote address or the name of its local transport
+     */
+    public String getName() {
+        if (m_socket instanceof NT4LocalConnection) return ((NT4LocalConnection) m_socket).getName();
+        return String.valueOf(m_socket.getRemoteSocketAddress());
+    }
+
+    /**
+     * @return the number of bytes sent to the client, before framing and compression
+     */
+    public long getBytesSent() {
+        return m_bytesSent.get();
+    }
+
+    /**
+     * @return the number of frames sent to the client
+     */
+    public long getFramesSent() {
+        return m_framesSent.get();
+    }
+
+    /**
+     * @return the number of bytes received from the client
+     */
+    public long getBytesReceived() {
+        return m_bytesReceived.get();
+    }
+
+    /**
+     * @return the number of frames received from the client
+     */
+    public long getFramesReceived() {
+        return m_framesReceived.get();
+    }
+
+    /**
+     * @return the number of topics the client publishes
+     */
+    public int getPublisherCount() {
+        return m_publishers.size();
+    }
+
+    /**
+     * @return the publishers of the client by publisher UID
+     */
+    NT4Publishers getPublishers() {
+        return m_publishers;
+    }
+
+    /**
+     * @return the number of frames waiting to be written to the socket
+     */
+    public int getQueueDepth() {
+        return m_socket instanceof WebSocketImpl ? ((WebSocketImpl) m_socket).outQueue.size() : 0;
+    }
+
+    void onSent(int bytes) {
+        m_bytesSent.addAndGet(bytes);
+        m_framesSent.incrementAndGet();
+    }
+
+    void onReceived(int bytes) {
+        m_bytesReceived.addAndGet(bytes);
+        m_framesReceived.incrementAndGet();
+    }
+
+    /**
+     * Records a subscription, replacing an earlier subscription with the same UID.
+     *
+     * @param subuid       the subscription UID chosen by the client
+     * @param subscription the subscription
+     * @return the replaced subscription, or null if there was none
+     */
+    Subscription putSubscription(int subuid, Subscription subscription) {
+        return m_subscriptions.put(subuid, subscription);
+    }
+
+    /**
+     * Forgets a subscription.
+     *
+     * @param subuid the subscription UID chosen by the client
+     * @return the subscription, or null if there was none
+     */
+    Subscription removeSubscription(int subuid) {
+        return m_subscriptions.remove(subuid);
+    }
+
+    /**
+     * Finds a subscription of the client covering a topic, subscriptions sending every value are preferred over
+     * downsampled ones.
+     *
+     * @param topic the topic name, without the root "/"
+     * @return the subscription, or null if none covers the topic
+     */
+    Subscription findSubscription(String topic) {
+        Subscription found = null;
+        for (Subscription subscription : m_subscriptions.values()) {
+            if (!subscription.covers(topic)) continue;
+            if (subscription.downsampling == null) return subscription;
+            if (found == null) found = subscription;
+        }
+        return found;
+    }
+
+    /**
+     * Topic names or prefixes a subscribe message added the client to, with the options they are sent with.
+     */
+    static final class Subscription {
+        /**
+         * The topic names or prefixes, without the root "/"
+         */
+        final List<String> names;
+        /**
+         * True if the names are prefixes
+         */
+        final boolean prefix;
+        /**
+         * The aggregate sent per period, or null to send every value
+         */
+        final NetworkTablesDownsampling downsampling;
+        /**
+         * The period (in milliseconds) of the aggregates
+         */
+        final long periodMs;
+
+        Subscription(List<String> names, boolean prefix, NetworkTablesDownsampling downsampling, long periodMs) {
+            this.names = names;
+            this.prefix = prefix;
+            this.downsampling = downsampling;
+            this.periodMs = periodMs;
+        }
+
+        /**
+         * @param topic the topic name, without the root "/"
+         * @return true if the subscription covers the topic, whether it exists or not
+         */
+        boolean covers(String topic) {
+            if (!prefix) return names.contains(topic);
+            for (String name : names) {
+                if (topic.startsWith(name)) return true;
+            }
+            return false;
+        }
+    }
+}
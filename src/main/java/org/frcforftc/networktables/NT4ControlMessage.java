@@ -0,0 +1,213 @@
+package org.frcforftc.networktables;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A control message sent by a client in a text frame, such as publish or subscribe.
+ * <p>
+ * Clients send arrays of many messages in a single frame, {@link #parse(JsonFactory, String)} reads all of them with a
+ * streaming parser, keeping only the parameters the server uses and skipping the rest without building a tree.
+ */
+final class NT4ControlMessage {
+    /**
+     * The method of the message, e.g. "publish"
+     */
+    String method = null;
+    /**
+     * The topic name, with its leading "/"
+     */
+    String name = null;
+    /**
+     * The type string of a published topic
+     */
+    String type = null;
+    /**
+     * The publisher UID of publish and unpublish messages, -1 if absent
+     */
+    int pubuid = -1;
+    /**
+     * The subscription UID of subscribe and unsubscribe messages, -1 if absent
+     */
+    int subuid = -1;
+    /**
+     * The topic names or prefixes of a subscription
+     */
+    List<String> topics = Collections.emptyList();
+    /**
+     * True if the topics of a subscription are prefixes
+     */
+    boolean prefix = false;
+    /**
+     * The period (in seconds) of a subscription, -1 if absent
+     */
+    double periodic = -1;
+    /**
+     * The downsampling mode of a subscription, see {@link NetworkTablesDownsampling#fromOption(String)}
+     */
+    String downsample = null;
+    /**
+     * The properties of a published topic, or the update of a setproperties message. Only scalar values are kept,
+     * a null value removes the property.
+     */
+    Map<String, Object> properties = Collections.emptyMap();
+
+    private NT4ControlMessage() {
+    }
+
+    /**
+     * Parses all the messages of a text frame.
+     *
+     * @param factory the factory creating the parser
+     * @param text    the text of the frame, an array of messages or a single message
+     * @return the messages in the order they were sent
+     * @throws IOException if the text is not valid JSON
+     */
+    static List<NT4ControlMessage> parse(JsonFactory factory, String text) throws IOException {
+        List<NT4ControlMessage> messages = new ArrayList<>();
+        try (JsonParser parser = factory.createParser(text)) {
+            JsonToken token = parser.nextToken();
+            if (token == JsonToken.START_OBJECT) {
+                messages.add(readMessage(parser));
+            } else if (token == JsonToken.START_ARRAY) {
+                while ((token = parser.nextToken()) != JsonToken.END_ARRAY && token != null) {
+                    if (token == JsonToken.START_OBJECT) {
+                        messages.add(readMessage(parser));
+                    } else {
+                        parser.skipChildren();
+                    }
+                }
+            }
+        }
+        return messages;
+    }
+
+    private static NT4ControlMessage readMessage(JsonParser parser) throws IOException {
+        NT4ControlMessage message = new NT4ControlMessage();
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            JsonToken token = parser.nextToken();
+            if ("method".equals(field)) {
+                message.method = parser.getValueAsString();
+            } else if ("params".equals(field) && token == JsonToken.START_OBJECT) {
+                readParams(parser, message);
+            } else {
+                parser.skipChildren();
+            }
+        }
+        return message;
+    }
+
+    private static void readParams(JsonParser parser, NT4ControlMessage message) throws IOException {
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            JsonToken token = parser.nextToken();
+            switch (field) {
+                case "name":
+                    message.name = parser.getValueAsString();
+                    break;
+                case "type":
+                    message.type = parser.getValueAsString();
+                    break;
+                case "pubuid":
+                    message.pubuid = parser.getValueAsInt(-1);
+                    break;
+                case "subuid":
+                    message.subuid = parser.getValueAsInt(-1);
+                    break;
+                case "topics":
+                    message.topics = readStrings(parser, token);
+                    break;
+                case "options":
+                    readOptions(parser, message, token);
+                    break;
+                case "properties":
+                case "update":
+                    message.properties = readProperties(parser, token);
+                    break;
+                default:
+                    parser.skipChildren();
+            }
+        }
+    }
+
+    private static List<String> readStrings(JsonParser parser, JsonToken token) throws IOException {
+        if (token != JsonToken.START_ARRAY) {
+            parser.skipChildren();
+            return Collections.emptyList();
+        }
+
+        List<String> strings = new ArrayList<>();
+        while ((token = parser.nextToken()) != JsonToken.END_ARRAY) {
+            if (token == JsonToken.VALUE_STRING) {
+                strings.add(parser.getText());
+            } else {
+                parser.skipChildren();
+            }
+        }
+        return strings;
+    }
+
+    private static void readOptions(JsonParser parser, NT4ControlMessage message, JsonToken token) throws IOException {
+        if (token != JsonToken.START_OBJECT) {
+            parser.skipChildren();
+            return;
+        }
+
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            parser.nextToken();
+            if ("prefix".equals(field)) {
+                message.prefix = parser.getValueAsBoolean();
+            } else if ("periodic".equals(field)) {
+                message.periodic = parser.getValueAsDouble(-1);
+            } else if ("downsample".equals(field)) {
+                message.downsample = parser.getValueAsString();
+            } else {
+                parser.skipChildren();
+            }
+        }
+    }
+
+    private static Map<String, Object> readProperties(JsonParser parser, JsonToken token) throws IOException {
+        if (token != JsonToken.START_OBJECT) {
+            parser.skipChildren();
+            return Collections.emptyMap();
+        }
+
+        Map<String, Object> properties = new HashMap<>();
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            switch (parser.nextToken()) {
+                case VALUE_STRING:
+                    properties.put(field, parser.getText());
+                    break;
+                case VALUE_NUMBER_INT:
+                    properties.put(field, parser.getLongValue());
+                    break;
+                case VALUE_NUMBER_FLOAT:
+                    properties.put(field, parser.getDoubleValue());
+                    break;
+                case VALUE_TRUE:
+                case VALUE_FALSE:
+                    properties.put(field, parser.getBooleanValue());
+                    break;
+                case VALUE_NULL:
+                    properties.put(field, null);
+                    break;
+                default:
+                    // Nested properties can't be held by property entries
+                    parser.skipChildren();
+            }
+        }
+        return properties;
+    }
+}
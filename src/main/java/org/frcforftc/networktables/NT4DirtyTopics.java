@@ -0,0 +1,53 @@
+package org.frcforftc.networktables;
+
+import java.util.Arrays;
+
+/**
+ * Entries of a server whose value changed since its last flush, see {@link NT4Server#flush()}.
+ * <p>
+ * An entry is only added when its dirty mark is set, so writing the same topic many times between two flushes adds it
+ * once. Entries are kept in an array reused across flushes, adding one doesn't allocate once the array is large enough
+ * for all the topics changed between two flushes.
+ */
+final class NT4DirtyTopics {
+    private static final int INITIAL_CAPACITY = 64;
+
+    private NetworkTablesEntry[] m_entries = new NetworkTablesEntry[INITIAL_CAPACITY];
+    private int m_size = 0;
+
+    /**
+     * Marks an entry as changed.
+     *
+     * @param entry the entry
+     */
+    void add(NetworkTablesEntry entry) {
+        if (!entry.markDirty()) return;
+
+        synchronized (this) {
+            if (m_size == m_entries.length) m_entries = Arrays.copyOf(m_entries, m_size * 2);
+            m_entries[m_size++] = entry;
+        }
+    }
+
+    /**
+     * Removes all the changed entries, clearing their dirty mark so later writes add them again.
+     *
+     * @return the entries in the order they first changed
+     */
+    synchronized NetworkTablesEntry[] drain() {
+        NetworkTablesEntry[] drained = Arrays.copyOf(m_entries, m_size);
+        Arrays.fill(m_entries, 0, m_size, null);
+        m_size = 0;
+        for (NetworkTablesEntry entry : drained) {
+            entry.clearDirty();
+        }
+        return drained;
+    }
+
+    /**
+     * @return the number of entries changed since the last flush
+     */
+    synchronized int size() {
+        return m_size;
+    }
+}
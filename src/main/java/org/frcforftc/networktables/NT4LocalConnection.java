@@ -0,0 +1,86 @@
+package org.frcforftc.networktables;
+
+import org.java_websocket.WebSocketImpl;
+import org.java_websocket.drafts.Draft_6455;
+import org.java_websocket.exceptions.WebsocketNotConnectedException;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Server side of a connection that doesn't go through a socket, standing in for the WebSocket of the client so the
+ * server handles it like its other connections. Frames sent to it are handed to the transport instead of being
+ * framed and written to a socket, see {@link NT4SharedMemoryConnection} and {@link NetworkTablesLoopback}.
+ */
+abstract class NT4LocalConnection extends WebSocketImpl {
+    NT4LocalConnection(NT4Server server) {
+        super(server, new Draft_6455());
+    }
+
+    /**
+     * @return a readable name for the connection
+     */
+    abstract String getName();
+
+    /**
+     * Hands a text frame to the transport.
+     *
+     * @param text the frame text
+     * @return false if the connection is closed
+     */
+    abstract boolean sendText(String text);
+
+    /**
+     * Hands a binary frame to the transport, which copies it if it keeps it.
+     *
+     * @param payload the frame payload, from its position to its limit. Its position is left unchanged.
+     * @return false if the connection is closed or the frame was dropped
+     */
+    abstract boolean sendBinary(ByteBuffer payload);
+
+    @Override
+    public abstract boolean isClosed();
+
+    @Override
+    public abstract void close();
+
+    @Override
+    public void send(String text) {
+        if (!sendText(text)) throw new WebsocketNotConnectedException();
+    }
+
+    @Override
+    public void send(ByteBuffer bytes) {
+        if (!sendBinary(bytes)) throw new WebsocketNotConnectedException();
+        bytes.position(bytes.limit());
+    }
+
+    @Override
+    public void send(byte[] bytes) {
+        if (!sendBinary(ByteBuffer.wrap(bytes))) throw new WebsocketNotConnectedException();
+    }
+
+    @Override
+    public boolean isOpen() {
+        return !isClosed();
+    }
+
+    @Override
+    public boolean hasBufferedData() {
+        return false;
+    }
+
+    @Override
+    public void close(int code) {
+        close();
+    }
+
+    @Override
+    public void close(int code, String message) {
+        close();
+    }
+
+    @Override
+    public void closeConnection(int code, String message) {
+        close();
+    }
+}
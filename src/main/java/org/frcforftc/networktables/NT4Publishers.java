@@ -0,0 +1,141 @@
+package org.frcforftc.networktables;
+
+import java.util.Arrays;
+
+/**
+ * Publishers of a single client, mapping the publisher UIDs chosen by the client to the entries they publish.
+ * <p>
+ * Publisher UIDs are only unique per client, so every connection has its own table. Keys are stored unboxed in an
+ * open addressing table with linear probing, so resolving the publisher of a value doesn't allocate. The table is
+ * synchronized, it is only contended when the client disconnects while one of its frames is handled.
+ */
+final class NT4Publishers {
+    private static final int INITIAL_CAPACITY = 16;
+
+    private long[] m_keys = new long[INITIAL_CAPACITY];
+    /**
+     * Entries of the slots, null for free slots
+     */
+    private NetworkTablesEntry[] m_values = new NetworkTablesEntry[INITIAL_CAPACITY];
+    private int m_size = 0;
+
+    /**
+     * Retrieves the entry a publisher publishes.
+     *
+     * @param pubuid the publisher UID
+     * @return the entry, or null if the client has no such publisher
+     */
+    synchronized NetworkTablesEntry get(long pubuid) {
+        int mask = m_keys.length - 1;
+        for (int i = slot(pubuid, mask); m_values[i] != null; i = (i + 1) & mask) {
+            if (m_keys[i] == pubuid) return m_values[i];
+        }
+        return null;
+    }
+
+    /**
+     * Adds a publisher, replacing an earlier publisher with the same UID.
+     *
+     * @param pubuid the publisher UID
+     * @param entry  the entry it publishes
+     */
+    synchronized void put(long pubuid, NetworkTablesEntry entry) {
+        int mask = m_keys.length - 1;
+        int i = slot(pubuid, mask);
+        for (; m_values[i] != null; i = (i + 1) & mask) {
+            if (m_keys[i] == pubuid) {
+                m_values[i] = entry;
+                return;
+            }
+        }
+
+        m_keys[i] = pubuid;
+        m_values[i] = entry;
+        if (++m_size * 2 > m_keys.length) resize();
+    }
+
+    /**
+     * Removes a publisher.
+     *
+     * @param pubuid the publisher UID
+     * @return the entry it published, or null if the client has no such publisher
+     */
+    synchronized NetworkTablesEntry remove(long pubuid) {
+        int mask = m_keys.length - 1;
+        int i = slot(pubuid, mask);
+        while (m_values[i] != null && m_keys[i] != pubuid) {
+            i = (i + 1) & mask;
+        }
+        NetworkTablesEntry removed = m_values[i];
+        if (removed == null) return null;
+
+        // Shift back the following keys of the run so lookups never stop at the freed slot
+        int free = i;
+        for (int j = (i + 1) & mask; m_values[j] != null; j = (j + 1) & mask) {
+            int home = slot(m_keys[j], mask);
+            if (((j - home) & mask) >= ((j - free) & mask)) {
+                m_keys[free] = m_keys[j];
+                m_values[free] = m_values[j];
+                free = j;
+            }
+        }
+        m_values[free] = null;
+        m_size--;
+        return removed;
+    }
+
+    /**
+     * Removes the publishers of an entry, called when its topic is removed.
+     *
+     * @param entry the entry of the removed topic
+     */
+    synchronized void removeEntry(NetworkTablesEntry entry) {
+        int i = 0;
+        while (i < m_values.length) {
+            // Removing shifts the following slots back, so the same slot is checked again
+            if (m_values[i] == entry) {
+                remove(m_keys[i]);
+            } else {
+                i++;
+            }
+        }
+    }
+
+    /**
+     * Removes all the publishers, called when the client disconnects.
+     */
+    synchronized void clear() {
+        Arrays.fill(m_values, null);
+        m_size = 0;
+    }
+
+    /**
+     * @return the number of publishers of the client
+     */
+    synchronized int size() {
+        return m_size;
+    }
+
+    private void resize() {
+        long[] keys = m_keys;
+        NetworkTablesEntry[] values = m_values;
+        m_keys = new long[keys.length * 2];
+        m_values = new NetworkTablesEntry[keys.length * 2];
+        int mask = m_keys.length - 1;
+
+        for (int i = 0; i < keys.length; i++) {
+            if (values[i] == null) continue;
+            int j = slot(keys[i], mask);
+            while (m_values[j] != null) {
+                j = (j + 1) & mask;
+            }
+            m_keys[j] = keys[i];
+            m_values[j] = values[i];
+        }
+    }
+
+    private static int slot(long key, int mask) {
+        long hash = key * 0x9E3779B97F4A7C15L;
+        return (int) (hash ^ (hash >>> 32)) & mask;
+    }
+}
@@ -0,0 +1,56 @@
+package org.frcforftc.networktables;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Raw value received by an {@link NT4Server}, stored as the range of the received frame holding its bytes.
+ * <p>
+ * The frame is never copied: {@link NT4Server#packRaw} forwards the range straight from the array, and readers get
+ * read-only views from {@link NetworkTablesValue#get()}, so the stored bytes and the position readers see can't be
+ * changed through the value.
+ */
+final class NT4RawPayload {
+    private final byte[] m_array;
+    private final int m_offset;
+    private final int m_length;
+
+    private NT4RawPayload(byte[] array, int offset, int length) {
+        this.m_array = array;
+        this.m_offset = offset;
+        this.m_length = length;
+    }
+
+    /**
+     * Keeps the remaining bytes of a received buffer, without a copy if the buffer is backed by an array.
+     *
+     * @param data the received bytes, owned by the payload from then on
+     * @return the payload
+     */
+    static NT4RawPayload of(ByteBuffer data) {
+        if (data.hasArray() && !data.isReadOnly()) {
+            return new NT4RawPayload(data.array(), data.arrayOffset() + data.position(), data.remaining());
+        }
+        byte[] copy = new byte[data.remaining()];
+        data.duplicate().get(copy);
+        return new NT4RawPayload(copy, 0, copy.length);
+    }
+
+    byte[] array() {
+        return m_array;
+    }
+
+    int offset() {
+        return m_offset;
+    }
+
+    int length() {
+        return m_length;
+    }
+
+    /**
+     * @return a new read-only view of the bytes with its own position
+     */
+    ByteBuffer asReadOnlyBuffer() {
+        return ByteBuffer.wrap(m_array, m_offset, m_length).slice().asReadOnlyBuffer();
+    }
+}
@@ -1,11 +1,12 @@
 package org.frcforftc.networktables;
 
-import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.node.ArrayNode;
 import com.fasterxml.jackson.databind.node.ObjectNode;
 import org.java_websocket.WebSocket;
 import org.java_websocket.drafts.Draft_6455;
+import org.java_websocket.exceptions.WebsocketNotConnectedException;
+import org.java_websocket.extensions.IExtension;
 import org.java_websocket.handshake.ClientHandshake;
 import org.java_websocket.protocols.IProtocol;
 import org.java_websocket.protocols.Protocol;
@@ -13,15 +14,31 @@ import org.java_websocket.server.WebSocketServer;
 import org.msgpack.core.*;
 
 import java.io.ByteArrayOutputStream;
+import java.io.File;
 import java.io.IOException;
 import java.net.InetSocketAddress;
 import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Queue;
 import java.util.Set;
+import java.util.function.Consumer;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * NT4Server is a WebSocket server that handles NetworkTables communication
@@ -30,21 +47,33 @@ import java.util.concurrent.CopyOnWriteArraySet;
  */
 public class NT4Server extends WebSocketServer {
     /**
-     * Map of topic names to NetworkTablesEntry objects
+     * Prefix of the topics holding struct schemas
+     */
+    public static final String SCHEMA_PREFIX = ".schema/";
+    /**
+     * Minimum number of recipients for a frame to be sent from one virtual thread per connection
+     */
+    private static final int FAN_OUT_THRESHOLD = 8;
+    /**
+     * Time (in milliseconds) replaced receive workers get to handle the frames already handed to them
+     */
+    private static final long RECEIVE_STOP_TIMEOUT_MS = 1000;
+    /**
+     * Returned by {@link #updateValue} when the update didn't change the value
      */
-    private static final Map<String, NetworkTablesEntry> m_entries = new ConcurrentHashMap<>();
+    private static final Object UNCHANGED = new Object();
     /**
-     * Map of publisher unique IDs to NetworkTablesEntry objects
+     * Map of topic names to NetworkTablesEntry objects
      */
-    private static final Map<Long, NetworkTablesEntry> m_publisherUIDSMap = new ConcurrentHashMap<>();
+    private final Map<String, NetworkTablesEntry> m_entries = new ConcurrentHashMap<>();
     /**
-     * Singleton instance of NT4Server
+     * Last topic ID given to an entry
      */
-    private static NT4Server m_server = null;
+    private final AtomicInteger m_nextTopicId = new AtomicInteger();
     /**
-     * Indicates if the shutdown hook has been added
+     * IDs of removed topics, given again to new topics
      */
-    private static boolean m_shutdownHookAdded = false;
+    private final Queue<Integer> m_freeTopicIds = new ConcurrentLinkedQueue<>();
     /**
      * Set of connected WebSocket clients
      */
@@ -52,11 +81,93 @@ public class NT4Server extends WebSocketServer {
     /**
      * Map of topics to client WebSocket subscriptions
      */
-    private final Map<String, Set<WebSocket>> m_clientSubscriptions = new ConcurrentHashMap<>();
+    private final Map<String, NT4Subscribers> m_clientSubscriptions = new ConcurrentHashMap<>();
+    /**
+     * Encoders of primitive value frames, one per sending thread
+     */
+    private final ThreadLocal<NetworkTablesEncoder> m_encoder = ThreadLocal.withInitial(NetworkTablesEncoder::new);
     /**
      * Jackson ObjectMapper for JSON processing
      */
     private final ObjectMapper m_objectMapper = new ObjectMapper();
+    /**
+     * Number of updates skipped because the value did not change
+     */
+    private final AtomicLong m_suppressedUpdates = new AtomicLong();
+    /**
+     * Number of updates that changed the value of a topic
+     */
+    private final AtomicLong m_changedUpdates = new AtomicLong();
+    /**
+     * Number of updates ignored because the value can't be held by the type of the topic
+     */
+    private final AtomicLong m_rejectedUpdates = new AtomicLong();
+    /**
+     * Counters and latency histograms of this server
+     */
+    private final NetworkTablesMetrics m_metrics = new NetworkTablesMetrics(this);
+    /**
+     * Type strings of the structs whose schema was already published
+     */
+    private final Set<String> m_publishedSchemas = ConcurrentHashMap.newKeySet();
+    /**
+     * permessage-deflate extension offered to clients, null if compression is disabled
+     */
+    private NetworkTablesDeflateExtension m_compression = null;
+    /**
+     * Sampler polling supplier backed entries, created on first use
+     */
+    private NetworkTablesSampler m_sampler = null;
+    /**
+     * Dispatcher calling the setters of bound values written by clients, created on first use
+     */
+    private volatile NetworkTablesSetterDispatcher m_setterDispatcher = null;
+    /**
+     * Sweeper removing idle topics, null unless an idle timeout is set
+     */
+    private NetworkTablesSweeper m_sweeper = null;
+    /**
+     * Acceptor of the clients connecting through shared memory, null if it wasn't started
+     */
+    private NT4SharedMemoryServer m_sharedMemory = null;
+    /**
+     * Downsampler of the subscriptions asking for aggregates, null until a client asks for one
+     */
+    private volatile NetworkTablesDownsampler m_downsampler = null;
+    /**
+     * Workers handling the frames received from WebSocket clients, null to handle them on the WebSocket threads
+     */
+    private volatile NetworkTablesReceivePipeline m_receivePipeline = null;
+    /**
+     * Entries changed since the last flush, only used when sends are deferred to {@link #flush()}
+     */
+    private final NT4DirtyTopics m_dirtyTopics = new NT4DirtyTopics();
+    /**
+     * Values waiting for the next flush of the bound entries in {@link #m_dirtyTopics}, their getters may not return
+     * them yet
+     */
+    private final Map<NetworkTablesEntry, Object> m_pendingValues = new ConcurrentHashMap<>();
+    /**
+     * Orders the frames of concurrent flushes
+     */
+    private final Object m_flushLock = new Object();
+    /**
+     * True if updates are sent by {@link #flush()} instead of as soon as they are put
+     */
+    private volatile boolean m_manualFlush = false;
+    /**
+     * Executor flushing the changed entries periodically, null if flushes are only manual
+     */
+    private ScheduledExecutorService m_flushExecutor = null;
+    private long m_autoFlushPeriodMs = 0;
+    /**
+     * Hook stopping the server when the JVM exits, removed when the server is stopped
+     */
+    private Thread m_shutdownHook = null;
+    /**
+     * Executor sending frames to many connections in parallel, only used with virtual threads
+     */
+    private ExecutorService m_sendExecutor = null;
 
     /**
      * Constructs an NT4Server instance with the specified address and protocol.
@@ -70,31 +181,55 @@ public class NT4Server extends WebSocketServer {
     }
 
     /**
-     * Creates and starts an instance of NT4Server.
+     * Creates an instance of NT4Server. Every instance has its own topics, publishers and subscriptions,
+     * so several servers can run in the same JVM on different ports.
      *
+     * @param address the address to bind the server to
+     * @param port    the port to listen on
      * @return the created NT4Server instance
      */
     public static NT4Server createInstance(String address, int port) {
+        return createInstance(address, port, null);
+    }
+
+    /**
+     * Creates an instance of NT4Server that offers permessage-deflate to its clients.
+     *
+     * @param address     the address to bind the server to
+     * @param port        the port to listen on
+     * @param compression the compression settings for frames sent by the server, or null to disable compression
+     * @return the created NT4Server instance
+     */
+    public static NT4Server createInstance(String address, int port, NetworkTablesDeflateExtension compression) {
         ArrayList<IProtocol> protocols = new ArrayList<IProtocol>();
         protocols.add(new Protocol("v4.1.networktables.first.wpi.edu"));
         protocols.add(new Protocol("rtt.networktables.first.wpi.edu"));
-        Draft_6455 draft_protocols = new Draft_6455(Collections.emptyList(), protocols);
-        m_server = new NT4Server(new InetSocketAddress(address, port), draft_protocols);
-        m_server.setConnectionLostTimeout(Integer.MAX_VALUE);
-        if (m_shutdownHookAdded) {
-            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
-                try {
-//                    System.out.println("Shutting down server...");
-                    m_server.stop(0);
-                } catch (InterruptedException e) {
-//                    System.err.println("Server shutdown interrupted");
-                    Thread.currentThread().interrupt();
-                }
-            }));
-            m_shutdownHookAdded = true;
-        }
+        List<IExtension> extensions = compression == null ? Collections.emptyList() : Collections.singletonList(compression);
+        Draft_6455 draft_protocols = new Draft_6455(extensions, protocols);
+        NT4Server server = new NT4Server(new InetSocketAddress(address, port), draft_protocols);
+        server.m_compression = compression;
+        server.setConnectionLostTimeout(Integer.MAX_VALUE);
+        server.m_shutdownHook = new Thread(() -> {
+            try {
+//                System.out.println("Shutting down server...");
+                server.stop(0);
+            } catch (InterruptedException e) {
+//                System.err.println("Server shutdown interrupted");
+                Thread.currentThread().interrupt();
+            }
+        });
+        Runtime.getRuntime().addShutdownHook(server.m_shutdownHook);
+
+        return server;
+    }
 
-        return m_server;
+    /**
+     * Returns the permessage-deflate extension offered to clients, its byte counters cover all connections.
+     *
+     * @return the compression extension, or null if compression is disabled
+     */
+    public NetworkTablesDeflateExtension getCompression() {
+        return m_compression;
     }
 
     public NetworkTablesEntry getSubTable(String path) {
@@ -104,23 +239,30 @@ public class NT4Server extends WebSocketServer {
     @Override
     public void onOpen(WebSocket conn, ClientHandshake handshake) {
         setConnectionLostTimeout(Integer.MAX_VALUE);
+        open(conn, handshake.getFieldValue("Sec-WebSocket-Protocol"));
+    }
+
+    /**
+     * Sets up a new connection, sending it the announcements of all topics.
+     *
+     * @param conn        the connection, a WebSocket or a shared memory connection
+     * @param subprotocol the subprotocols requested by the client
+     */
+    void open(WebSocket conn, String subprotocol) {
         m_connections.add(conn);
-        String subprotocol = handshake.getFieldValue("Sec-WebSocket-Protocol");
 //        System.out.println("CLIENT CONNECTED with " + subprotocol);
 
         for (String s : subprotocol.split(", ")) {
             if (s.equals("v4.1.networktables.first.wpi.edu")) {
-                conn.setAttachment(s);
-                conn.send("Using protocol: " + s);
-                for (String key : m_entries.keySet()) {
-                    NetworkTablesEntry entry = m_entries.get(key);
-
-                    putTopic(entry.getTopic(), entry.getValue().get());
+                conn.setAttachment(new NT4Connection(conn, s));
+                send(conn, "Using protocol: " + s);
+                for (NetworkTablesEntry entry : m_entries.values()) {
+                    send(conn, createAnnounceMessage(entry));
                 }
             }
             if (s.equals("rtt.networktables.first.wpi.edu")) {
-                conn.setAttachment(s);
-                conn.send("Using protocol: " + s);
+                conn.setAttachment(new NT4Connection(conn, s));
+                send(conn, "Using protocol: " + s);
                 try {
                     heartbeat(conn, System.currentTimeMillis());
                 } catch (IOException e) {
@@ -136,41 +278,97 @@ public class NT4Server extends WebSocketServer {
 
     @Override
     public void onClose(WebSocket conn, int code, String reason, boolean remote) {
+        NetworkTablesReceivePipeline pipeline = m_receivePipeline;
+        if (pipeline != null && !(conn instanceof NT4LocalConnection)) {
+            // Cleaned up after the frames the client sent before closing, so they can't subscribe it again
+            pipeline.execute(conn, () -> close(conn));
+        } else {
+            close(conn);
+        }
+    }
+
+    private void close(WebSocket conn) {
         m_connections.remove(conn);
-        for (Set<WebSocket> subscribers : m_clientSubscriptions.values()) {
+        NT4Connection connection = NT4Connection.of(conn);
+        if (connection != null) connection.getPublishers().clear();
+        for (NT4Subscribers subscribers : m_clientSubscriptions.values()) {
             subscribers.remove(conn);
         }
+        NetworkTablesDownsampler downsampler = m_downsampler;
+        if (downsampler != null) downsampler.removeConnection(conn);
     }
 
     @Override
     public void onMessage(WebSocket conn, String message) {
+        NetworkTablesReceivePipeline pipeline = m_receivePipeline;
+        if (pipeline != null && !(conn instanceof NT4LocalConnection)) {
+            pipeline.execute(conn, () -> handleMessage(conn, message));
+        } else {
+            handleMessage(conn, message);
+        }
+    }
+
+    private void handleMessage(WebSocket conn, String message) {
+        onReceived(conn, message.length());
+        List<NT4ControlMessage> messages;
         try {
-            JsonNode data = m_objectMapper.readTree(message).get(0);
-            processMessage(conn, data);
-        } catch (Exception e) {
+            long start = System.nanoTime();
+            messages = NT4ControlMessage.parse(m_objectMapper.getFactory(), message);
+            m_metrics.getDecodeTime().record(System.nanoTime() - start);
+        } catch (IOException e) {
             e.printStackTrace();
+            return;
+        }
+
+        for (NT4ControlMessage controlMessage : messages) {
+            try {
+                processMessage(conn, controlMessage);
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
         }
     }
 
     @Override
     public void onMessage(WebSocket conn, ByteBuffer message) {
-        try {
+        NetworkTablesReceivePipeline pipeline = m_receivePipeline;
+        if (pipeline != null && !(conn instanceof NT4LocalConnection)) {
+            // The payload belongs to its frame and isn't reused by the WebSocket, it is handed over without a copy.
+            // Value frames are dropped when the worker is full, a later frame of the topic carries a newer value
+            if (!pipeline.offer(conn, () -> handleMessage(conn, message))) m_metrics.onDropped();
+        } else {
+            handleMessage(conn, message);
+        }
+    }
 
+    private void handleMessage(WebSocket conn, ByteBuffer message) {
+        onReceived(conn, message.remaining());
+        try {
+            long start = System.nanoTime();
             NetworkTablesMessage decodedMessage = decodeNT4Message(message);
+            m_metrics.getDecodeTime().record(System.nanoTime() - start);
 //            System.out.println("ID: "+decodedMessage.id + " ATTACH: " +conn.getAttachment() );
-            if (decodedMessage.id == -1 && conn.getAttachment().equals("rtt.networktables.first.wpi.edu")) {
+            NT4Connection connection = NT4Connection.of(conn);
+            if (decodedMessage.id == -1 && connection != null && connection.getProtocol().equals("rtt.networktables.first.wpi.edu")) {
                 heartbeat(conn, (Long) decodedMessage.dataValue);
             } else {
-                if (m_publisherUIDSMap.containsKey(decodedMessage.id)) {
-                    NetworkTablesEntry entry = m_publisherUIDSMap.get(decodedMessage.id);
-                    if (decodedMessage.dataValue != entry.getValue().get()) {
-                        NetworkTablesValue newValue = new NetworkTablesValue(decodedMessage.dataValue, entry.getValue().getType());
-
-                        entry.update(newValue);
-                        m_publisherUIDSMap.replace(decodedMessage.id, entry);
-                        entry.callListenersOfEventType(NetworkTablesEvent.kTopicUpdated, entry, newValue);
-                        for (Set<WebSocket> subscribers : m_clientSubscriptions.values()) {
-                            broadcast(encodeNT4Message(System.currentTimeMillis(), entry.getId(), decodedMessage.id, decodedMessage.dataType, decodedMessage.dataValue), subscribers);
+                // Binary frames are addressed by the publisher UIDs of the client that sent them
+                NetworkTablesEntry entry = connection == null ? null : connection.getPublishers().get(decodedMessage.id);
+                if (entry != null) {
+                    entry.touch();
+                    if (!isUnchanged(entry, decodedMessage.dataValue)) {
+                        // Subscribers record the value of this message with the time it was sent, the entry may
+                        // already hold a newer value written concurrently
+                        long timestamp = decodedMessage.stamp != 0 ? decodedMessage.stamp : System.currentTimeMillis();
+                        if (entry.getValue().getSetter() != null) {
+                            // Bound values keep their getter and setter, the setter is called off this thread
+                            getSetterDispatcher().submit(entry, NetworkTablesValue.view(decodedMessage.dataValue));
+                            entry.callUpdateListeners(decodedMessage.dataValue, timestamp);
+                            // The getter may not return the written value until the setter ran, it is sent as is
+                            sendValues(Collections.singletonMap(entry, decodedMessage.dataValue));
+                        } else if (updateValue(entry, decodedMessage.dataValue) != UNCHANGED) {
+                            entry.callUpdateListeners(decodedMessage.dataValue, timestamp);
+                            sendValue(entry);
                         }
                     }
 
@@ -186,6 +384,35 @@ public class NT4Server extends WebSocketServer {
         ex.printStackTrace();
     }
 
+    @Override
+    public void stop(int timeout) throws InterruptedException {
+        stopSharedMemory();
+        setReceiveThreads(0);
+        synchronized (this) {
+            if (m_sampler != null) m_sampler.stop();
+            if (m_setterDispatcher != null) m_setterDispatcher.stop();
+            if (m_sweeper != null) m_sweeper.stop();
+            if (m_downsampler != null) m_downsampler.stop();
+            if (m_flushExecutor != null) {
+                m_flushExecutor.shutdownNow();
+                m_flushExecutor = null;
+            }
+            if (m_sendExecutor != null) {
+                m_sendExecutor.shutdown();
+                m_sendExecutor = null;
+            }
+            if (m_shutdownHook != null && Thread.currentThread() != m_shutdownHook) {
+                try {
+                    Runtime.getRuntime().removeShutdownHook(m_shutdownHook);
+                } catch (IllegalStateException e) {
+                    // The JVM is already shutting down
+                }
+                m_shutdownHook = null;
+            }
+        }
+        super.stop(timeout);
+    }
+
     @Override
     public void onStart() {
 //        System.out.println("Server started successfully!");
@@ -203,6 +430,7 @@ public class NT4Server extends WebSocketServer {
      * @throws IOException if encoding fails
      */
     public ByteBuffer encodeNT4Message(long timestamp, long topicId, long pubUID, int dataType, Object dataValue) throws IOException {
+        long start = System.nanoTime();
         ByteArrayOutputStream out = new ByteArrayOutputStream();
         MessagePacker packer = MessagePack.newDefaultPacker(out);
 
@@ -230,9 +458,7 @@ public class NT4Server extends WebSocketServer {
                 packer.packString((String) dataValue);
                 break;
             case Raw: // binary
-                byte[] binaryData = (byte[]) dataValue;
-                packer.packBinaryHeader(binaryData.length);
-                packer.writePayload(binaryData);
+                packRaw(packer, dataValue);
                 break;
             case BooleanArray: // boolean array
                 boolean[] boolArray = (boolean[]) dataValue;
@@ -274,11 +500,46 @@ public class NT4Server extends WebSocketServer {
         }
 
         packer.close();
+        m_metrics.getEncodeTime().record(System.nanoTime() - start);
         return ByteBuffer.wrap(out.toByteArray());
     }
 
+    /**
+     * Packs a raw value. Payloads received from clients are written straight from the array backing the received
+     * frame, without an intermediate copy.
+     *
+     * @param packer the packer to write to
+     * @param value  a byte array, a received payload or a buffer, the remaining bytes of a buffer are written
+     * @throws IOException if packing fails
+     */
+    static void packRaw(MessagePacker packer, Object value) throws IOException {
+        if (value instanceof NT4RawPayload) {
+            NT4RawPayload payload = (NT4RawPayload) value;
+            packer.packBinaryHeader(payload.length());
+            packer.writePayload(payload.array(), payload.offset(), payload.length());
+            return;
+        }
+        if (value instanceof byte[]) {
+            byte[] data = (byte[]) value;
+            packer.packBinaryHeader(data.length);
+            packer.writePayload(data);
+            return;
+        }
+
+        ByteBuffer data = (ByteBuffer) value;
+        packer.packBinaryHeader(data.remaining());
+        if (data.hasArray()) {
+            packer.writePayload(data.array(), data.arrayOffset() + data.position(), data.remaining());
+        } else {
+            byte[] copy = new byte[data.remaining()];
+            data.duplicate().get(copy);
+            packer.writePayload(copy);
+        }
+    }
+
     /**
      * Decodes a NetworkTables message from a ByteBuffer.
+     * Raw payloads are decoded as ranges of the buffer to be stored in topics, the buffer must not be reused.
      *
      * @param buffer the ByteBuffer to decode
      * @return the decoded NetworkTablesMessage
@@ -326,6 +587,11 @@ public class NT4Server extends WebSocketServer {
                         case String: // string
                             dataValue = unpacker.unpackString();
                             break;
+                        case Raw: // binary
+                            // The range of the payload inside the received frame, the bytes aren't copied. packRaw forwards
+                            // it from the array, readers only get read-only views through NetworkTablesValue#get()
+                            dataValue = NT4RawPayload.of(unpacker.readPayloadAsReference(unpacker.unpackBinaryHeader()).sliceAsByteBuffer());
+                            break;
                         case BooleanArray: // boolean array
                             int boolArraySize = unpacker.unpackArrayHeader();
                             boolean[] boolArray = new boolean[boolArraySize];
@@ -376,9 +642,6 @@ public class NT4Server extends WebSocketServer {
                 } catch (MessageInsufficientBufferException | IOException e) {
 //                    System.err.println("Error decoding data value: " + e.getMessage());
                     e.printStackTrace();
-                }
-                if (m_publisherUIDSMap.containsKey(topicID)) {
-
                 }
                 // Process the decoded message
                 return new NetworkTablesMessage(topicID, stamp, dataType, dataValue);
@@ -392,78 +655,252 @@ public class NT4Server extends WebSocketServer {
     }
 
     /**
-     * Processes a JSON message and updates the relevant NetworkTables entries.
+     * Processes a control message and updates the relevant NetworkTables entries.
      *
-     * @param conn the WebSocket connection
-     * @param data the JSON data
+     * @param conn    the WebSocket connection
+     * @param message the control message
      */
-    private void processMessage(WebSocket conn, JsonNode data) throws IOException {
-        if (data.get("method") == null) return;
-        String type = data.get("method").asText();
+    private void processMessage(WebSocket conn, NT4ControlMessage message) throws IOException {
+        if (message.method == null) return;
+        String type = message.method;
         if ("subscribe".equals(type)) {
-            handleSubscribe(conn, data);
+            handleSubscribe(conn, message);
+        } else if ("unsubscribe".equals(type)) {
+            handleUnsubscribe(conn, message);
         } else if ("publish".equals(type)) {
-            handlePublish(data);
+            handlePublish(conn, message);
+        } else if ("unpublish".equals(type)) {
+            handleUnpublish(conn, message);
+        } else if ("setproperties".equals(type)) {
+            handleSetProperties(message);
         } else if ("unannounce".equals(type)) {
-            handleUnAnnounce(data);
+            handleUnAnnounce(message);
         } else if ("announce".equals(type)) {
-            handleAnnounce(data);
+            handleAnnounce(message);
         }
     }
 
-    private void handleAnnounce(JsonNode data) {
-        JsonNode params = data.get("params");
-        NetworkTablesEntry entry = m_entries.get(params.get("name").asText());
+    /**
+     * @param name a topic name sent by a client
+     * @return the key of the topic in {@link #m_entries}, without the root "/"
+     */
+    private static String topicKey(String name) {
+        return name.startsWith("/") ? name.substring(1) : name;
+    }
+
+    private void handleAnnounce(NT4ControlMessage message) {
+        if (message.name == null) return;
+        NetworkTablesEntry entry = m_entries.get(topicKey(message.name));
         if (entry == null) return;
 
         entry.callListenersOfEventType(NetworkTablesEvent.kTopicAnnounced, entry, entry.getValue());
     }
 
-    private void handleUnAnnounce(JsonNode data) {
-        JsonNode params = data.get("params");
-        NetworkTablesEntry entry = m_entries.get(params.get("name").asText());
+    private void handleUnAnnounce(NT4ControlMessage message) {
+        if (message.name == null) return;
+        NetworkTablesEntry entry = m_entries.get(topicKey(message.name));
         if (entry == null) return;
 
         entry.callListenersOfEventType(NetworkTablesEvent.kTopicUnAnnounced, entry, entry.getValue());
     }
 
-    private void handleSubscribe(WebSocket conn, JsonNode data) throws IOException {
-        String topic = data.get("params").get("topics").get(0).asText().substring(1); // Removes the root "/" from the topic path
-        if (m_entries.containsKey(topic)) {
-//            System.out.println("SUBSCRIBED: " + topic);
-            m_clientSubscriptions.computeIfAbsent(topic, k -> new CopyOnWriteArraySet<>()).add(conn);
-            conn.send(encodeNT4Message(System.currentTimeMillis(), m_entries.get(topic).getId(), 0, NetworkTablesValueType.getFromString(m_entries.get(topic).getValue().getType()).id, m_entries.get(topic).getValue().getAs()));
-            if (topic.contains(".type")) {
-                for (Map.Entry<String, NetworkTablesEntry> entry : m_entries.entrySet()) {
-                    if (entry.getKey().contains(m_entries.get(topic).getTopic().replaceAll(".type", ""))) {
-                        conn.send(encodeNT4Message(System.currentTimeMillis(), m_entries.get(entry.getKey()).getId(), 0, NetworkTablesValueType.getFromString(entry.getValue().getValue().getType()).id, entry.getValue().getValue().getAs()));
-                    }
-                }
+    /**
+     * Subscribes a client to every topic of a subscribe message. With the prefix option the client is subscribed to
+     * the topics starting with each prefix. The subscription is kept with the connection, so topics it covers that
+     * are created later are sent to the client as well. With the downsample and periodic options the client is sent
+     * aggregates of the topics at the period instead of every value, see {@link NetworkTablesDownsampler}.
+     *
+     * @param conn    the WebSocket connection
+     * @param message the subscribe message
+     */
+    private void handleSubscribe(WebSocket conn, NT4ControlMessage message) throws IOException {
+        NetworkTablesDownsampling downsampling = message.periodic > 0 ? NetworkTablesDownsampling.fromOption(message.downsample) : null;
+        long periodMs = Math.max(1, Math.round(message.periodic * 1000));
+        List<String> names = new ArrayList<>();
+        for (String name : message.topics) {
+            names.add(topicKey(name));
+        }
+        NT4Connection.Subscription subscription = new NT4Connection.Subscription(names, message.prefix, downsampling, periodMs);
+
+        NT4Connection connection = NT4Connection.of(conn);
+        NT4Connection.Subscription previous = connection == null || message.subuid == -1 ? null : connection.putSubscription(message.subuid, subscription);
+        List<String> covered = coveredTopics(subscription);
+        for (String topic : covered) {
+            subscribe(conn, connection, subscription, topic);
+        }
+        if (!message.prefix) {
+            for (String topic : names) {
+                if (!covered.contains(topic) && m_entries.containsKey(topic + "/.type")) sendSnapshot(conn, topic);
+            }
+        }
+
+        if (previous == null) return;
+        for (String topic : coveredTopics(previous)) {
+            if (!subscription.covers(topic)) unsubscribe(conn, connection, topic);
+        }
+    }
+
+    /**
+     * @param subscription a subscription of a client
+     * @return the names of the existing topics the subscription covers
+     */
+    private List<String> coveredTopics(NT4Connection.Subscription subscription) {
+        List<String> covered = new ArrayList<>();
+        if (subscription.prefix) {
+            for (String topic : m_entries.keySet()) {
+                if (subscription.covers(topic)) covered.add(topic);
             }
         } else {
-            if (m_entries.containsKey(topic + "/.type")) {
-                for (Map.Entry<String, NetworkTablesEntry> entry : m_entries.entrySet()) {
-                    if (entry.getKey().contains(topic)) {
-                        conn.send(encodeNT4Message(System.currentTimeMillis(), m_entries.get(entry.getKey()).getId(), 0, NetworkTablesValueType.getFromString(entry.getValue().getValue().getType()).id, entry.getValue().getValue().getAs()));
-                    }
-                }
+            for (String topic : subscription.names) {
+                if (m_entries.containsKey(topic) && !covered.contains(topic)) covered.add(topic);
+            }
+        }
+        return covered;
+    }
+
+    /**
+     * Subscribes a client to an existing topic and sends it the current value. The topic is sent the way the
+     * subscriptions of the client covering it ask, every value if any of them does.
+     *
+     * @param conn         the WebSocket connection
+     * @param connection   the state of the connection, or null if the client didn't negotiate a subprotocol
+     * @param subscription the new subscription covering the topic
+     * @param topic        the topic name, without the root "/"
+     */
+    private void subscribe(WebSocket conn, NT4Connection connection, NT4Connection.Subscription subscription, String topic) throws IOException {
+        NetworkTablesEntry subscribed = m_entries.get(topic);
+        if (subscribed == null) return;
+
+        NT4Connection.Subscription options = connection == null ? null : connection.findSubscription(topic);
+        if (options == null || (options.downsampling != null && subscription.downsampling == null)) options = subscription;
+        route(conn, subscribed, options.downsampling, options.periodMs);
+        sendCurrentValue(conn, subscribed);
+        if (topic.contains(".type")) {
+            sendSnapshot(conn, subscribed.getTopic().replaceAll(".type", ""));
+        }
+    }
+
+    /**
+     * Sends the current value of a topic to a single client.
+     *
+     * @param conn  the WebSocket connection
+     * @param entry the entry of the topic
+     */
+    private void sendCurrentValue(WebSocket conn, NetworkTablesEntry entry) throws IOException {
+        NetworkTablesValue value = entry.getValue();
+        send(conn, encodeNT4Message(System.currentTimeMillis(), entry.getId(), 0, NetworkTablesValueType.getFromString(value.getType()).id, value.getStored()));
+    }
+
+    /**
+     * Sends the values of a topic to a client as they are set, or downsampled.
+     *
+     * @param conn         the WebSocket connection
+     * @param entry        the entry of the topic
+     * @param downsampling the aggregate sent per period, or null to send every value
+     * @param periodMs     the period (in milliseconds) of the aggregates
+     */
+    private void route(WebSocket conn, NetworkTablesEntry entry, NetworkTablesDownsampling downsampling, long periodMs) {
+        String topic = entry.getTopic();
+        if (downsampling != null) {
+            unsubscribe(conn, topic);
+            getDownsampler().add(conn, entry, downsampling, periodMs);
+        } else {
+            NetworkTablesDownsampler downsampler = m_downsampler;
+            if (downsampler != null) downsampler.remove(conn, topic);
+            m_clientSubscriptions.computeIfAbsent(topic, k -> new NT4Subscribers()).add(conn);
+        }
+    }
+
+    private void handleUnsubscribe(WebSocket conn, NT4ControlMessage message) {
+        NT4Connection connection = NT4Connection.of(conn);
+        if (connection == null) return;
+
+        NT4Connection.Subscription removed = connection.removeSubscription(message.subuid);
+        if (removed == null) return;
+        for (String topic : coveredTopics(removed)) {
+            unsubscribe(conn, connection, topic);
+        }
+    }
+
+    /**
+     * Stops sending a topic to a client after one of its subscriptions ended. Subscriptions of a client may overlap,
+     * a topic still covered by another one keeps being sent the way that subscription asks.
+     *
+     * @param conn       the WebSocket connection
+     * @param connection the state of the connection, without the ended subscription
+     * @param topic      the topic name, without the root "/"
+     */
+    private void unsubscribe(WebSocket conn, NT4Connection connection, String topic) {
+        NT4Connection.Subscription other = connection.findSubscription(topic);
+        NetworkTablesEntry entry = m_entries.get(topic);
+        if (other == null || entry == null) {
+            unsubscribe(conn, topic);
+        } else {
+            route(conn, entry, other.downsampling, other.periodMs);
+        }
+    }
+
+    private void unsubscribe(WebSocket conn, String topic) {
+        NT4Subscribers subscribers = m_clientSubscriptions.get(topic);
+        if (subscribers != null) subscribers.remove(conn);
+        NetworkTablesDownsampler downsampler = m_downsampler;
+        if (downsampler != null) downsampler.remove(conn, topic);
+    }
+
+    /**
+     * Sends the values of all the topics whose name contains a string, read from a single snapshot
+     * so the client receives a coherent state of the table.
+     *
+     * @param conn   the WebSocket connection
+     * @param prefix the string the topic names contain
+     */
+    private void sendSnapshot(WebSocket conn, String prefix) throws IOException {
+        for (NetworkTablesSnapshot.Topic state : snapshot().getTopics().values()) {
+            if (state.getName().contains(prefix)) {
+                send(conn, encodeNT4Message(state.getTimestamp(), state.getId(), 0, NetworkTablesValueType.getFromString(state.getType()).id, state.getValue()));
             }
-//            System.out.println("FAILED TO SUBSCRIBE TO " + topic + " AVAILABLE TOPICS ARE:");
-//            System.out.println(m_entries.keySet());
         }
     }
 
+    /**
+     * Registers a publisher of a client. The topic keeps the ID the server announced it with, values the client
+     * sends are addressed to the publisher UID and resolved through the publishers of the connection.
+     *
+     * @param conn    the WebSocket connection
+     * @param message the publish message
+     */
+    private void handlePublish(WebSocket conn, NT4ControlMessage message) {
+        NT4Connection connection = NT4Connection.of(conn);
+        if (connection == null || message.name == null) return;
+        NetworkTablesEntry entry = m_entries.get(topicKey(message.name));
+        if (entry != null) {
+            connection.getPublishers().put(message.pubuid, entry);
+
+            entry.callListenersOfEventType(NetworkTablesEvent.kTopicPublished, entry, entry.getValue());
+        }
+    }
+
+    private void handleUnpublish(WebSocket conn, NT4ControlMessage message) {
+        NT4Connection connection = NT4Connection.of(conn);
+        if (connection != null) connection.getPublishers().remove(message.pubuid);
+    }
 
-    private void handlePublish(JsonNode data) {
-        JsonNode params = data.get("params");
-        String topic = params.get("name").asText().substring(1);
-        if (m_entries.containsKey(topic)) {
-            int pubUID = params.get("pubuid").asInt();
-            NetworkTablesEntry entry = m_entries.get(topic);
-            m_entries.get(topic).setId(pubUID);
-            m_publisherUIDSMap.put((long) pubUID, m_entries.get(topic));
+    /**
+     * Applies a setproperties message to the properties of a topic, null values remove the property.
+     *
+     * @param message the setproperties message
+     */
+    private void handleSetProperties(NT4ControlMessage message) {
+        if (message.name == null) return;
+        NetworkTablesEntry entry = m_entries.get(topicKey(message.name));
+        if (entry == null) return;
 
-            m_entries.get(topic).callListenersOfEventType(NetworkTablesEvent.kTopicPublished, entry, entry.getValue());
+        for (Map.Entry<String, Object> property : message.properties.entrySet()) {
+            if (property.getValue() == null) {
+                entry.removeProperty(property.getKey());
+            } else {
+                entry.addProperty(property.getKey(), property.getValue());
+            }
         }
     }
 
@@ -504,94 +941,883 @@ public class NT4Server extends WebSocketServer {
         ArrayNode messagesArray = m_objectMapper.createArrayNode();
         messagesArray.add(message);
         // Broadcast the message to all connected clients
-        conn.send(encodeNT4Message(System.currentTimeMillis(), id, 0, 2, clientTime));
+        send(conn, encodeNT4Message(System.currentTimeMillis(), id, 0, 2, clientTime));
     }
 
     /**
-     * Creates a NetworkTables topic and broadcasts its creation to all clients.
+     * Puts a double into a topic. Topics created by the primitive puts are updated and broadcast to
+     * existing subscribers without allocating, see {@link #putPrimitive}.
      *
      * @param topic the topic name
-     * @param value the initial value of the topic
+     * @param value the value of the topic
+     * @return the entry of the topic
      */
-    public NetworkTablesEntry putTopic(String topic, Object value) {
-        // Create the message object
-        ObjectNode message = m_objectMapper.createObjectNode();
-        message.put("method", "announce");
+    public NetworkTablesEntry putTopic(String topic, double value) {
+        return putPrimitive(topic, NetworkTablesValueType.Double, java.lang.Double.doubleToLongBits(value));
+    }
 
-        // Create params object
-        ObjectNode params = m_objectMapper.createObjectNode();
-        params.put("name", "/" + topic);
-        String typeString = NetworkTablesValueType.determineType(value).typeString;
+    /**
+     * Puts a float into a topic without allocating once the topic exists.
+     *
+     * @param topic the topic name
+     * @param value the value of the topic
+     * @return the entry of the topic
+     */
+    public NetworkTablesEntry putTopic(String topic, float value) {
+        return putPrimitive(topic, NetworkTablesValueType.Float, java.lang.Float.floatToIntBits(value) & 0xffffffffL);
+    }
+
+    /**
+     * Puts an integer into a topic without allocating once the topic exists.
+     *
+     * @param topic the topic name
+     * @param value the value of the topic
+     * @return the entry of the topic
+     */
+    public NetworkTablesEntry putTopic(String topic, long value) {
+        return putPrimitive(topic, NetworkTablesValueType.Int, value);
+    }
 
-        NetworkTablesEntry entry = new NetworkTablesEntry(topic, new NetworkTablesValue(value, typeString));
+    /**
+     * Puts a boolean into a topic without allocating once the topic exists.
+     *
+     * @param topic the topic name
+     * @param value the value of the topic
+     * @return the entry of the topic
+     */
+    public NetworkTablesEntry putTopic(String topic, boolean value) {
+        return putPrimitive(topic, NetworkTablesValueType.Boolean, value ? 1 : 0);
+    }
 
-        int id;
-        if (m_entries.containsKey(topic)) {
-            id = m_entries.get(topic).getId();
+    /**
+     * Zero-garbage put. The first put creates an entry holding a primitive value. Later puts with the same type
+     * update it in place, and send it to existing subscribers from a reused buffer. Nothing is allocated as long as
+     * the topic has no listeners and fewer than {@link #FAN_OUT_THRESHOLD} subscribers.
+     * Topics created with an object value, or put with another type, take the allocating path.
+     *
+     * @param topic the topic name
+     * @param type  the type of the value
+     * @param bits  the value as raw bits
+     * @return the entry of the topic
+     */
+    private NetworkTablesEntry putPrimitive(String topic, NetworkTablesValueType type, long bits) {
+        NetworkTablesEntry entry = m_entries.get(topic);
+        if (entry == null) {
+            NetworkTablesEntry created = createTopic(new NetworkTablesEntry(topic, type, bits));
+            if (created != null) return created;
             entry = m_entries.get(topic);
-            typeString = entry.getValue().getType();
+        }
 
-            if (value != entry.getValue().get()) {
-//                System.out.println("Value updated from: " + entry.getValue().get().toString() + " to: " + value.toString());
-                m_entries.get(topic).update(value);
-            }
+        NetworkTablesPrimitiveCell primitive = entry.getPrimitive();
+        if (primitive == null || primitive.getType() != type) {
+            return putTopic(topic, NetworkTablesPrimitiveCell.toObject(type, bits));
+        }
 
-        } else {
-            id = m_entries.size() + 1;
-            entry.setId(m_entries.size() + 1);
-            m_entries.put(topic, entry);
+        setPrimitive(entry, type, bits);
+        return entry;
+    }
+
+    /**
+     * Updates the primitive value of an entry of this server without looking it up, see {@link #putPrimitive}.
+     *
+     * @param entry an entry holding a primitive value of the type of the bits
+     * @param type  the type of the value
+     * @param bits  the value as raw bits
+     * @return true if the value changed
+     */
+    boolean setPrimitive(NetworkTablesEntry entry, NetworkTablesValueType type, long bits) {
+        NetworkTablesPrimitiveCell primitive = entry.getPrimitive();
+        if (primitive == null) {
+            // A bound value was set on the entry since it was checked
+            return setValue(entry, NetworkTablesPrimitiveCell.toObject(type, bits));
         }
-        params.put("id", id); // Set a unique topic ID
 
-        params.put("type", typeString);
-        params.put("pubuid", id); // Use the publisher ID
+        entry.touch();
+        int result = primitive.set(bits);
+        if (result == NetworkTablesPrimitiveCell.RETIRED) {
+            // The entry was given a value the primitive can't hold since it was read
+            return setValue(entry, NetworkTablesPrimitiveCell.toObject(type, bits));
+        }
+        if (result == NetworkTablesPrimitiveCell.UNCHANGED) {
+            m_suppressedUpdates.incrementAndGet();
+            return false;
+        }
+        m_changedUpdates.incrementAndGet();
+        entry.incrementUpdateCount();
+        entry.callUpdateListeners(type, bits, System.currentTimeMillis());
+        sendValue(entry);
+        return true;
+    }
 
-        ObjectNode properties = m_objectMapper.createObjectNode();
-        // Add any properties here if needed
-        params.set("properties", properties);
+    /**
+     * Updates the value of an entry of this server without looking it up, values equal to the current one are ignored.
+     *
+     * @param entry the entry to update
+     * @param value the new value
+     * @return true if the value changed
+     */
+    boolean setValue(NetworkTablesEntry entry, Object value) {
+        return setValue(entry, value, false);
+    }
 
-        // Attach params to the message
-        message.set("params", params);
+    /**
+     * @param copyArrays true if array values belong to the caller and are copied before being stored, the copy is
+     *                   only made once the value is known to have changed
+     */
+    private boolean setValue(NetworkTablesEntry entry, Object value, boolean copyArrays) {
+        entry.touch();
+        Object stored = updateValue(entry, value, copyArrays);
+        if (stored == UNCHANGED) return false;
+        onLocalUpdate(entry, stored);
+        return true;
+    }
 
-        // Create an array of messages if needed
-        ArrayNode messagesArray = m_objectMapper.createArrayNode();
-        messagesArray.add(message);
-        // Broadcast the message to all connected clients
-        broadcast(messagesArray.toString());
+    /**
+     * Creates a NetworkTables topic and broadcasts its creation to all clients.
+     * If the topic already exists its value is updated, values equal to the current one are ignored.
+     * Arrays are copied, the caller can modify and put the same array again.
+     *
+     * @param topic the topic name
+     * @param value the initial value of the topic
+     */
+    public NetworkTablesEntry putTopic(String topic, Object value) {
+        NetworkTablesEntry entry = m_entries.get(topic);
+        if (entry == null) {
+            NetworkTablesValueType type = NetworkTablesValueType.determineType(value);
+            // Scalars get a primitive entry so later puts can take the zero-garbage path
+            NetworkTablesEntry created = NetworkTablesPrimitiveCell.isPrimitive(type)
+                    ? createTopic(new NetworkTablesEntry(topic, type, NetworkTablesPrimitiveCell.toBits(type, value)))
+                    : createTopic(topic, new NetworkTablesValue(NetworkTablesValueType.copyArray(value), type.typeString));
+            if (created != null) return created;
+            entry = m_entries.get(topic); // Another thread created the topic first, update its value instead
+        }
+
+        setValue(entry, value, true);
         return entry;
     }
 
     public NetworkTablesEntry putTopic(String topic, NetworkTablesValue value) {
-        // Create the message object
-        ObjectNode message = m_objectMapper.createObjectNode();
-        message.put("method", "announce");
+        NetworkTablesEntry entry = m_entries.get(topic);
+        if (entry == null) {
+            NetworkTablesEntry created = createTopic(topic, value);
+            if (created != null) return created;
+            entry = m_entries.get(topic);
+        }
+        entry.touch();
+        if (value == entry.getValue() || NetworkTablesValueType.getFromString(value.getType()) == NetworkTablesValueType.Unknown) { // Prevents issue that is caused when client gets disconnected while server is running
+            m_suppressedUpdates.incrementAndGet();
+            return entry;
+        }
 
-        // Create params object
-        ObjectNode params = m_objectMapper.createObjectNode();
-        params.put("name", "/" + topic);
-        String typeString = value.getType();
+        // Keeps the new getter and setter even if the current value is the same
+        NetworkTablesValue previous = entry.getAndSet(value);
+        Object stored = value.get();
+        if (!isUnchanged(entry, previous, stored)) {
+            onLocalUpdate(entry, stored);
+        }
 
-        NetworkTablesEntry entry = new NetworkTablesEntry(topic, value);
+        return entry;
+    }
 
-        int id;
-        if (m_entries.containsKey(topic)) {
-            id = m_entries.get(topic).getId();
-            entry = m_entries.get(topic);
+    /**
+     * Atomically replaces the value of an entry unless the new value is equal to the current one.
+     * Concurrent updates never get lost, the comparison is retried if another thread replaced the value meanwhile.
+     *
+     * @param entry the entry being updated
+     * @param value the new value
+     * @return the value stored by this update, or {@link #UNCHANGED} if the value didn't change
+     */
+    private Object updateValue(NetworkTablesEntry entry, Object value) {
+        return updateValue(entry, value, false);
+    }
+
+    private Object updateValue(NetworkTablesEntry entry, Object value, boolean copyArrays) {
+        NetworkTablesPrimitiveCell primitive = entry.getPrimitive();
+        if (primitive != null) {
+            if (!NetworkTablesPrimitiveCell.accepts(primitive.getType(), value)) {
+                // The type of the topic was announced to the clients, it can't change with a put
+                m_rejectedUpdates.incrementAndGet();
+                return UNCHANGED;
+            }
+            int result = primitive.set(value);
+            if (result == NetworkTablesPrimitiveCell.UNCHANGED) {
+                m_suppressedUpdates.incrementAndGet();
+                return UNCHANGED;
+            }
+            if (result == NetworkTablesPrimitiveCell.CHANGED) {
+                m_changedUpdates.incrementAndGet();
+                entry.incrementUpdateCount();
+                return value;
+            }
+            // The entry was given a value the primitive can't hold since it was read, its object cell is updated
+        }
+
+        Object stored = null;
+        while (true) {
+            NetworkTablesValue current = entry.getValue();
+            if (NetworkTablesValueType.getFromString(current.getType()).valueEquals(current.get(), value)) {
+                m_suppressedUpdates.incrementAndGet();
+                return UNCHANGED;
+            }
+            if (stored == null) stored = copyArrays ? NetworkTablesValueType.copyArray(value) : value;
+            if (entry.compareAndSet(current, new NetworkTablesValue(stored, current.getType()))) {
+                m_changedUpdates.incrementAndGet();
+                entry.incrementUpdateCount();
+                return stored;
+            }
+        }
+    }
+
+    /**
+     * Checks whether a new value is equal to the current value of an entry, counting the result.
+     *
+     * @param entry the entry being updated
+     * @param value the new value
+     * @return true if the update can be skipped
+     */
+    private boolean isUnchanged(NetworkTablesEntry entry, Object value) {
+        return isUnchanged(entry, entry.getValue(), value);
+    }
+
+    private boolean isUnchanged(NetworkTablesEntry entry, NetworkTablesValue current, Object value) {
+        if (NetworkTablesValueType.getFromString(current.getType()).valueEquals(current.get(), value)) {
+            m_suppressedUpdates.incrementAndGet();
+            return true;
+        }
+        m_changedUpdates.incrementAndGet();
+        entry.incrementUpdateCount();
+        return false;
+    }
+
+    /**
+     * Notifies listeners and subscribers of a value that changed on the server side.
+     *
+     * @param entry the updated entry
+     * @param value the value stored by the update
+     */
+    private void onLocalUpdate(NetworkTablesEntry entry, Object value) {
+        entry.callUpdateListeners(value, System.currentTimeMillis());
+        sendValue(entry);
+    }
+
+    /**
+     * Sends the current value of an entry to the clients subscribed to it.
+     *
+     * @param entry the entry to send
+     */
+    private void sendValue(NetworkTablesEntry entry) {
+        NetworkTablesDownsampler downsampler = m_downsampler;
+        if (downsampler != null) downsampler.accumulate(entry);
+
+        NT4Subscribers subscribers = m_clientSubscriptions.get(entry.getTopic());
+        if (subscribers == null || subscribers.isEmpty()) return;
+        if (m_manualFlush) {
+            m_dirtyTopics.add(entry);
+            return;
+        }
 
-            if (value != entry.getValue().get()) {
-                if (NetworkTablesValueType.determineType(value) != NetworkTablesValueType.Unknown) // Prevents issue that is caused when client gets disconnected while server is running
-                    m_entries.get(topic).update(value);
+        NetworkTablesPrimitiveCell primitive = entry.getPrimitive();
+        if (primitive != null) {
+            long start = System.nanoTime();
+            ByteBuffer frame = m_encoder.get().encode(entry.getId(), System.currentTimeMillis(), primitive.getType(), primitive.getBits());
+            m_metrics.getEncodeTime().record(System.nanoTime() - start);
+            send(subscribers.get(), frame);
+            return;
+        }
+
+        try {
+            NetworkTablesValue value = entry.getValue();
+            send(subscribers.get(), encodeNT4Message(System.currentTimeMillis(), entry.getId(), 0, NetworkTablesValueType.getFromString(value.getType()).id, value.getStored()));
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Sends a batch of values to their subscribers with a shared timestamp.
+     * Every subscriber receives a single frame holding the values of all the topics it is subscribed to.
+     * When sends are deferred to {@link #flush()}, the values are kept until the next flush instead.
+     *
+     * @param values map of entries to the value to send for them
+     */
+    void sendValues(Map<NetworkTablesEntry, Object> values) {
+        NetworkTablesDownsampler downsampler = m_downsampler;
+        if (downsampler != null) {
+            for (Map.Entry<NetworkTablesEntry, Object> e : values.entrySet()) {
+                downsampler.accumulate(e.getKey(), e.getValue());
             }
+        }
+        if (m_manualFlush) {
+            for (Map.Entry<NetworkTablesEntry, Object> e : values.entrySet()) {
+                NT4Subscribers subscribers = m_clientSubscriptions.get(e.getKey().getTopic());
+                if (subscribers == null || subscribers.isEmpty()) continue;
+                m_pendingValues.put(e.getKey(), e.getValue());
+                m_dirtyTopics.add(e.getKey());
+            }
+            return;
+        }
+        sendBatch(values);
+    }
+
+    private void sendBatch(Map<NetworkTablesEntry, Object> values) {
+        long timestamp = System.currentTimeMillis();
+        Map<WebSocket, ByteArrayOutputStream> frames = new HashMap<>();
+
+        for (Map.Entry<NetworkTablesEntry, Object> e : values.entrySet()) {
+            NetworkTablesEntry entry = e.getKey();
+            NT4Subscribers subscribers = m_clientSubscriptions.get(entry.getTopic());
+            if (subscribers == null || subscribers.isEmpty()) continue;
 
+            try {
+                ByteBuffer message = encodeValue(entry, timestamp, e.getValue());
+                for (WebSocket subscriber : subscribers.get()) {
+                    frames.computeIfAbsent(subscriber, k -> new ByteArrayOutputStream()).write(message.array(), message.arrayOffset() + message.position(), message.remaining());
+                }
+            } catch (IOException ex) {
+                ex.printStackTrace();
+            }
+        }
+
+        long start = System.nanoTime();
+        forEachConnection(frames.keySet().toArray(new WebSocket[0]), conn -> send(conn, ByteBuffer.wrap(frames.get(conn).toByteArray())));
+        m_metrics.getBroadcastTime().record(System.nanoTime() - start);
+    }
+
+    /**
+     * Encodes a value frame of an entry, primitive entries are encoded into a buffer reused by the next call.
+     *
+     * @param entry     the entry
+     * @param timestamp the message timestamp
+     * @param value     the value
+     * @return the frame
+     */
+    private ByteBuffer encodeValue(NetworkTablesEntry entry, long timestamp, Object value) throws IOException {
+        NetworkTablesPrimitiveCell primitive = entry.getPrimitive();
+        if (primitive != null && (value instanceof Number || value instanceof Boolean)) {
+            return m_encoder.get().encode(entry.getId(), timestamp, primitive.getType(), NetworkTablesPrimitiveCell.toBits(primitive.getType(), value));
+        }
+        return encodeNT4Message(timestamp, entry.getId(), 0, NetworkTablesValueType.getFromString(entry.getValue().getType()).id, value);
+    }
+
+    /**
+     * Sends the values of the entries changed since the last flush, see {@link #setManualFlush(boolean)}. Every
+     * subscriber receives a single frame holding the values of all the changed topics it is subscribed to, with
+     * the same timestamp, so it sees the changes of a robot loop together.
+     *
+     * @return the number of topics sent
+     */
+    public int flush() {
+        synchronized (m_flushLock) {
+            NetworkTablesEntry[] dirty = m_dirtyTopics.drain();
+            if (dirty.length == 0) return 0;
+
+            Map<NetworkTablesEntry, Object> values = new LinkedHashMap<>();
+            for (NetworkTablesEntry entry : dirty) {
+                Object pending = m_pendingValues.isEmpty() ? null : m_pendingValues.remove(entry);
+                if (entry.isRemoved()) continue;
+                NetworkTablesPrimitiveCell primitive = entry.getPrimitive();
+                if (pending != null) {
+                    values.put(entry, pending);
+                } else {
+                    values.put(entry, primitive != null ? primitive.get() : entry.getValue().getStored());
+                }
+            }
+            sendBatch(values);
+            return values.size();
+        }
+    }
+
+    /**
+     * Defers sending updates to subscribers until {@link #flush()} is called. Listeners and subscriber handles are
+     * still notified as soon as a value is put.
+     *
+     * @param manualFlush true to send updates on flush, false to send them as soon as they are put
+     */
+    public void setManualFlush(boolean manualFlush) {
+        m_manualFlush = manualFlush;
+        if (!manualFlush) flush();
+    }
+
+    /**
+     * @return true if updates are sent by {@link #flush()} instead of as soon as they are put
+     */
+    public boolean isManualFlush() {
+        return m_manualFlush;
+    }
+
+    /**
+     * Flushes the changed topics periodically, enabling {@link #setManualFlush(boolean)}. A period of 0 stops the
+     * periodic flushes, updates are then sent by explicit calls to {@link #flush()}.
+     *
+     * @param periodMs the period (in milliseconds) between two flushes, 0 to stop flushing periodically
+     */
+    public synchronized void setAutoFlushPeriod(long periodMs) {
+        if (m_flushExecutor != null) {
+            m_flushExecutor.shutdownNow();
+            m_flushExecutor = null;
+        }
+        m_autoFlushPeriodMs = Math.max(0, periodMs);
+        if (periodMs <= 0) return;
+
+        m_manualFlush = true;
+        m_flushExecutor = NetworkTablesThreads.newScheduledExecutor("NT4Server-Flush");
+        m_flushExecutor.scheduleAtFixedRate(() -> {
+            try {
+                flush();
+            } catch (RuntimeException e) {
+                e.printStackTrace();
+            }
+        }, periodMs, periodMs, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * @return the period (in milliseconds) between two automatic flushes, 0 if there are none
+     */
+    public synchronized long getAutoFlushPeriod() {
+        return m_autoFlushPeriodMs;
+    }
+
+    /**
+     * Sends a primitive aggregate of a downsampled subscription to its client.
+     *
+     * @param conn      the WebSocket connection
+     * @param entry     the entry of the topic
+     * @param timestamp the timestamp of the aggregate
+     * @param type      the type of the topic
+     * @param bits      the aggregate as raw bits
+     */
+    void sendDownsampled(WebSocket conn, NetworkTablesEntry entry, long timestamp, NetworkTablesValueType type, long bits) {
+        send(conn, m_encoder.get().encode(entry.getId(), timestamp, type, bits));
+    }
+
+    /**
+     * Sends the last value of a downsampled subscription of a non-primitive topic to its client.
+     *
+     * @param conn      the WebSocket connection
+     * @param entry     the entry of the topic
+     * @param timestamp the timestamp of the value
+     * @param value     the value
+     */
+    void sendDownsampled(WebSocket conn, NetworkTablesEntry entry, long timestamp, Object value) {
+        try {
+            send(conn, encodeNT4Message(timestamp, entry.getId(), 0, NetworkTablesValueType.getFromString(entry.getValue().getType()).id, value));
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Sends a binary frame to a client, counting it in the metrics.
+     *
+     * @param conn the WebSocket connection
+     * @param data the frame payload
+     */
+    private void send(WebSocket conn, ByteBuffer data) {
+        int size = data.remaining();
+        if (conn instanceof NT4LocalConnection) {
+            // Local transports drop frames when the client falls behind, without throwing for every frame
+            if (!((NT4LocalConnection) conn).sendBinary(data)) {
+                m_metrics.onDropped();
+                return;
+            }
         } else {
-            id = m_entries.size() + 1;
-            entry.setId(m_entries.size() + 1);
-            m_entries.put(topic, entry);
+            try {
+                conn.send(data);
+            } catch (WebsocketNotConnectedException e) {
+                m_metrics.onDropped();
+                return;
+            }
         }
-        params.put("id", id); // Set a unique topic ID
+        onSent(conn, size);
+    }
 
-        params.put("type", typeString);
-        params.put("pubuid", id); // Use the publisher ID
+    /**
+     * Sends a text frame to a client, counting it in the metrics.
+     *
+     * @param conn the WebSocket connection
+     * @param text the frame text
+     */
+    private void send(WebSocket conn, String text) {
+        try {
+            conn.send(text);
+        } catch (WebsocketNotConnectedException e) {
+            m_metrics.onDropped();
+            return;
+        }
+        onSent(conn, text.length());
+    }
+
+    /**
+     * Sends the same binary frame to several clients, timing the whole fan-out.
+     * Sending to fewer than {@link #FAN_OUT_THRESHOLD} clients doesn't allocate.
+     *
+     * @param conns the WebSocket connections
+     * @param data  the frame payload
+     */
+    private void send(WebSocket[] conns, ByteBuffer data) {
+        long start = System.nanoTime();
+        if (isFanOut(conns.length)) {
+            forEachConnection(conns, conn -> send(conn, data.duplicate()));
+        } else {
+            // The WebSocket copies the payload into its own frame, so the buffer is rewound and reused
+            int position = data.position();
+            for (WebSocket conn : conns) {
+                data.position(position);
+                send(conn, data);
+            }
+        }
+        m_metrics.getBroadcastTime().record(System.nanoTime() - start);
+    }
+
+    /**
+     * Sends the same text frame to several clients, timing the whole fan-out.
+     *
+     * @param conns the WebSocket connections
+     * @param text  the frame text
+     */
+    private void send(Collection<WebSocket> conns, String text) {
+        long start = System.nanoTime();
+        forEachConnection(conns.toArray(new WebSocket[0]), conn -> send(conn, text));
+        m_metrics.getBroadcastTime().record(System.nanoTime() - start);
+    }
+
+    /**
+     * Runs an action for every connection. When {@link NetworkTablesThreads} uses virtual threads and there are
+     * enough connections, each connection gets its own task so frames for many clients are compressed and queued
+     * in parallel. The call returns once every action completed, which keeps the frames sent to a client in order.
+     *
+     * @param conns  the WebSocket connections
+     * @param action the action to run for each connection
+     */
+    private void forEachConnection(WebSocket[] conns, Consumer<WebSocket> action) {
+        if (!isFanOut(conns.length)) {
+            for (WebSocket conn : conns) {
+                action.accept(conn);
+            }
+            return;
+        }
+
+        ExecutorService executor = getSendExecutor();
+        List<Future<?>> tasks = new ArrayList<>(conns.length);
+        for (WebSocket conn : conns) {
+            tasks.add(executor.submit(() -> action.accept(conn)));
+        }
+        for (Future<?> task : tasks) {
+            try {
+                task.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (ExecutionException e) {
+                e.getCause().printStackTrace();
+            }
+        }
+    }
+
+    private static boolean isFanOut(int connections) {
+        return NetworkTablesThreads.isVirtual() && connections >= FAN_OUT_THRESHOLD;
+    }
+
+    private synchronized ExecutorService getSendExecutor() {
+        if (m_sendExecutor == null) {
+            m_sendExecutor = NetworkTablesThreads.newTaskExecutor("NT4Server-Send");
+        }
+        return m_sendExecutor;
+    }
+
+    private void onSent(WebSocket conn, int bytes) {
+        m_metrics.onSent(bytes);
+        NT4Connection connection = NT4Connection.of(conn);
+        if (connection != null) connection.onSent(bytes);
+    }
+
+    private void onReceived(WebSocket conn, int bytes) {
+        m_metrics.onReceived(bytes);
+        NT4Connection connection = NT4Connection.of(conn);
+        if (connection != null) connection.onReceived(bytes);
+    }
+
+    /**
+     * Returns the state of every client connected with an NT4 subprotocol.
+     *
+     * @return the connections, in no particular order
+     */
+    public List<NT4Connection> getNT4Connections() {
+        List<NT4Connection> connections = new ArrayList<>();
+        for (WebSocket conn : m_connections) {
+            NT4Connection connection = NT4Connection.of(conn);
+            if (connection != null) connections.add(connection);
+        }
+        return connections;
+    }
+
+    /**
+     * Returns the metrics of this server, see {@link NetworkTablesMetrics#publish(long)} to publish them as topics.
+     *
+     * @return the metrics of this server
+     */
+    public NetworkTablesMetrics getMetrics() {
+        return m_metrics;
+    }
+
+    /**
+     * Returns the sampler polling the supplier backed entries of this server, creating it if needed.
+     *
+     * @return the sampler of this server
+     */
+    public synchronized NetworkTablesSampler getSampler() {
+        if (m_sampler == null) {
+            m_sampler = new NetworkTablesSampler(this, NetworkTablesSampler.DEFAULT_TICK_PERIOD_MS);
+        }
+        return m_sampler;
+    }
+
+    /**
+     * Handles the frames received from WebSocket clients on a pool of workers, see
+     * {@link NetworkTablesReceivePipeline}. Frames of a client are still handled in the order they were received.
+     * Clients connected through shared memory or a {@link NetworkTablesLoopback} are always handled on their own
+     * thread. It should be set before clients connect, frames received while the workers are replaced may be
+     * handled out of order.
+     *
+     * @param threads the number of workers, 0 to handle frames on the WebSocket threads
+     * @throws InterruptedException if interrupted while the previous workers handle the frames already received
+     */
+    public void setReceiveThreads(int threads) throws InterruptedException {
+        NetworkTablesReceivePipeline previous;
+        synchronized (this) {
+            previous = m_receivePipeline;
+            m_receivePipeline = threads > 0 ? new NetworkTablesReceivePipeline(threads) : null;
+        }
+        // Frames already handed to the previous workers are handled before they stop
+        if (previous != null) previous.stop(RECEIVE_STOP_TIMEOUT_MS);
+    }
+
+    /**
+     * @return the number of workers handling the frames received from WebSocket clients, 0 if they are handled on
+     * the WebSocket threads
+     */
+    public int getReceiveThreads() {
+        NetworkTablesReceivePipeline pipeline = m_receivePipeline;
+        return pipeline == null ? 0 : pipeline.getThreadCount();
+    }
+
+    /**
+     * @return the workers handling the frames received from WebSocket clients, null if they are handled on the
+     * WebSocket threads
+     */
+    public NetworkTablesReceivePipeline getReceivePipeline() {
+        return m_receivePipeline;
+    }
+
+    /**
+     * Returns the downsampler of the subscriptions asking for aggregates, creating it if needed.
+     *
+     * @return the downsampler of this server
+     */
+    public synchronized NetworkTablesDownsampler getDownsampler() {
+        if (m_downsampler == null) {
+            m_downsampler = new NetworkTablesDownsampler(this);
+        }
+        return m_downsampler;
+    }
+
+    /**
+     * Returns the dispatcher calling the setters of values written by clients, creating it if needed.
+     *
+     * @return the setter dispatcher of this server
+     */
+    public synchronized NetworkTablesSetterDispatcher getSetterDispatcher() {
+        if (m_setterDispatcher == null) {
+            m_setterDispatcher = new NetworkTablesSetterDispatcher(NetworkTablesSetterDispatcher.DEFAULT_TICK_PERIOD_MS);
+        }
+        return m_setterDispatcher;
+    }
+
+    /**
+     * @return the setter dispatcher of this server, or null if no setter was called yet
+     */
+    NetworkTablesSetterDispatcher peekSetterDispatcher() {
+        return m_setterDispatcher;
+    }
+
+    /**
+     * Adds a new topic and announces it to all clients, clients whose subscriptions cover the topic are sent its value.
+     * The topic is created atomically, when several threads create the same topic only one of them announces it.
+     *
+     * @param topic the topic name
+     * @param value the initial value of the topic
+     * @return the created entry, or null if another thread created the topic first
+     */
+    private NetworkTablesEntry createTopic(String topic, NetworkTablesValue value) {
+        return createTopic(new NetworkTablesEntry(topic, value));
+    }
+
+    private NetworkTablesEntry createTopic(NetworkTablesEntry created) {
+        NetworkTablesEntry entry = m_entries.computeIfAbsent(created.getTopic(), t -> {
+            Integer freeId = m_freeTopicIds.poll();
+            created.setId(freeId != null ? freeId : m_nextTopicId.incrementAndGet());
+            return created;
+        });
+        if (entry != created) return null;
+
+        send(m_connections, createAnnounceMessage(entry));
+        for (WebSocket conn : m_connections) {
+            NT4Connection connection = NT4Connection.of(conn);
+            NT4Connection.Subscription subscription = connection == null ? null : connection.findSubscription(entry.getTopic());
+            if (subscription == null) continue;
+            route(conn, entry, subscription.downsampling, subscription.periodMs);
+            try {
+                sendCurrentValue(conn, entry);
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+        return entry;
+    }
+
+    /**
+     * Removes a topic and unannounces it to all clients. The publishers clients have for it are dropped, and its ID is
+     * given to a later topic. Subscriptions covering it are kept, a topic created again with the same name is sent
+     * to the same clients.
+     *
+     * @param topic the topic name
+     * @return true if the topic existed
+     */
+    public boolean removeTopic(String topic) {
+        NetworkTablesEntry entry = m_entries.get(topic);
+        return entry != null && removeTopic(entry);
+    }
+
+    /**
+     * Removes the topic of an entry unless it was already replaced by another entry.
+     *
+     * @param entry the entry to remove
+     * @return true if the entry was removed
+     */
+    boolean removeTopic(NetworkTablesEntry entry) {
+        if (!m_entries.remove(entry.getTopic(), entry)) return false;
+        entry.markRemoved();
+
+        m_clientSubscriptions.remove(entry.getTopic());
+        NetworkTablesDownsampler downsampler = m_downsampler;
+        if (downsampler != null) downsampler.removeTopic(entry.getTopic());
+        for (WebSocket conn : m_connections) {
+            NT4Connection connection = NT4Connection.of(conn);
+            if (connection != null) connection.getPublishers().removeEntry(entry);
+        }
+        synchronized (this) {
+            if (m_sampler != null) m_sampler.remove(entry);
+        }
+        if (entry.getTopic().startsWith(SCHEMA_PREFIX)) {
+            m_publishedSchemas.remove(entry.getTopic().substring(SCHEMA_PREFIX.length()));
+        }
+
+        send(m_connections, createUnannounceMessage(entry));
+        entry.callListenersOfEventType(NetworkTablesEvent.kTopicUnAnnounced, entry, entry.getValue());
+        m_freeTopicIds.add(entry.getId());
+        return true;
+    }
+
+    /**
+     * Records a write of an unchanged raw value to a topic, publishers that skip unchanged values call it so the topic
+     * isn't considered idle. The bytes are compared with the current value of the topic, which may have been written
+     * by a client or another put since the publisher's last write.
+     *
+     * @param topic  the topic name
+     * @param bytes  the array holding the written bytes
+     * @param length the number of written bytes
+     * @return true if the topic holds these bytes, false if it doesn't exist or holds another value
+     */
+    boolean touchTopicIfUnchanged(String topic, byte[] bytes, int length) {
+        NetworkTablesEntry entry = m_entries.get(topic);
+        if (entry == null || !NetworkTablesValue.rawEquals(entry.getValue().getStored(), bytes, length)) return false;
+        entry.touch();
+        return true;
+    }
+
+    /**
+     * Removes the topics that aren't written for longer than a timeout, see {@link NetworkTablesSweeper}.
+     *
+     * @param idleTimeoutMs the time (in milliseconds) after its last write a topic is removed, 0 to keep all topics
+     */
+    public synchronized void setIdleTimeout(long idleTimeoutMs) {
+        if (m_sweeper != null) m_sweeper.stop();
+        m_sweeper = null;
+        if (idleTimeoutMs <= 0) return;
+
+        m_sweeper = new NetworkTablesSweeper(this, idleTimeoutMs);
+        m_sweeper.start();
+    }
+
+    /**
+     * @return the time (in milliseconds) after its last write a topic is removed, 0 if topics are kept
+     */
+    public synchronized long getIdleTimeout() {
+        return m_sweeper == null ? 0 : m_sweeper.getIdleTimeout();
+    }
+
+    /**
+     * Accepts clients on the same host connecting through shared memory, see
+     * {@link NT4Client#NT4Client(File)}. They exchange the same frames as WebSocket clients through memory-mapped
+     * ring buffers in the directory, WebSocket clients are still accepted.
+     *
+     * @param directory the directory the clients create their ring buffers in, created if needed
+     * @throws IOException                   if the directory can't be created
+     * @throws UnsupportedOperationException if the runtime has no memory fences to order the shared accesses
+     */
+    public synchronized void startSharedMemory(File directory) throws IOException {
+        NetworkTablesFences.checkAvailable();
+        if (m_sharedMemory != null) {
+            if (m_sharedMemory.getDirectory().equals(directory)) return;
+            throw new IllegalStateException("Shared memory is already accepted in " + m_sharedMemory.getDirectory());
+        }
+
+        NT4SharedMemoryServer sharedMemory = new NT4SharedMemoryServer(this, directory);
+        sharedMemory.start();
+        m_sharedMemory = sharedMemory;
+    }
+
+    /**
+     * Stops accepting clients through shared memory and closes the connected ones.
+     *
+     * @throws InterruptedException if interrupted while waiting for the connections to close
+     */
+    public void stopSharedMemory() throws InterruptedException {
+        NT4SharedMemoryServer sharedMemory;
+        synchronized (this) {
+            sharedMemory = m_sharedMemory;
+            m_sharedMemory = null;
+        }
+        // Joined without holding the lock, its thread may need it to handle the last frames
+        if (sharedMemory != null) sharedMemory.stop();
+    }
+
+    /**
+     * @param entry an entry
+     * @return true if the entry is polled by the sampler of this server
+     */
+    synchronized boolean isSampled(NetworkTablesEntry entry) {
+        return m_sampler != null && m_sampler.contains(entry);
+    }
+
+    /**
+     * Builds the announce message of a topic.
+     *
+     * @param entry the entry to announce
+     * @return the JSON text of the announce message
+     */
+    private String createAnnounceMessage(NetworkTablesEntry entry) {
+        // Create the message object
+        ObjectNode message = m_objectMapper.createObjectNode();
+        message.put("method", "announce");
+
+        // Create params object
+        ObjectNode params = m_objectMapper.createObjectNode();
+        params.put("name", "/" + entry.getTopic());
+        params.put("id", entry.getId()); // Set a unique topic ID
+
+        params.put("type", entry.getValue().getType());
+        params.put("pubuid", entry.getId()); // Use the publisher ID
 
         ObjectNode properties = m_objectMapper.createObjectNode();
         // Add any properties here if needed
@@ -603,13 +1829,99 @@ public class NT4Server extends WebSocketServer {
         // Create an array of messages if needed
         ArrayNode messagesArray = m_objectMapper.createArrayNode();
         messagesArray.add(message);
-        // Broadcast the message to all connected clients
-        broadcast(messagesArray.toString());
+        return messagesArray.toString();
+    }
 
-        return entry;
+    /**
+     * Builds the unannounce message of a topic.
+     *
+     * @param entry the entry to unannounce
+     * @return the JSON text of the unannounce message
+     */
+    private String createUnannounceMessage(NetworkTablesEntry entry) {
+        ObjectNode message = m_objectMapper.createObjectNode();
+        message.put("method", "unannounce");
+
+        ObjectNode params = m_objectMapper.createObjectNode();
+        params.put("name", "/" + entry.getTopic());
+        params.put("id", entry.getId());
+        message.set("params", params);
+
+        ArrayNode messagesArray = m_objectMapper.createArrayNode();
+        messagesArray.add(message);
+        return messagesArray.toString();
+    }
+
+    /**
+     * Publishes the schema of a struct and of the structs it contains under {@link #SCHEMA_PREFIX}.
+     * Each schema is only published once.
+     *
+     * @param struct the struct whose schema is published
+     */
+    public void publishSchema(NetworkTablesStruct<?> struct) {
+        if (!m_publishedSchemas.add(struct.getTypeString())) return;
+
+        // Nested schemas first so clients can resolve the struct as soon as its schema arrives
+        for (NetworkTablesStruct<?> nested : struct.getNested()) {
+            publishSchema(nested);
+        }
+        putTopic(SCHEMA_PREFIX + struct.getTypeString(), new NetworkTablesValue(struct.getSchema().getBytes(StandardCharsets.UTF_8), NetworkTablesStruct.SCHEMA_TYPE));
+    }
+
+    /**
+     * Publishes the file descriptors a protobuf message needs under {@link #SCHEMA_PREFIX}.
+     * Each file is only published once.
+     *
+     * @param proto the description of the message class
+     */
+    public void publishSchema(NetworkTablesProto<?> proto) {
+        for (com.google.protobuf.Descriptors.FileDescriptor file : proto.getFileDescriptors()) {
+            String name = NetworkTablesProto.TYPE_PREFIX + file.getName();
+            if (!m_publishedSchemas.add(name)) continue;
+
+            putTopic(SCHEMA_PREFIX + name, new NetworkTablesValue(file.toProto().toByteArray(), NetworkTablesProto.SCHEMA_TYPE));
+        }
     }
 
+    /**
+     * @return the number of updates skipped because the new value was equal to the current one
+     */
+    public long getSuppressedUpdateCount() {
+        return m_suppressedUpdates.get();
+    }
+
+    /**
+     * @return the number of updates that changed the value of a topic
+     */
+    public long getChangedUpdateCount() {
+        return m_changedUpdates.get();
+    }
+
+    /**
+     * @return the number of updates ignored because the value couldn't be held by the type of the topic, such as a
+     * number put into a boolean topic. Numbers put into a numeric topic of another type are converted instead.
+     */
+    public long getRejectedUpdateCount() {
+        return m_rejectedUpdates.get();
+    }
+
+    /**
+     * Returns the live map of entries, its values change while it is iterated.
+     * Use {@link #snapshot()} to read a consistent state of all topics.
+     *
+     * @return map of topic names to entries
+     */
     public Map<String, NetworkTablesEntry> getEntries() {
         return m_entries;
     }
+
+    /**
+     * Takes a point-in-time, immutable view of the values of all topics without blocking writers.
+     *
+     * @return the snapshot
+     * @see NetworkTablesSnapshot
+     */
+    public NetworkTablesSnapshot snapshot() {
+        return NetworkTablesSnapshot.of(m_entries.values());
+    }
 }
@@ -0,0 +1,102 @@
+package org.frcforftc.networktables;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.UUID;
+
+/**
+ * Client side of a shared memory connection, see {@link NT4Server#startSharedMemory(File)}. A thread polls the ring
+ * written by the server and hands its frames to the client.
+ */
+final class NT4SharedMemoryClientTransport implements NT4ClientTransport {
+    /**
+     * Directory watched by the server
+     */
+    private final File m_directory;
+    /**
+     * The connection, null until connected
+     */
+    private volatile NT4SharedMemoryLink m_link = null;
+
+    NT4SharedMemoryClientTransport(File directory) {
+        NetworkTablesFences.checkAvailable();
+        this.m_directory = directory;
+    }
+
+    @Override
+    public URI getURI() {
+        return m_directory.toURI();
+    }
+
+    @Override
+    public void connect(NT4Client client) throws IOException {
+        if (m_link != null) throw new IllegalStateException("The client is already connected");
+
+        NT4SharedMemoryLink link = NT4SharedMemoryLink.connect(m_directory, "client-" + UUID.randomUUID(), NetworkTablesSharedMemoryRing.DEFAULT_CAPACITY);
+        m_link = link;
+        client.onOpen(null);
+
+        Thread thread = new Thread(() -> run(client, link), "NT4Client-SharedMemory");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private void run(NT4Client client, NT4SharedMemoryLink link) {
+        int idleCount = 0;
+        while (!link.isClosed()) {
+            int frames = 0;
+            try {
+                link.service();
+                frames = link.poll((type, payload) -> {
+                    if (type == NetworkTablesSharedMemoryRing.TEXT) {
+                        client.onMessage(new String(payload, StandardCharsets.UTF_8));
+                    } else if (type == NetworkTablesSharedMemoryRing.BINARY) {
+                        client.onMessage(ByteBuffer.wrap(payload));
+                    }
+                });
+            } catch (RuntimeException e) {
+                client.onError(e);
+            }
+            NT4SharedMemoryLink.idle(frames == 0 ? ++idleCount : (idleCount = 0));
+        }
+
+        link.delete();
+        client.onClose(1000, "", link.isClosedByPeer());
+    }
+
+    @Override
+    public boolean sendText(String text) {
+        return sendBinary(NetworkTablesSharedMemoryRing.TEXT, ByteBuffer.wrap(text.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    @Override
+    public boolean sendBinary(ByteBuffer payload) {
+        return sendBinary(NetworkTablesSharedMemoryRing.BINARY, payload);
+    }
+
+    private boolean sendBinary(int type, ByteBuffer payload) {
+        NT4SharedMemoryLink link = m_link;
+        return link != null && link.send(type, payload);
+    }
+
+    @Override
+    public boolean isOpen() {
+        NT4SharedMemoryLink link = m_link;
+        return link != null && !link.isClosed();
+    }
+
+    @Override
+    public boolean isClosed() {
+        NT4SharedMemoryLink link = m_link;
+        return link != null && link.isClosed();
+    }
+
+    @Override
+    public void close() {
+        NT4SharedMemoryLink link = m_link;
+        if (link != null) link.close();
+    }
+}
@@ -0,0 +1,48 @@
+package org.frcforftc.networktables;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Server side of a shared memory connection, frames sent to it are written to the ring read by the client.
+ */
+final class NT4SharedMemoryConnection extends NT4LocalConnection {
+    private final NT4SharedMemoryLink m_link;
+
+    NT4SharedMemoryConnection(NT4Server server, NT4SharedMemoryLink link) {
+        super(server);
+        this.m_link = link;
+    }
+
+    /**
+     * @return the link carrying the frames of the connection
+     */
+    NT4SharedMemoryLink getLink() {
+        return m_link;
+    }
+
+    @Override
+    String getName() {
+        return "shm:" + m_link.getName();
+    }
+
+    @Override
+    boolean sendText(String text) {
+        return m_link.send(NetworkTablesSharedMemoryRing.TEXT, ByteBuffer.wrap(text.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    @Override
+    boolean sendBinary(ByteBuffer payload) {
+        return m_link.send(NetworkTablesSharedMemoryRing.BINARY, payload);
+    }
+
+    @Override
+    public boolean isClosed() {
+        return m_link.isClosed();
+    }
+
+    @Override
+    public void close() {
+        m_link.close();
+    }
+}
@@ -0,0 +1,243 @@
+package org.frcforftc.networktables;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Both directions of a shared memory connection between an {@link NT4Client} and an {@link NT4Server} on the same
+ * host, a pair of {@link NetworkTablesSharedMemoryRing} files in the directory the server watches.
+ * <p>
+ * The client creates {@code <name>.s2c}, the frames sent by the server, then {@code <name>.c2s}, the frames sent by
+ * the client. The server accepts the connection once it sees the second file. Either side closes the connection
+ * with a {@link NetworkTablesSharedMemoryRing#CLOSE} record.
+ * <p>
+ * Senders never wait for the other side: frames sent while the outbound ring is full are queued, and written by the
+ * thread polling the connection once the other side makes room. That thread also beats the heartbeat of the
+ * outbound ring, and closes the connection when the heartbeat of the inbound ring stops, so a process killed before
+ * it could close the connection doesn't keep it open.
+ */
+final class NT4SharedMemoryLink {
+    /**
+     * Suffix of the ring carrying the frames sent by the client
+     */
+    static final String CLIENT_TO_SERVER = ".c2s";
+    /**
+     * Suffix of the ring carrying the frames sent by the server
+     */
+    static final String SERVER_TO_CLIENT = ".s2c";
+    /**
+     * Number of bytes of frames queued while the outbound ring is full. Binary frames sent past it are dropped, a text
+     * frame sent past it closes the connection since the other side would miss a control message.
+     */
+    static final int MAX_BACKLOG_BYTES = NetworkTablesSharedMemoryRing.DEFAULT_CAPACITY;
+    /**
+     * Period (in milliseconds) between two heartbeats
+     */
+    static final long HEARTBEAT_PERIOD_MS = 100;
+    /**
+     * Time (in milliseconds) without a heartbeat from the other side before the connection is closed
+     */
+    static final long PEER_TIMEOUT_MS = 2_000;
+
+    private static final int SPIN_ITERATIONS = 1_000;
+    private static final int YIELD_ITERATIONS = 100;
+    private static final long PARK_NANOS = 50_000;
+
+    private final String m_name;
+    private final NetworkTablesSharedMemoryRing m_inbound;
+    private final NetworkTablesSharedMemoryRing m_outbound;
+    private volatile boolean m_closed = false;
+    private volatile boolean m_closedByPeer = false;
+    /**
+     * Frames waiting for room in the outbound ring, in the order they were sent
+     */
+    private final ArrayDeque<Frame> m_backlog = new ArrayDeque<>();
+    private int m_backlogBytes = 0;
+    private long m_lastBeatNanos = 0;
+    /**
+     * Last heartbeat read from the other side and when it changed, only used by the thread polling the connection
+     */
+    private long m_peerHeartbeat = -1;
+    private long m_peerHeartbeatNanos = System.nanoTime();
+
+    private NT4SharedMemoryLink(String name, NetworkTablesSharedMemoryRing inbound, NetworkTablesSharedMemoryRing outbound) {
+        this.m_name = name;
+        this.m_inbound = inbound;
+        this.m_outbound = outbound;
+    }
+
+    /**
+     * Creates the rings of a new connection, called by the client.
+     *
+     * @param directory the directory watched by the server
+     * @param name      the name of the connection, unique in the directory
+     * @param capacity  the capacity (in bytes) of each ring
+     * @return the client side of the connection
+     * @throws IOException if the rings can't be created
+     */
+    static NT4SharedMemoryLink connect(File directory, String name, int capacity) throws IOException {
+        NetworkTablesSharedMemoryRing inbound = NetworkTablesSharedMemoryRing.create(new File(directory, name + SERVER_TO_CLIENT), capacity);
+        NetworkTablesSharedMemoryRing outbound = NetworkTablesSharedMemoryRing.create(new File(directory, name + CLIENT_TO_SERVER), capacity);
+        return new NT4SharedMemoryLink(name, inbound, outbound);
+    }
+
+    /**
+     * Opens the rings of a connection created by a client, called by the server.
+     *
+     * @param clientToServer the ring file carrying the frames sent by the client
+     * @return the server side of the connection, or null if the client didn't finish creating it yet
+     * @throws IOException if the rings can't be opened
+     */
+    static NT4SharedMemoryLink accept(File clientToServer) throws IOException {
+        String fileName = clientToServer.getName();
+        String name = fileName.substring(0, fileName.length() - CLIENT_TO_SERVER.length());
+        File serverToClient = new File(clientToServer.getParentFile(), name + SERVER_TO_CLIENT);
+        if (!serverToClient.exists()) return null;
+
+        NetworkTablesSharedMemoryRing inbound = NetworkTablesSharedMemoryRing.open(clientToServer);
+        NetworkTablesSharedMemoryRing outbound = inbound == null ? null : NetworkTablesSharedMemoryRing.open(serverToClient);
+        return outbound == null ? null : new NT4SharedMemoryLink(name, inbound, outbound);
+    }
+
+    /**
+     * @return the name of the connection
+     */
+    String getName() {
+        return m_name;
+    }
+
+    /**
+     * @return true once either side closed the connection, the other side stopped beating its heartbeat, or a text
+     * frame overflowed the backlog
+     */
+    boolean isClosed() {
+        return m_closed;
+    }
+
+    /**
+     * @return true if the other side closed the connection or stopped beating its heartbeat
+     */
+    boolean isClosedByPeer() {
+        return m_closedByPeer;
+    }
+
+    /**
+     * Sends a frame without waiting. The frame is written to the outbound ring if it has room and no frame is queued
+     * before it, otherwise it is copied to the backlog, see {@link #MAX_BACKLOG_BYTES}.
+     *
+     * @param type    the record type
+     * @param payload the payload, from its position to its limit. Its position is left unchanged.
+     * @return false if the connection is closed or the frame was dropped
+     */
+    synchronized boolean send(int type, ByteBuffer payload) {
+        if (m_closed) return false;
+        if (m_backlog.isEmpty() && m_outbound.offer(type, payload)) return true;
+
+        int length = payload.remaining();
+        if (m_backlogBytes + length > MAX_BACKLOG_BYTES) {
+            // A later binary frame carries newer values, a lost control message can't be made up for
+            if (type != NetworkTablesSharedMemoryRing.BINARY) m_closed = true;
+            return false;
+        }
+        ByteBuffer copy = ByteBuffer.allocate(length);
+        copy.put(payload.duplicate()).flip();
+        m_backlog.add(new Frame(type, copy));
+        m_backlogBytes += length;
+        return true;
+    }
+
+    /**
+     * Writes the queued frames the outbound ring has room for, beats the heartbeat, and closes the connection if the
+     * other side stopped beating its own. Called by the thread polling the connection before every poll.
+     */
+    void service() {
+        long now = System.nanoTime();
+        synchronized (this) {
+            if (m_closed) return;
+            while (!m_backlog.isEmpty()) {
+                Frame frame = m_backlog.peek();
+                if (!m_outbound.offer(frame.type, frame.payload)) break;
+                m_backlog.poll();
+                m_backlogBytes -= frame.payload.remaining();
+            }
+            if (now - m_lastBeatNanos >= HEARTBEAT_PERIOD_MS * 1_000_000) {
+                m_outbound.beat();
+                m_lastBeatNanos = now;
+            }
+        }
+
+        long heartbeat = m_inbound.getHeartbeat();
+        if (heartbeat != m_peerHeartbeat) {
+            m_peerHeartbeat = heartbeat;
+            m_peerHeartbeatNanos = now;
+        } else if (now - m_peerHeartbeatNanos > PEER_TIMEOUT_MS * 1_000_000) {
+            // The other process died or hung without closing the connection
+            m_closedByPeer = true;
+            m_closed = true;
+        }
+    }
+
+    /**
+     * Reads the frames the other side sent since the last call. A {@link NetworkTablesSharedMemoryRing#CLOSE} record
+     * closes the connection and is passed to the handler like the other records.
+     *
+     * @param handler the handler of the frames
+     * @return the number of frames read
+     */
+    int poll(NetworkTablesSharedMemoryRing.RecordHandler handler) {
+        return m_inbound.poll((type, payload) -> {
+            if (type == NetworkTablesSharedMemoryRing.CLOSE) {
+                m_closedByPeer = true;
+                m_closed = true;
+            }
+            handler.onRecord(type, payload);
+        });
+    }
+
+    /**
+     * Closes the connection, telling the other side unless it closed it first.
+     */
+    void close() {
+        synchronized (this) {
+            if (m_closed) return;
+            m_outbound.offer(NetworkTablesSharedMemoryRing.CLOSE, ByteBuffer.allocate(0));
+            m_closed = true;
+        }
+    }
+
+    /**
+     * Deletes the ring files, the mappings stay valid until they are garbage collected.
+     */
+    void delete() {
+        m_outbound.getFile().delete();
+        m_inbound.getFile().delete();
+    }
+
+    private static final class Frame {
+        final int type;
+        final ByteBuffer payload;
+
+        Frame(int type, ByteBuffer payload) {
+            this.type = type;
+            this.payload = payload;
+        }
+    }
+
+    /**
+     * Waits before polling again, spinning first so frames sent shortly after the last one are picked up within
+     * microseconds, then yielding, then parking so an idle connection doesn't hold a core.
+     *
+     * @param idleCount the number of polls in a row that read nothing
+     */
+    static void idle(int idleCount) {
+        if (idleCount < SPIN_ITERATIONS) return;
+        if (idleCount < SPIN_ITERATIONS + YIELD_ITERATIONS) {
+            Thread.yield();
+        } else {
+            LockSupport.parkNanos(PARK_NANOS);
+        }
+    }
+}
@@ -0,0 +1,134 @@
+package org.frcforftc.networktables;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Accepts the shared memory connections of {@link NT4Client}s running on the same host as an {@link NT4Server}.
+ * <p>
+ * A single thread watches a directory for the rings of new clients and polls the rings of the connected ones,
+ * handing their frames to the server like frames received from a WebSocket. The same NT4 text and binary frames are
+ * exchanged, without the WebSocket framing and the TCP stack in between.
+ */
+final class NT4SharedMemoryServer {
+    /**
+     * Period (in milliseconds) between two scans of the directory for new clients
+     */
+    private static final long SCAN_PERIOD_MS = 100;
+
+    private final NT4Server m_server;
+    private final File m_directory;
+    private final List<NT4SharedMemoryConnection> m_connections = new ArrayList<>();
+    /**
+     * Names of the ring files already accepted, so a client is accepted once even before its files are deleted
+     */
+    private final Set<String> m_accepted = new HashSet<>();
+    private volatile boolean m_running = false;
+    private Thread m_thread = null;
+
+    NT4SharedMemoryServer(NT4Server server, File directory) {
+        this.m_server = server;
+        this.m_directory = directory;
+    }
+
+    /**
+     * @return the directory watched for new clients
+     */
+    File getDirectory() {
+        return m_directory;
+    }
+
+    synchronized void start() throws IOException {
+        if (m_thread != null) return;
+        if (!m_directory.isDirectory() && !m_directory.mkdirs()) {
+            throw new IOException("Can't create the shared memory directory " + m_directory);
+        }
+
+        m_running = true;
+        m_thread = new Thread(this::run, "NT4Server-SharedMemory");
+        m_thread.setDaemon(true);
+        m_thread.start();
+    }
+
+    synchronized void stop() throws InterruptedException {
+        if (m_thread == null) return;
+
+        m_running = false;
+        m_thread.join();
+        m_thread = null;
+    }
+
+    private void run() {
+        long nextScan = 0;
+        int idleCount = 0;
+        while (m_running) {
+            if (System.currentTimeMillis() >= nextScan) {
+                scan();
+                nextScan = System.currentTimeMillis() + SCAN_PERIOD_MS;
+            }
+
+            int frames = 0;
+            for (int i = m_connections.size() - 1; i >= 0; i--) {
+                frames += poll(m_connections.get(i));
+            }
+            NT4SharedMemoryLink.idle(frames == 0 ? ++idleCount : (idleCount = 0));
+        }
+
+        for (NT4SharedMemoryConnection conn : new ArrayList<>(m_connections)) {
+            conn.close();
+            disconnect(conn, false);
+        }
+    }
+
+    private void scan() {
+        File[] files = m_directory.listFiles((dir, name) -> name.endsWith(NT4SharedMemoryLink.CLIENT_TO_SERVER));
+        if (files == null) return;
+
+        for (File file : files) {
+            if (m_accepted.contains(file.getName())) continue;
+            try {
+                NT4SharedMemoryLink link = NT4SharedMemoryLink.accept(file);
+                if (link == null) continue;
+
+                m_accepted.add(file.getName());
+                NT4SharedMemoryConnection conn = new NT4SharedMemoryConnection(m_server, link);
+                m_connections.add(conn);
+                m_server.open(conn, "v4.1.networktables.first.wpi.edu");
+            } catch (IOException | RuntimeException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    private int poll(NT4SharedMemoryConnection conn) {
+        int frames = 0;
+        try {
+            conn.getLink().service();
+            frames = conn.getLink().poll((type, payload) -> {
+                if (type == NetworkTablesSharedMemoryRing.TEXT) {
+                    m_server.onMessage(conn, new String(payload, StandardCharsets.UTF_8));
+                } else if (type == NetworkTablesSharedMemoryRing.BINARY) {
+                    m_server.onMessage(conn, ByteBuffer.wrap(payload));
+                }
+            });
+        } catch (RuntimeException e) {
+            e.printStackTrace();
+        }
+
+        if (conn.getLink().isClosed()) disconnect(conn, conn.getLink().isClosedByPeer());
+        return frames;
+    }
+
+    private void disconnect(NT4SharedMemoryConnection conn, boolean remote) {
+        m_connections.remove(conn);
+        m_server.onClose(conn, 1000, "", remote);
+        conn.getLink().delete();
+        m_accepted.remove(conn.getLink().getName() + NT4SharedMemoryLink.CLIENT_TO_SERVER);
+    }
+}
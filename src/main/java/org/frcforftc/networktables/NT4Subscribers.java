@@ -0,0 +1,61 @@
+package org.frcforftc.networktables;
+
+import org.java_websocket.WebSocket;
+
+import java.util.Arrays;
+
+/**
+ * Clients subscribed to a topic, kept in a copy-on-write array so broadcasts iterate without allocating.
+ */
+final class NT4Subscribers {
+    private static final WebSocket[] EMPTY = new WebSocket[0];
+
+    private volatile WebSocket[] m_connections = EMPTY;
+
+    /**
+     * Adds a client, adding it twice has no effect.
+     *
+     * @param conn the WebSocket connection
+     */
+    synchronized void add(WebSocket conn) {
+        WebSocket[] connections = m_connections;
+        for (WebSocket connection : connections) {
+            if (connection == conn) return;
+        }
+        WebSocket[] updated = Arrays.copyOf(connections, connections.length + 1);
+        updated[connections.length] = conn;
+        m_connections = updated;
+    }
+
+    /**
+     * Removes a client.
+     *
+     * @param conn the WebSocket connection
+     */
+    synchronized void remove(WebSocket conn) {
+        WebSocket[] connections = m_connections;
+        for (int i = 0; i < connections.length; i++) {
+            if (connections[i] != conn) continue;
+
+            WebSocket[] updated = new WebSocket[connections.length - 1];
+            System.arraycopy(connections, 0, updated, 0, i);
+            System.arraycopy(connections, i + 1, updated, i, connections.length - i - 1);
+            m_connections = updated;
+            return;
+        }
+    }
+
+    /**
+     * @return the subscribed clients, the array must not be modified
+     */
+    WebSocket[] get() {
+        return m_connections;
+    }
+
+    /**
+     * @return true if no client is subscribed
+     */
+    boolean isEmpty() {
+        return m_connections.length == 0;
+    }
+}
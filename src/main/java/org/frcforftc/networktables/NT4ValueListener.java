@@ -0,0 +1,16 @@
+package org.frcforftc.networktables;
+
+/**
+ * A functional interface receiving the values an {@link NT4Client} decodes from the server.
+ */
+@FunctionalInterface
+public interface NT4ValueListener {
+    /**
+     * Handles a decoded value.
+     *
+     * @param topic     the name of the topic as announced by the server, or null if it was not announced
+     * @param timestamp the timestamp sent with the value
+     * @param value     the decoded value
+     */
+    void apply(String topic, long timestamp, Object value);
+}
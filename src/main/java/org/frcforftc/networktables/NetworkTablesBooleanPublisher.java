@@ -0,0 +1,26 @@
+package org.frcforftc.networktables;
+
+/**
+ * Publishes booleans to a topic without looking the topic up, see {@link NetworkTablesPublisher}.
+ * Setting a value doesn't allocate, like the zero-garbage puts of {@link NT4Server}.
+ */
+public class NetworkTablesBooleanPublisher extends NetworkTablesPublisher {
+    NetworkTablesBooleanPublisher(NT4Server server, NetworkTablesEntry entry) {
+        super(server, entry);
+    }
+
+    /**
+     * Publishes a value, sent to the subscribers of the topic if it changed.
+     *
+     * @param value the value to publish
+     */
+    public void set(boolean value) {
+        NetworkTablesEntry entry = getEntry();
+        if (isPrimitive(entry, NetworkTablesValueType.Boolean)) {
+            getServer().setPrimitive(entry, NetworkTablesValueType.Boolean, value ? 1 : 0);
+        } else {
+            // Removed, or created with an object value by another put
+            setEntry(getServer().putTopic(getTopic(), value));
+        }
+    }
+}
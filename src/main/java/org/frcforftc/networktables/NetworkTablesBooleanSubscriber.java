@@ -0,0 +1,34 @@
+package org.frcforftc.networktables;
+
+/**
+ * Reads booleans from a topic without looking the topic up, see {@link NetworkTablesSubscriber}.
+ */
+public class NetworkTablesBooleanSubscriber extends NetworkTablesSubscriber<Boolean> {
+    private final boolean m_defaultValue;
+
+    NetworkTablesBooleanSubscriber(NT4Server server, String topic, boolean defaultValue, int queueSize) {
+        super(server, topic, queueSize);
+        this.m_defaultValue = defaultValue;
+    }
+
+    /**
+     * Reads the latest value of the topic.
+     *
+     * @return the value, or the default value if the topic doesn't exist or holds another type
+     */
+    public boolean get() {
+        NetworkTablesEntry entry = getEntry();
+        if (entry == null) return m_defaultValue;
+        NetworkTablesPrimitiveCell primitive = entry.getPrimitive();
+        if (primitive != null && primitive.getType() == NetworkTablesValueType.Boolean) {
+            return primitive.getBits() != 0;
+        }
+        Boolean value = convert(entry.getValue().get());
+        return value == null ? m_defaultValue : value;
+    }
+
+    @Override
+    Boolean convert(Object value) {
+        return value instanceof Boolean ? (Boolean) value : null;
+    }
+}
@@ -0,0 +1,196 @@
+package org.frcforftc.networktables;
+
+import org.java_websocket.enums.Opcode;
+import org.java_websocket.exceptions.InvalidDataException;
+import org.java_websocket.exceptions.InvalidFrameException;
+import org.java_websocket.extensions.IExtension;
+import org.java_websocket.extensions.permessage_deflate.PerMessageDeflateExtension;
+import org.java_websocket.framing.DataFrame;
+import org.java_websocket.framing.Framedata;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * permessage-deflate extension used by {@link NT4Server} and {@link NT4Client}.
+ * Frames smaller than the configured threshold are sent uncompressed so small scalar
+ * updates skip the deflate cost, and outgoing compression can be disabled entirely
+ * while still accepting compressed frames from the peer.
+ * <p>
+ * permessage-deflate lets each message choose whether it is compressed, marked by the RSV1 bit of its first frame.
+ * Incoming messages without it are passed through as is, so peers using a threshold can talk to each other.
+ * <p>
+ * The WebSocket draft copies the extension for every connection, all copies share the
+ * byte counters of the instance they were created from.
+ */
+public class NetworkTablesDeflateExtension extends PerMessageDeflateExtension {
+    /**
+     * Default minimum payload size (in bytes) before a frame gets compressed
+     */
+    public static final int DEFAULT_THRESHOLD = 256;
+
+    /**
+     * Whether frames sent by this side are compressed
+     */
+    private final boolean m_compressOutgoing;
+    /**
+     * Minimum payload size (in bytes) before a frame gets compressed
+     */
+    private final int m_threshold;
+    /**
+     * Byte counters shared between all the copies of this extension
+     */
+    private final Counters m_counters;
+    /**
+     * Whether the message currently being sent skipped compression, used for continuation frames
+     */
+    private boolean m_skipCurrentMessage = false;
+    /**
+     * Whether the message currently being received is compressed, used for continuation frames
+     */
+    private boolean m_inflateCurrentMessage = false;
+
+    /**
+     * Constructs an extension that compresses outgoing frames of at least {@link #DEFAULT_THRESHOLD} bytes.
+     */
+    public NetworkTablesDeflateExtension() {
+        this(true, DEFAULT_THRESHOLD);
+    }
+
+    /**
+     * Constructs an extension with the given outgoing compression settings.
+     *
+     * @param compressOutgoing whether frames sent by this side are compressed, incoming compressed frames are always accepted
+     * @param threshold        the minimum payload size (in bytes) before a frame gets compressed
+     */
+    public NetworkTablesDeflateExtension(boolean compressOutgoing, int threshold) {
+        this(compressOutgoing, threshold, new Counters());
+    }
+
+    private NetworkTablesDeflateExtension(boolean compressOutgoing, int threshold, Counters counters) {
+        this.m_compressOutgoing = compressOutgoing;
+        this.m_threshold = threshold;
+        this.m_counters = counters;
+    }
+
+    @Override
+    public void encodeFrame(Framedata inputFrame) {
+        if (!(inputFrame instanceof DataFrame)) return;
+
+        int uncompressedSize = inputFrame.getPayloadData().remaining();
+        if (inputFrame.getOpcode() != Opcode.CONTINUOUS) {
+            m_skipCurrentMessage = !m_compressOutgoing || uncompressedSize < m_threshold;
+        }
+
+        m_counters.outgoingUncompressed.addAndGet(uncompressedSize);
+        if (m_skipCurrentMessage) {
+            m_counters.outgoingCompressed.addAndGet(uncompressedSize);
+            m_counters.skippedFrames.incrementAndGet();
+            return;
+        }
+
+        super.encodeFrame(inputFrame);
+        m_counters.outgoingCompressed.addAndGet(inputFrame.getPayloadData().remaining());
+        m_counters.compressedFrames.incrementAndGet();
+    }
+
+    @Override
+    public void decodeFrame(Framedata inputFrame) throws InvalidDataException {
+        if (!(inputFrame instanceof DataFrame)) {
+            super.decodeFrame(inputFrame);
+            return;
+        }
+
+        if (inputFrame.getOpcode() != Opcode.CONTINUOUS) {
+            m_inflateCurrentMessage = inputFrame.isRSV1();
+        }
+
+        m_counters.incomingCompressed.addAndGet(inputFrame.getPayloadData().remaining());
+        if (m_inflateCurrentMessage) super.decodeFrame(inputFrame);
+        m_counters.incomingUncompressed.addAndGet(inputFrame.getPayloadData().remaining());
+    }
+
+    @Override
+    public void isFrameValid(Framedata inputFrame) throws InvalidDataException {
+        if (inputFrame instanceof DataFrame && !inputFrame.isRSV1()) {
+            // Uncompressed message, or a continuation frame which never carries RSV1
+            if (inputFrame.isRSV2() || inputFrame.isRSV3()) {
+                throw new InvalidFrameException("bad rsv RSV1: false RSV2: " + inputFrame.isRSV2() + " RSV3: " + inputFrame.isRSV3());
+            }
+            return;
+        }
+        super.isFrameValid(inputFrame);
+    }
+
+    @Override
+    public IExtension copyInstance() {
+        return new NetworkTablesDeflateExtension(m_compressOutgoing, m_threshold, m_counters);
+    }
+
+    /**
+     * @return whether frames sent by this side are compressed
+     */
+    public boolean isCompressingOutgoing() {
+        return m_compressOutgoing;
+    }
+
+    /**
+     * @return the minimum payload size (in bytes) before a frame gets compressed
+     */
+    public int getThreshold() {
+        return m_threshold;
+    }
+
+    /**
+     * @return the total payload bytes handed to the extension for sending, before compression
+     */
+    public long getOutgoingUncompressedBytes() {
+        return m_counters.outgoingUncompressed.get();
+    }
+
+    /**
+     * @return the total payload bytes put on the wire after compression, frames under the threshold are counted as is
+     */
+    public long getOutgoingCompressedBytes() {
+        return m_counters.outgoingCompressed.get();
+    }
+
+    /**
+     * @return the total payload bytes received on the wire
+     */
+    public long getIncomingCompressedBytes() {
+        return m_counters.incomingCompressed.get();
+    }
+
+    /**
+     * @return the total payload bytes received after decompression
+     */
+    public long getIncomingUncompressedBytes() {
+        return m_counters.incomingUncompressed.get();
+    }
+
+    /**
+     * @return the number of outgoing frames that were compressed
+     */
+    public long getCompressedFrameCount() {
+        return m_counters.compressedFrames.get();
+    }
+
+    /**
+     * @return the number of outgoing frames that were sent uncompressed
+     */
+    public long getSkippedFrameCount() {
+        return m_counters.skippedFrames.get();
+    }
+
+    /**
+     * Byte counters shared between an extension and its per-connection copies.
+     */
+    private static class Counters {
+        final AtomicLong outgoingUncompressed = new AtomicLong();
+        final AtomicLong outgoingCompressed = new AtomicLong();
+        final AtomicLong incomingCompressed = new AtomicLong();
+        final AtomicLong incomingUncompressed = new AtomicLong();
+        final AtomicLong compressedFrames = new AtomicLong();
+        final AtomicLong skippedFrames = new AtomicLong();
+    }
+}
@@ -0,0 +1,35 @@
+package org.frcforftc.networktables;
+
+import java.util.Arrays;
+
+/**
+ * Publishes arrays of doubles to a topic without looking the topic up, see {@link NetworkTablesPublisher}.
+ * Values are compared with the current value of the topic before being copied, so callers can reuse the same array
+ * every loop and republishing an unchanged array doesn't allocate.
+ */
+public class NetworkTablesDoubleArrayPublisher extends NetworkTablesPublisher {
+    NetworkTablesDoubleArrayPublisher(NT4Server server, NetworkTablesEntry entry) {
+        super(server, entry);
+    }
+
+    /**
+     * Publishes a value, sent to the subscribers of the topic if it changed.
+     *
+     * @param values the value to publish, it is copied and can be modified afterwards
+     */
+    public synchronized void set(double[] values) {
+        NetworkTablesEntry entry = getEntry();
+        if (entry.isRemoved()) {
+            setEntry(getServer().putTopic(getTopic(), values));
+            return;
+        }
+        // The topic may have been written by a client or another put since the last call
+        Object current = entry.getValue().get();
+        if (current instanceof double[] && Arrays.equals((double[]) current, values)) {
+            entry.touch();
+            return;
+        }
+
+        getServer().setValue(entry, values.clone());
+    }
+}
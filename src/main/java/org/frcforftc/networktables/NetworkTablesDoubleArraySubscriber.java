@@ -0,0 +1,31 @@
+package org.frcforftc.networktables;
+
+/**
+ * Reads arrays of doubles from a topic without looking the topic up, see {@link NetworkTablesSubscriber}.
+ */
+public class NetworkTablesDoubleArraySubscriber extends NetworkTablesSubscriber<double[]> {
+    private final double[] m_defaultValue;
+
+    NetworkTablesDoubleArraySubscriber(NT4Server server, String topic, double[] defaultValue, int queueSize) {
+        super(server, topic, queueSize);
+        this.m_defaultValue = defaultValue;
+    }
+
+    /**
+     * Reads the latest value of the topic.
+     *
+     * @return the value, shared with the entry and not to be modified, or the default value if the topic doesn't
+     * exist or holds another type
+     */
+    public double[] get() {
+        NetworkTablesEntry entry = getEntry();
+        if (entry == null) return m_defaultValue;
+        double[] value = convert(entry.getValue().get());
+        return value == null ? m_defaultValue : value;
+    }
+
+    @Override
+    double[] convert(Object value) {
+        return value instanceof double[] ? (double[]) value : null;
+    }
+}
@@ -0,0 +1,34 @@
+package org.frcforftc.networktables;
+
+/**
+ * Reads doubles from a topic without looking the topic up, see {@link NetworkTablesSubscriber}.
+ */
+public class NetworkTablesDoubleSubscriber extends NetworkTablesSubscriber<Double> {
+    private final double m_defaultValue;
+
+    NetworkTablesDoubleSubscriber(NT4Server server, String topic, double defaultValue, int queueSize) {
+        super(server, topic, queueSize);
+        this.m_defaultValue = defaultValue;
+    }
+
+    /**
+     * Reads the latest value of the topic.
+     *
+     * @return the value, or the default value if the topic doesn't exist or holds another type
+     */
+    public double get() {
+        NetworkTablesEntry entry = getEntry();
+        if (entry == null) return m_defaultValue;
+        NetworkTablesPrimitiveCell primitive = entry.getPrimitive();
+        if (primitive != null && primitive.getType() == NetworkTablesValueType.Double) {
+            return java.lang.Double.longBitsToDouble(primitive.getBits());
+        }
+        Double value = convert(entry.getValue().get());
+        return value == null ? m_defaultValue : value;
+    }
+
+    @Override
+    Double convert(Object value) {
+        return value instanceof Number ? ((Number) value).doubleValue() : null;
+    }
+}
@@ -0,0 +1,330 @@
+package org.frcforftc.networktables;
+
+import org.java_websocket.WebSocket;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Sends downsampled subscriptions of an {@link NT4Server} one aggregate per window instead of every value, so
+ * dashboards plotting topics written at hundreds of hertz only receive what they can draw.
+ * <p>
+ * Every value sent to the regular subscribers of a topic is also added to the windows of its downsampled
+ * subscriptions, in primitive accumulators that don't allocate. Each window is flushed at the period of its
+ * subscription on a dedicated thread, see {@link NetworkTablesDownsampling} for the aggregates.
+ */
+public class NetworkTablesDownsampler {
+    private static final Window[] EMPTY = new Window[0];
+
+    /**
+     * The server whose subscriptions are downsampled
+     */
+    private final NT4Server m_server;
+    /**
+     * Map of topics to the windows of their downsampled subscriptions, kept in copy-on-write arrays
+     */
+    private final Map<String, Window[]> m_windows = new ConcurrentHashMap<>();
+    /**
+     * Executor flushing the windows, created with the first window
+     */
+    private ScheduledExecutorService m_executor = null;
+
+    /**
+     * Constructs a downsampler for the given server.
+     *
+     * @param server the server whose subscriptions are downsampled
+     */
+    public NetworkTablesDownsampler(NT4Server server) {
+        this.m_server = server;
+    }
+
+    /**
+     * Downsamples the values of a topic sent to a client, replacing the window the client had for the topic.
+     *
+     * @param conn     the WebSocket connection
+     * @param entry    the entry of the topic
+     * @param mode     the aggregate sent per window
+     * @param periodMs the length (in milliseconds) of a window
+     */
+    synchronized void add(WebSocket conn, NetworkTablesEntry entry, NetworkTablesDownsampling mode, long periodMs) {
+        remove(conn, entry.getTopic());
+        if (m_executor == null) m_executor = NetworkTablesThreads.newScheduledExecutor("NT4Server-Downsampler");
+
+        Window window = new Window(conn, entry, mode);
+        window.m_future = m_executor.scheduleAtFixedRate(() -> flush(window), periodMs, periodMs, TimeUnit.MILLISECONDS);
+        Window[] windows = m_windows.getOrDefault(entry.getTopic(), EMPTY);
+        Window[] updated = Arrays.copyOf(windows, windows.length + 1);
+        updated[windows.length] = window;
+        m_windows.put(entry.getTopic(), updated);
+    }
+
+    /**
+     * Stops downsampling a topic for a client.
+     *
+     * @param conn  the WebSocket connection
+     * @param topic the topic name
+     * @return true if the client had a window for the topic
+     */
+    synchronized boolean remove(WebSocket conn, String topic) {
+        Window[] windows = m_windows.get(topic);
+        if (windows == null) return false;
+
+        for (int i = 0; i < windows.length; i++) {
+            if (windows[i].m_conn != conn) continue;
+
+            windows[i].m_future.cancel(false);
+            if (windows.length == 1) {
+                m_windows.remove(topic);
+            } else {
+                Window[] updated = new Window[windows.length - 1];
+                System.arraycopy(windows, 0, updated, 0, i);
+                System.arraycopy(windows, i + 1, updated, i, windows.length - i - 1);
+                m_windows.put(topic, updated);
+            }
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Drops the windows of a client, called when it disconnects.
+     *
+     * @param conn the WebSocket connection
+     */
+    synchronized void removeConnection(WebSocket conn) {
+        for (String topic : m_windows.keySet()) {
+            remove(conn, topic);
+        }
+    }
+
+    /**
+     * Drops the windows of a topic, called when it is removed.
+     *
+     * @param topic the topic name
+     */
+    synchronized void removeTopic(String topic) {
+        Window[] windows = m_windows.remove(topic);
+        if (windows == null) return;
+        for (Window window : windows) {
+            window.m_future.cancel(false);
+        }
+    }
+
+    /**
+     * @return the number of downsampled subscriptions, counted per client and topic
+     */
+    public int getWindowCount() {
+        int count = 0;
+        for (Window[] windows : m_windows.values()) {
+            count += windows.length;
+        }
+        return count;
+    }
+
+    /**
+     * Adds the current value of an entry to its windows, without allocating for primitive entries.
+     *
+     * @param entry the updated entry
+     */
+    void accumulate(NetworkTablesEntry entry) {
+        Window[] windows = m_windows.get(entry.getTopic());
+        if (windows == null) return;
+
+        NetworkTablesPrimitiveCell primitive = entry.getPrimitive();
+        if (primitive != null) {
+            accumulate(windows, primitive.getType(), primitive.getBits());
+        } else {
+            accumulate(windows, entry.getValue().get());
+        }
+    }
+
+    /**
+     * Adds a value of an entry to its windows.
+     *
+     * @param entry the updated entry
+     * @param value the value sent to the regular subscribers
+     */
+    void accumulate(NetworkTablesEntry entry, Object value) {
+        Window[] windows = m_windows.get(entry.getTopic());
+        if (windows == null) return;
+
+        NetworkTablesValueType type = NetworkTablesValueType.getFromString(entry.getValue().getType());
+        if (NetworkTablesPrimitiveCell.isPrimitive(type) && (value instanceof Number || value instanceof Boolean)) {
+            accumulate(windows, type, NetworkTablesPrimitiveCell.toBits(type, value));
+        } else {
+            accumulate(windows, value);
+        }
+    }
+
+    private static void accumulate(Window[] windows, NetworkTablesValueType type, long bits) {
+        long timestamp = System.currentTimeMillis();
+        for (Window window : windows) {
+            window.add(type, bits, timestamp);
+        }
+    }
+
+    private static void accumulate(Window[] windows, Object value) {
+        long timestamp = System.currentTimeMillis();
+        for (Window window : windows) {
+            window.add(value, timestamp);
+        }
+    }
+
+    private void flush(Window window) {
+        try {
+            window.flush(m_server);
+        } catch (RuntimeException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Stops flushing the windows and drops them.
+     */
+    public synchronized void stop() {
+        m_windows.clear();
+        if (m_executor == null) return;
+
+        m_executor.shutdownNow();
+        m_executor = null;
+    }
+
+    /**
+     * Window of a downsampled subscription, accumulating the values written since its last flush.
+     */
+    private static final class Window {
+        private final WebSocket m_conn;
+        private final NetworkTablesEntry m_entry;
+        private final NetworkTablesDownsampling m_mode;
+        private ScheduledFuture<?> m_future;
+
+        private int m_count = 0;
+        private double m_sum = 0;
+        private double m_min = 0;
+        private long m_minTimestamp = 0;
+        private double m_max = 0;
+        private long m_maxTimestamp = 0;
+        /**
+         * Type of the primitive values of the window, null for object values
+         */
+        private NetworkTablesValueType m_type = null;
+        private long m_lastBits = 0;
+        private Object m_lastValue = null;
+        private long m_lastTimestamp = 0;
+
+        Window(WebSocket conn, NetworkTablesEntry entry, NetworkTablesDownsampling mode) {
+            this.m_conn = conn;
+            this.m_entry = entry;
+            this.m_mode = mode;
+        }
+
+        synchronized void add(NetworkTablesValueType type, long bits, long timestamp) {
+            if (isNumeric(type)) {
+                double value = toDouble(type, bits);
+                if (m_count == 0 || value < m_min) {
+                    m_min = value;
+                    m_minTimestamp = timestamp;
+                }
+                if (m_count == 0 || value > m_max) {
+                    m_max = value;
+                    m_maxTimestamp = timestamp;
+                }
+                m_sum += value;
+            }
+            m_count++;
+            m_type = type;
+            m_lastBits = bits;
+            m_lastValue = null;
+            m_lastTimestamp = timestamp;
+        }
+
+        synchronized void add(Object value, long timestamp) {
+            m_count++;
+            m_type = null;
+            m_lastValue = value;
+            m_lastTimestamp = timestamp;
+        }
+
+        void flush(NT4Server server) {
+            NetworkTablesValueType type;
+            NetworkTablesDownsampling mode;
+            long lastBits, minBits, maxBits, meanBits;
+            long lastTimestamp, minTimestamp, maxTimestamp;
+            Object lastValue;
+            synchronized (this) {
+                if (m_count == 0) return;
+
+                type = m_type;
+                mode = type != null && isNumeric(type) ? m_mode : NetworkTablesDownsampling.LAST;
+                lastBits = m_lastBits;
+                lastValue = m_lastValue;
+                lastTimestamp = m_lastTimestamp;
+                minTimestamp = m_minTimestamp;
+                maxTimestamp = m_maxTimestamp;
+                minBits = type != null && isNumeric(type) ? toBits(type, m_min) : 0;
+                maxBits = type != null && isNumeric(type) ? toBits(type, m_max) : 0;
+                meanBits = type != null && isNumeric(type) ? toBits(type, m_sum / m_count) : 0;
+                m_count = 0;
+                m_sum = 0;
+                m_lastValue = null;
+            }
+
+            if (type == null) {
+                server.sendDownsampled(m_conn, m_entry, lastTimestamp, lastValue);
+                return;
+            }
+            switch (mode) {
+                case MIN:
+                    server.sendDownsampled(m_conn, m_entry, minTimestamp, type, minBits);
+                    break;
+                case MAX:
+                    server.sendDownsampled(m_conn, m_entry, maxTimestamp, type, maxBits);
+                    break;
+                case MEAN:
+                    server.sendDownsampled(m_conn, m_entry, lastTimestamp, type, meanBits);
+                    break;
+                case MIN_MAX:
+                    if (minTimestamp <= maxTimestamp) {
+                        server.sendDownsampled(m_conn, m_entry, minTimestamp, type, minBits);
+                        if (maxBits != minBits) server.sendDownsampled(m_conn, m_entry, maxTimestamp, type, maxBits);
+                    } else {
+                        server.sendDownsampled(m_conn, m_entry, maxTimestamp, type, maxBits);
+                        server.sendDownsampled(m_conn, m_entry, minTimestamp, type, minBits);
+                    }
+                    break;
+                default:
+                    server.sendDownsampled(m_conn, m_entry, lastTimestamp, type, lastBits);
+            }
+        }
+
+        private static boolean isNumeric(NetworkTablesValueType type) {
+            return type == NetworkTablesValueType.Double || type == NetworkTablesValueType.Float || type == NetworkTablesValueType.Int;
+        }
+
+        private static double toDouble(NetworkTablesValueType type, long bits) {
+            switch (type) {
+                case Double:
+                    return java.lang.Double.longBitsToDouble(bits);
+                case Float:
+                    return java.lang.Float.intBitsToFloat((int) bits);
+                default:
+                    return bits;
+            }
+        }
+
+        private static long toBits(NetworkTablesValueType type, double value) {
+            switch (type) {
+                case Double:
+                    return java.lang.Double.doubleToLongBits(value);
+                case Float:
+                    return java.lang.Float.floatToIntBits((float) value) & 0xffffffffL;
+                default:
+                    return Math.round(value);
+            }
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package org.frcforftc.networktables;
+
+/**
+ * Aggregates a server can send to a subscription instead of every value of a topic, see
+ * {@link NetworkTablesDownsampler}. A client requests one with the {@code "downsample"} option of its subscribe
+ * message, together with the {@code "periodic"} option setting the length of the windows in seconds.
+ * <p>
+ * Only numeric topics (double, float and int) are aggregated, other topics are sent their last value per window
+ * whatever the mode.
+ */
+public enum NetworkTablesDownsampling {
+    /**
+     * The last value of each window
+     */
+    LAST("last"),
+    /**
+     * The smallest value of each window
+     */
+    MIN("min"),
+    /**
+     * The largest value of each window
+     */
+    MAX("max"),
+    /**
+     * The mean of the values of each window, rounded for int topics
+     */
+    MEAN("mean"),
+    /**
+     * The smallest and the largest value of each window, sent in the order they were written so plots keep the
+     * envelope of the signal
+     */
+    MIN_MAX("minmax");
+
+    private final String m_option;
+
+    NetworkTablesDownsampling(String option) {
+        this.m_option = option;
+    }
+
+    /**
+     * @return the value of the {@code "downsample"} subscribe option selecting this mode
+     */
+    public String getOption() {
+        return m_option;
+    }
+
+    /**
+     * Finds the mode selected by a subscribe option.
+     *
+     * @param option the value of the {@code "downsample"} option, may be null
+     * @return the mode, or null if the option doesn't name one
+     */
+    public static NetworkTablesDownsampling fromOption(String option) {
+        for (NetworkTablesDownsampling mode : values()) {
+            if (mode.m_option.equals(option)) return mode;
+        }
+        return null;
+    }
+}
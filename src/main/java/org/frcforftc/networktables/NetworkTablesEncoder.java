@@ -0,0 +1,114 @@
+package org.frcforftc.networktables;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Encodes the value frames of primitive topics without allocating.
+ * <p>
+ * Frames are written with the same MessagePack encoding as {@link NT4Server#encodeNT4Message}, then copied into
+ * a buffer kept for each frame size, so the backing array of a returned buffer holds exactly the frame.
+ * An encoder isn't thread safe and the returned buffer is overwritten by the next call, the server keeps one per thread.
+ */
+final class NetworkTablesEncoder {
+    /**
+     * Largest frame: array header, topic ID, timestamp, type and a 64-bit value
+     */
+    private static final int MAX_FRAME_SIZE = 1 + 9 + 9 + 1 + 9;
+
+    private final byte[] m_scratch = new byte[MAX_FRAME_SIZE];
+    private final ByteBuffer[] m_frames = new ByteBuffer[MAX_FRAME_SIZE + 1];
+    private int m_position = 0;
+
+    /**
+     * Encodes a value frame.
+     *
+     * @param topicId   the topic ID
+     * @param timestamp the message timestamp
+     * @param type      the type of the value, see {@link NetworkTablesPrimitiveCell#isPrimitive(NetworkTablesValueType)}
+     * @param bits      the value as raw bits
+     * @return a buffer holding the frame, valid until the next call
+     */
+    ByteBuffer encode(long topicId, long timestamp, NetworkTablesValueType type, long bits) {
+        m_position = 0;
+        m_scratch[m_position++] = (byte) 0x94; // Array of 4 elements
+        packLong(topicId);
+        packLong(timestamp);
+        packLong(type.id);
+
+        switch (type) {
+            case Boolean:
+                m_scratch[m_position++] = bits != 0 ? (byte) 0xc3 : (byte) 0xc2;
+                break;
+            case Double:
+                m_scratch[m_position++] = (byte) 0xcb;
+                putBytes(bits, 8);
+                break;
+            case Float:
+                m_scratch[m_position++] = (byte) 0xca;
+                putBytes(bits, 4);
+                break;
+            case Int:
+                packLong(bits);
+                break;
+            default:
+                throw new IllegalArgumentException("Not a primitive type: " + type);
+        }
+
+        ByteBuffer frame = m_frames[m_position];
+        if (frame == null) {
+            frame = ByteBuffer.allocate(m_position);
+            m_frames[m_position] = frame;
+        }
+        System.arraycopy(m_scratch, 0, frame.array(), 0, m_position);
+        frame.clear();
+        return frame;
+    }
+
+    /**
+     * Writes an integer in its shortest MessagePack form, like {@code MessagePacker.packLong}.
+     */
+    private void packLong(long v) {
+        if (v < -(1L << 5)) {
+            if (v < -(1L << 15)) {
+                if (v < -(1L << 31)) {
+                    m_scratch[m_position++] = (byte) 0xd3;
+                    putBytes(v, 8);
+                } else {
+                    m_scratch[m_position++] = (byte) 0xd2;
+                    putBytes(v, 4);
+                }
+            } else if (v < -(1 << 7)) {
+                m_scratch[m_position++] = (byte) 0xd1;
+                putBytes(v, 2);
+            } else {
+                m_scratch[m_position++] = (byte) 0xd0;
+                putBytes(v, 1);
+            }
+        } else if (v < (1 << 7)) {
+            m_scratch[m_position++] = (byte) v;
+        } else if (v < (1L << 16)) {
+            if (v < (1 << 8)) {
+                m_scratch[m_position++] = (byte) 0xcc;
+                putBytes(v, 1);
+            } else {
+                m_scratch[m_position++] = (byte) 0xcd;
+                putBytes(v, 2);
+            }
+        } else if (v < (1L << 32)) {
+            m_scratch[m_position++] = (byte) 0xce;
+            putBytes(v, 4);
+        } else {
+            m_scratch[m_position++] = (byte) 0xcf;
+            putBytes(v, 8);
+        }
+    }
+
+    /**
+     * Writes the low bytes of a value, big-endian.
+     */
+    private void putBytes(long v, int count) {
+        for (int shift = (count - 1) * 8; shift >= 0; shift -= 8) {
+            m_scratch[m_position++] = (byte) (v >>> shift);
+        }
+    }
+}
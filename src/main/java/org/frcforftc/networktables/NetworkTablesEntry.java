@@ -2,16 +2,71 @@ package org.frcforftc.networktables;
 
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
 
 /**
  * Represents an entry in the NetworkTables with a specific topic, value, and associated listeners.
+ * The value is held in an immutable, versioned cell swapped atomically, so it can be read and written from any thread
+ * and {@link NetworkTablesSnapshot}s can read a consistent state without blocking writers.
+ * <p>
+ * Most topics have neither listeners nor properties, so their storage is only allocated when the first one is added
+ * and entries without them share immutable empty defaults.
  */
 public class NetworkTablesEntry {
+    private static final AtomicLongFieldUpdater<NetworkTablesEntry> UPDATE_COUNT = AtomicLongFieldUpdater.newUpdater(NetworkTablesEntry.class, "m_updateCount");
+    private static final AtomicIntegerFieldUpdater<NetworkTablesEntry> DIRTY = AtomicIntegerFieldUpdater.newUpdater(NetworkTablesEntry.class, "m_dirty");
+    private static final AtomicReferenceFieldUpdater<NetworkTablesEntry, Cell> CELL = AtomicReferenceFieldUpdater.newUpdater(NetworkTablesEntry.class, Cell.class, "m_cell");
+    /**
+     * Version given to the last value set on any entry, orders all updates of the JVM
+     */
+    private static final AtomicLong VERSION = new AtomicLong();
+    private static final NetworkTablesSubscriber<?>[] NO_SUBSCRIBERS = new NetworkTablesSubscriber<?>[0];
+    private static final NetworkTablesEventListener[] NO_LISTENERS = new NetworkTablesEventListener[0];
+    private static final NetworkTablesEntry[] NO_PROPERTIES = new NetworkTablesEntry[0];
+    private static final NetworkTablesEvent[] EVENTS = NetworkTablesEvent.values();
+
     private final String m_topic;
-    private final Map<NetworkTablesEvent, List<NetworkTablesEventListener>> m_listeners = new ConcurrentHashMap<>();
-    private final Map<String, NetworkTablesEntry> m_properties = new ConcurrentHashMap<>();
-    private int m_id = -1;
-    private NetworkTablesValue m_localValue;
+    /**
+     * Listeners indexed by the ordinal of their {@link NetworkTablesEvent}, copied on write, null until the first
+     * listener is added
+     */
+    private volatile NetworkTablesEventListener[][] m_listeners = null;
+    /**
+     * Properties by key, null until the first property is added
+     */
+    private volatile Map<String, NetworkTablesEntry> m_properties = null;
+    private volatile int m_id = -1;
+    private volatile Cell m_cell = null;
+    /**
+     * Value of entries created by the zero-garbage puts, null for entries holding objects. The cell of these entries
+     * only holds the value view, created on the first call to {@link #getValue()}. Cleared for good when a bound
+     * value or a value of another type is set, the entry then holds its values in cells like object entries.
+     */
+    private volatile NetworkTablesPrimitiveCell m_primitive;
+    private volatile long m_updateCount = 0;
+    /**
+     * Last time the entry was written in milliseconds since the epoch, even with an unchanged value
+     */
+    private volatile long m_accessTime = System.currentTimeMillis();
+    /**
+     * Set once the topic of the entry is removed from its server
+     */
+    private volatile boolean m_removed = false;
+    /**
+     * 1 while the entry holds a value its server hasn't flushed yet, see {@link NT4Server#flush()}
+     */
+    private volatile int m_dirty = 0;
+    /**
+     * Subscribers recording every update of the entry in their queue, copied on write
+     */
+    private volatile NetworkTablesSubscriber<?>[] m_subscribers = NO_SUBSCRIBERS;
+    /**
+     * Version of the first value of this entry
+     */
+    private long m_createdVersion = Long.MAX_VALUE;
 
     /**
      * Constructs a NetworkTablesEntry with the specified topic, and initial value.
@@ -21,20 +76,45 @@ public class NetworkTablesEntry {
      */
     public NetworkTablesEntry(String topic, NetworkTablesValue localValue) {
         this.m_topic = topic;
+        this.m_primitive = null;
         update(localValue);
+        this.m_createdVersion = m_cell == null ? Long.MAX_VALUE : m_cell.version;
     }
 
     public NetworkTablesEntry(String topic, Object value) {
         this.m_topic = topic;
+        this.m_primitive = null;
         if (!(value instanceof NetworkTablesValue)) {
             update(new NetworkTablesValue(value));
         } else {
-            update(value);
+            update((NetworkTablesValue) value);
         }
+        this.m_createdVersion = m_cell == null ? Long.MAX_VALUE : m_cell.version;
+    }
+
+    /**
+     * Constructs an entry holding a primitive value, updated without allocating.
+     * The value seen through {@link #getValue()} is a view reading the current primitive.
+     *
+     * @param topic the topic name of the entry
+     * @param type  the type of the value, see {@link NetworkTablesPrimitiveCell#isPrimitive(NetworkTablesValueType)}
+     * @param bits  the initial value as raw bits
+     */
+    NetworkTablesEntry(String topic, NetworkTablesValueType type, long bits) {
+        this.m_topic = topic;
+        this.m_primitive = new NetworkTablesPrimitiveCell(type, bits);
+        this.m_createdVersion = m_primitive.getVersion();
     }
 
     public void addProperty(NetworkTablesEntry value) {
-        m_properties.put(value.getTopic(), value);
+        Map<String, NetworkTablesEntry> properties = m_properties;
+        if (properties == null) {
+            synchronized (this) {
+                properties = m_properties;
+                if (properties == null) m_properties = properties = new ConcurrentHashMap<>(2);
+            }
+        }
+        properties.put(value.getTopic(), value);
     }
 
     public void addProperty(String key, Object value) {
@@ -43,15 +123,26 @@ public class NetworkTablesEntry {
     }
 
     public void removeProperty(String key) {
-        m_properties.remove(key);
+        Map<String, NetworkTablesEntry> properties = m_properties;
+        if (properties != null) properties.remove(key);
     }
 
     public NetworkTablesEntry[] getProperties() {
-        return m_properties.values().toArray(new NetworkTablesEntry[0]);
+        Map<String, NetworkTablesEntry> properties = m_properties;
+        return properties == null ? NO_PROPERTIES : properties.values().toArray(NO_PROPERTIES);
     }
 
     public NetworkTablesEntry getProperty(String key) {
-        return m_properties.get(key);
+        Map<String, NetworkTablesEntry> properties = m_properties;
+        return properties == null ? null : properties.get(key);
+    }
+
+    /**
+     * @return true if the NT4 "persistent" property of the topic is set, persistent topics are never evicted when idle
+     */
+    public boolean isPersistent() {
+        NetworkTablesEntry persistent = getProperty("persistent");
+        return persistent != null && persistent.getValue() != null && Boolean.TRUE.equals(persistent.getValue().get());
     }
 
     /**
@@ -59,18 +150,23 @@ public class NetworkTablesEntry {
      *
      * @param l the event listener to be added
      */
-    public void addListener(NetworkTablesEventListener l) {
+    public synchronized void addListener(NetworkTablesEventListener l) {
         EnumSet<NetworkTablesEvent> eventTypes = l.getEventTypes();
+        if (eventTypes.isEmpty()) return;
 
+        NetworkTablesEventListener[][] listeners;
+        if (m_listeners == null) {
+            listeners = new NetworkTablesEventListener[EVENTS.length][];
+            Arrays.fill(listeners, NO_LISTENERS);
+        } else {
+            listeners = m_listeners.clone();
+        }
         for (NetworkTablesEvent type : eventTypes) {
-            if (!m_listeners.containsKey(type)) {
-                ArrayList<NetworkTablesEventListener> events = new ArrayList<>();
-                events.add(l);
-                m_listeners.put(type, events);
-            } else {
-                m_listeners.get(type).add(l);
-            }
+            NetworkTablesEventListener[] ofType = Arrays.copyOf(listeners[type.ordinal()], listeners[type.ordinal()].length + 1);
+            ofType[ofType.length - 1] = l;
+            listeners[type.ordinal()] = ofType;
         }
+        m_listeners = listeners;
     }
 
     /**
@@ -79,7 +175,38 @@ public class NetworkTablesEntry {
      * @return the current NetworkTablesValue of the entry
      */
     public NetworkTablesValue getValue() {
-        return m_localValue;
+        Cell cell = m_cell;
+        NetworkTablesPrimitiveCell primitive = m_primitive;
+        if (cell == null && primitive != null) {
+            // Only the view is kept in the cell, its version and timestamp are read from the primitive
+            CELL.compareAndSet(this, null, new Cell(new NetworkTablesValue(primitive, primitive.getType()), 0, 0));
+        }
+        cell = m_cell;
+        return cell == null ? null : cell.value;
+    }
+
+    /**
+     * Retrieves the time the value of this entry was last set.
+     *
+     * @return the time of the last update in milliseconds since the epoch
+     */
+    public long getTimestamp() {
+        NetworkTablesPrimitiveCell primitive = m_primitive;
+        if (primitive != null) return primitive.getTimestamp();
+        Cell cell = m_cell;
+        return cell == null ? 0 : cell.timestamp;
+    }
+
+    /**
+     * Retrieves the version of the current value, versions increase with every update of any entry.
+     *
+     * @return the version of the current value
+     */
+    public long getVersion() {
+        NetworkTablesPrimitiveCell primitive = m_primitive;
+        if (primitive != null) return primitive.getVersion();
+        Cell cell = m_cell;
+        return cell == null ? 0 : cell.version;
     }
 
     /**
@@ -88,8 +215,29 @@ public class NetworkTablesEntry {
      * @param newValue the new NetworkTablesValue to be set
      */
     public void update(NetworkTablesValue newValue) {
+        NetworkTablesPrimitiveCell primitive = m_primitive;
+        if (primitive != null) {
+            if (canHold(primitive, newValue) && primitive.set(newValue.get()) != NetworkTablesPrimitiveCell.RETIRED) {
+                return;
+            }
+            demote();
+        }
         if (!Objects.equals(newValue.getType(), NetworkTablesValueType.Unknown.typeString) || NetworkTablesValueType.getFromString(newValue.getType()) == NetworkTablesValueType.Unknown) // Doesnt actually fix the reconnection issue
-            this.m_localValue = newValue;
+            set(newValue);
+    }
+
+    private void set(NetworkTablesValue newValue) {
+        while (true) {
+            Cell current = m_cell;
+            if (replace(current, new Cell(newValue, current))) return;
+        }
+    }
+
+    private boolean replace(Cell current, Cell next) {
+        if (!CELL.compareAndSet(this, current, next)) return false;
+        // Only the value being replaced stays reachable, for snapshots taken during the update
+        if (current != null) current.previous = null;
+        return true;
     }
 
     /**
@@ -98,23 +246,203 @@ public class NetworkTablesEntry {
      * @param val the new value to be set
      */
     public void update(Object val) {
-        update(new NetworkTablesValue(val, m_localValue.getType()));
+        NetworkTablesPrimitiveCell primitive = m_primitive;
+        if (primitive != null) {
+            if (NetworkTablesPrimitiveCell.accepts(primitive.getType(), val) && primitive.set(val) != NetworkTablesPrimitiveCell.RETIRED) {
+                return;
+            }
+            demote();
+        }
+        update(new NetworkTablesValue(val, getValue().getType()));
+    }
+
+    /**
+     * Atomically replaces the value of this entry if it is still the expected one.
+     *
+     * @param expected the value read before computing the new one
+     * @param newValue the new value
+     * @return true if the value was replaced, false if another thread replaced it first
+     */
+    boolean compareAndSet(NetworkTablesValue expected, NetworkTablesValue newValue) {
+        NetworkTablesPrimitiveCell primitive = m_primitive;
+        if (primitive != null) {
+            // Primitive entries always show the same value view, the write itself is atomic
+            if (canHold(primitive, newValue) && primitive.set(newValue.get()) != NetworkTablesPrimitiveCell.RETIRED) {
+                return true;
+            }
+            demote();
+        }
+        Cell current = m_cell;
+        return current != null && current.value == expected && replace(current, new Cell(newValue, current));
+    }
+
+    /**
+     * Atomically replaces the value of this entry.
+     *
+     * @param newValue the new value
+     * @return the previous value
+     */
+    NetworkTablesValue getAndSet(NetworkTablesValue newValue) {
+        NetworkTablesPrimitiveCell primitive = m_primitive;
+        if (primitive != null) {
+            if (canHold(primitive, newValue)) {
+                Cell previous = primitive.getCell();
+                if (primitive.set(newValue.get()) != NetworkTablesPrimitiveCell.RETIRED) return previous.value;
+            }
+            demote();
+        }
+        while (true) {
+            Cell current = m_cell;
+            if (replace(current, new Cell(newValue, current))) return current == null ? null : current.value;
+        }
+    }
+
+    /**
+     * @return true if the value can be written into the primitive, bound values keep their getter and setter
+     */
+    private static boolean canHold(NetworkTablesPrimitiveCell primitive, NetworkTablesValue value) {
+        return !value.isBound()
+                && primitive.getType().typeString.equals(value.getType())
+                && NetworkTablesPrimitiveCell.accepts(primitive.getType(), value.get());
+    }
+
+    /**
+     * Moves the current value of a primitive entry into a cell, before setting a value the primitive can't hold.
+     * Later writes take the allocating path of object entries.
+     */
+    private synchronized void demote() {
+        NetworkTablesPrimitiveCell primitive = m_primitive;
+        if (primitive == null) return;
+        // Writers still holding the primitive fail from now on, so no write is lost after its value is copied
+        primitive.retire();
+        // The cell is set first, readers that see no primitive always find it
+        m_cell = primitive.getCell();
+        m_primitive = null;
+    }
+
+    /**
+     * Finds the value this entry held at a version.
+     *
+     * @param version the version read from {@link #currentVersion()}
+     * @return the newest cell not newer than the version, or null if it was already replaced twice
+     * or if the entry was created after the version
+     */
+    Cell getCellAt(long version) {
+        NetworkTablesPrimitiveCell primitive = m_primitive;
+        if (primitive != null) return primitive.getCellAt(version);
+        Cell cell = m_cell;
+        if (cell == null || cell.version <= version) return cell;
+        Cell previous = cell.previous;
+        return previous != null && previous.version <= version ? previous : null;
+    }
+
+    /**
+     * @return the current cell of this entry
+     */
+    Cell getCell() {
+        NetworkTablesPrimitiveCell primitive = m_primitive;
+        return primitive != null ? primitive.getCell() : m_cell;
+    }
+
+    /**
+     * @return the primitive value of this entry, or null if it holds an object or was given a bound value
+     */
+    NetworkTablesPrimitiveCell getPrimitive() {
+        return m_primitive;
+    }
+
+    /**
+     * @return the version of the first value of this entry
+     */
+    long getCreatedVersion() {
+        return m_createdVersion;
+    }
+
+    /**
+     * @return the version given to the last value set on any entry
+     */
+    static long currentVersion() {
+        return VERSION.get();
+    }
+
+    /**
+     * @return a new version, higher than all the versions given before
+     */
+    static long nextVersion() {
+        return VERSION.incrementAndGet();
     }
 
     /**
      * Calls the listeners associated with the specified event type.
+     * Updates are reported with {@link #callUpdateListeners} instead, which also records them for the subscribers.
      *
      * @param eventTypes the event type for which listeners are to be called
      * @param entry      the NetworkTablesEntry that triggered the event
      * @param value      the new value associated with the event
      */
     void callListenersOfEventType(NetworkTablesEvent eventTypes, NetworkTablesEntry entry, NetworkTablesValue value) {
-        if (m_listeners.get(eventTypes) == null) return;
-        for (NetworkTablesEventListener listener : m_listeners.get(eventTypes)) {
+        NetworkTablesEventListener[][] listeners = m_listeners;
+        if (listeners == null) return;
+        for (NetworkTablesEventListener listener : listeners[eventTypes.ordinal()]) {
             listener.apply(eventTypes);
         }
     }
 
+    /**
+     * Records an update in the queues of the subscribers and calls the {@link NetworkTablesEvent#kTopicUpdated} listeners.
+     * The value and time are the ones of the update, the entry can already hold a newer value set by another thread.
+     *
+     * @param value     the value set by the update
+     * @param timestamp the time of the update in milliseconds, the timestamp of the sender for values written by clients
+     */
+    void callUpdateListeners(Object value, long timestamp) {
+        for (NetworkTablesSubscriber<?> subscriber : m_subscribers) {
+            subscriber.offer(NetworkTablesValue.view(value), timestamp);
+        }
+        callListenersOfEventType(NetworkTablesEvent.kTopicUpdated, this, null);
+    }
+
+    /**
+     * Same as {@link #callUpdateListeners(Object, long)} for a primitive value, only boxed if a subscriber records it.
+     *
+     * @param type      the type of the value
+     * @param bits      the value set by the update as raw bits
+     * @param timestamp the time of the update in milliseconds
+     */
+    void callUpdateListeners(NetworkTablesValueType type, long bits, long timestamp) {
+        NetworkTablesSubscriber<?>[] subscribers = m_subscribers;
+        if (subscribers.length != 0) {
+            Object value = NetworkTablesPrimitiveCell.toObject(type, bits);
+            for (NetworkTablesSubscriber<?> subscriber : subscribers) {
+                subscriber.offer(value, timestamp);
+            }
+        }
+        callListenersOfEventType(NetworkTablesEvent.kTopicUpdated, this, null);
+    }
+
+    /**
+     * Adds a subscriber recording the updates of this entry.
+     *
+     * @param subscriber the subscriber
+     */
+    synchronized void addSubscriber(NetworkTablesSubscriber<?> subscriber) {
+        NetworkTablesSubscriber<?>[] subscribers = Arrays.copyOf(m_subscribers, m_subscribers.length + 1);
+        subscribers[subscribers.length - 1] = subscriber;
+        m_subscribers = subscribers;
+    }
+
+    /**
+     * Removes a subscriber recording the updates of this entry.
+     *
+     * @param subscriber the subscriber
+     */
+    synchronized void removeSubscriber(NetworkTablesSubscriber<?> subscriber) {
+        List<NetworkTablesSubscriber<?>> subscribers = new ArrayList<>(Arrays.asList(m_subscribers));
+        if (subscribers.remove(subscriber)) {
+            m_subscribers = subscribers.isEmpty() ? NO_SUBSCRIBERS : subscribers.toArray(NO_SUBSCRIBERS);
+        }
+    }
+
     /**
      * Retrieves the topic of this entry.
      *
@@ -124,6 +452,63 @@ public class NetworkTablesEntry {
         return m_topic;
     }
 
+    /**
+     * Retrieves the number of times the value of this entry changed.
+     *
+     * @return the update count of the entry
+     */
+    public long getUpdateCount() {
+        return m_updateCount;
+    }
+
+    void incrementUpdateCount() {
+        UPDATE_COUNT.incrementAndGet(this);
+    }
+
+    /**
+     * Retrieves the last time this entry was written, including writes of an unchanged value.
+     *
+     * @return the time of the last write in milliseconds since the epoch
+     */
+    public long getAccessTime() {
+        return m_accessTime;
+    }
+
+    /**
+     * @return true if the topic of this entry was removed from its server, later writes to it are not sent
+     */
+    public boolean isRemoved() {
+        return m_removed;
+    }
+
+    void markRemoved() {
+        m_removed = true;
+    }
+
+    /**
+     * Marks the entry as holding a value that wasn't flushed.
+     *
+     * @return true if it wasn't marked yet
+     */
+    boolean markDirty() {
+        return m_dirty == 0 && DIRTY.compareAndSet(this, 0, 1);
+    }
+
+    /**
+     * Clears the mark set by {@link #markDirty()}, before the value is read for a flush.
+     */
+    void clearDirty() {
+        m_dirty = 0;
+    }
+
+    /**
+     * Records a write of this entry. The time is only stored when it changed, so frequent writes don't contend on it.
+     */
+    void touch() {
+        long now = System.currentTimeMillis();
+        if (m_accessTime != now) m_accessTime = now;
+    }
+
     public int getId() {
         return m_id;
     }
@@ -131,4 +516,31 @@ public class NetworkTablesEntry {
     public void setId(int m_id) {
         this.m_id = m_id;
     }
+
+    /**
+     * An immutable value of an entry with its version and timestamp.
+     */
+    static final class Cell {
+        final NetworkTablesValue value;
+        final long version;
+        final long timestamp;
+        /**
+         * The value this cell replaced, cleared once this cell is replaced in turn
+         */
+        Cell previous;
+
+        Cell(NetworkTablesValue value, Cell previous) {
+            this.value = value;
+            this.version = nextVersion();
+            this.timestamp = System.currentTimeMillis();
+            this.previous = previous;
+        }
+
+        Cell(NetworkTablesValue value, long version, long timestamp) {
+            this.value = value;
+            this.version = version;
+            this.timestamp = timestamp;
+            this.previous = null;
+        }
+    }
 }
@@ -0,0 +1,82 @@
+package org.frcforftc.networktables;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+
+/**
+ * Memory fences ordering the plain reads and writes of memory shared with other processes,
+ * see {@link NetworkTablesSharedMemoryRing}.
+ * <p>
+ * This is the Java 8 implementation, using the fences of {@code sun.misc.Unsafe}. Volatile accesses of a field
+ * don't order the accesses of a mapped buffer, so runtimes without these fences can't use shared memory, see
+ * {@link #isAvailable()}. On Java 21 and above it is replaced by an implementation using the fences of
+ * {@link java.lang.invoke.VarHandle}.
+ */
+final class NetworkTablesFences {
+    private static final MethodHandle LOAD_FENCE;
+    private static final MethodHandle STORE_FENCE;
+
+    static {
+        MethodHandle loadFence = null;
+        MethodHandle storeFence = null;
+        try {
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            Field field = unsafeClass.getDeclaredField("theUnsafe");
+            field.setAccessible(true);
+            Object unsafe = field.get(null);
+            MethodType type = MethodType.methodType(void.class);
+            loadFence = MethodHandles.lookup().findVirtual(unsafeClass, "loadFence", type).bindTo(unsafe);
+            storeFence = MethodHandles.lookup().findVirtual(unsafeClass, "storeFence", type).bindTo(unsafe);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            loadFence = null;
+            storeFence = null;
+        }
+        LOAD_FENCE = loadFence;
+        STORE_FENCE = storeFence;
+    }
+
+    private NetworkTablesFences() {
+    }
+
+    /**
+     * @return true if the runtime provides the fences, shared memory can't be used otherwise
+     */
+    static boolean isAvailable() {
+        return LOAD_FENCE != null && STORE_FENCE != null;
+    }
+
+    /**
+     * Checks that the fences are available before memory gets shared with other processes.
+     *
+     * @throws UnsupportedOperationException if the runtime doesn't provide the fences
+     */
+    static void checkAvailable() {
+        if (!isAvailable()) {
+            throw new UnsupportedOperationException("Shared memory needs the memory fences of sun.misc.Unsafe, which this runtime doesn't provide");
+        }
+    }
+
+    /**
+     * Orders the reads before the fence before the reads and writes after it.
+     */
+    static void acquire() {
+        try {
+            LOAD_FENCE.invokeExact();
+        } catch (Throwable t) {
+            throw new IllegalStateException(t);
+        }
+    }
+
+    /**
+     * Orders the reads and writes before the fence before the writes after it.
+     */
+    static void release() {
+        try {
+            STORE_FENCE.invokeExact();
+        } catch (Throwable t) {
+            throw new IllegalStateException(t);
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package org.frcforftc.networktables;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Fixed-bucket histogram of durations in nanoseconds.
+ * Bucket {@code i} counts the values in {@code [2^(i-1), 2^i)}, so recording a value
+ * is a couple of atomic increments and never allocates.
+ */
+public class NetworkTablesHistogram {
+    /**
+     * Number of buckets, the last bucket holds every value of 2^62 nanoseconds and above
+     */
+    public static final int BUCKET_COUNT = 64;
+
+    private final AtomicLongArray m_buckets = new AtomicLongArray(BUCKET_COUNT);
+    private final AtomicLong m_count = new AtomicLong();
+    private final AtomicLong m_sum = new AtomicLong();
+    private final AtomicLong m_max = new AtomicLong();
+
+    /**
+     * Records a single value.
+     *
+     * @param nanos the duration in nanoseconds, negative values are recorded as 0
+     */
+    public void record(long nanos) {
+        if (nanos < 0) nanos = 0;
+
+        m_buckets.incrementAndGet(bucketOf(nanos));
+        m_count.incrementAndGet();
+        m_sum.addAndGet(nanos);
+
+        long max = m_max.get();
+        while (nanos > max && !m_max.compareAndSet(max, nanos)) {
+            max = m_max.get();
+        }
+    }
+
+    /**
+     * @return the number of recorded values
+     */
+    public long getCount() {
+        return m_count.get();
+    }
+
+    /**
+     * @return the mean of the recorded values in nanoseconds, 0 if nothing was recorded
+     */
+    public double getMean() {
+        long count = m_count.get();
+        return count == 0 ? 0 : (double) m_sum.get() / count;
+    }
+
+    /**
+     * @return the largest recorded value in nanoseconds
+     */
+    public long getMax() {
+        return m_max.get();
+    }
+
+    /**
+     * Estimates a percentile of the recorded values.
+     *
+     * @param percentile the percentile between 0 and 1
+     * @return the upper bound (in nanoseconds) of the bucket holding the percentile, 0 if nothing was recorded
+     */
+    public long getPercentile(double percentile) {
+        long count = m_count.get();
+        if (count == 0) return 0;
+
+        long rank = (long) Math.ceil(percentile * count);
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            seen += m_buckets.get(i);
+            if (seen >= rank) {
+                return Math.min(upperBoundOf(i), m_max.get());
+            }
+        }
+        return m_max.get();
+    }
+
+    /**
+     * Returns the number of values recorded in a bucket.
+     *
+     * @param bucket the bucket index
+     * @return the number of values in the bucket
+     */
+    public long getBucketCount(int bucket) {
+        return m_buckets.get(bucket);
+    }
+
+    /**
+     * Clears all the recorded values.
+     */
+    public void reset() {
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            m_buckets.set(i, 0);
+        }
+        m_count.set(0);
+        m_sum.set(0);
+        m_max.set(0);
+    }
+
+    private static int bucketOf(long nanos) {
+        return Math.min(64 - Long.numberOfLeadingZeros(nanos), BUCKET_COUNT - 1);
+    }
+
+    private static long upperBoundOf(int bucket) {
+        return bucket >= 63 ? Long.MAX_VALUE : (1L << bucket) - 1;
+    }
+}
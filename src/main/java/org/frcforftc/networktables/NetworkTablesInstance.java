@@ -2,13 +2,19 @@ package org.frcforftc.networktables;
 
 import java.io.IOException;
 import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
 
 /**
- * Singleton class representing the NetworkTables instance.
+ * Class representing a NetworkTables instance.
  * Provides methods to start and stop the {@link NT4Client} and {@link NT4Server},
  * and to manage NetworkTables entries.
+ * Most code uses the default instance, independent instances can be created with {@link #create()},
+ * e.g. to run several simulated robots in one JVM.
  */
 public class NetworkTablesInstance {
 
@@ -23,6 +29,21 @@ public class NetworkTablesInstance {
      */
     private final Map<String, NetworkTablesEntry> m_entries = new ConcurrentHashMap<>();
 
+    /**
+     * Struct publishers of the topics written with {@link #putStruct} and {@link #putStructArray}.
+     */
+    private final Map<String, NetworkTablesStructPublisher<?>> m_structPublishers = new ConcurrentHashMap<>();
+
+    /**
+     * Protobuf publishers of the topics written with {@link #putProto}.
+     */
+    private final Map<String, NetworkTablesProtoPublisher<?>> m_protoPublishers = new ConcurrentHashMap<>();
+
+    /**
+     * Last message decoded by {@link #getProto} for each topic, with the bytes it was decoded from.
+     */
+    private final Map<String, DecodedProto> m_decodedProtos = new ConcurrentHashMap<>();
+
     /**
      * Instance of {@link NT4Client} used to connect to the NT4 server.
      */
@@ -43,6 +64,16 @@ public class NetworkTablesInstance {
         return m_instance;
     }
 
+    /**
+     * Creates a new instance that shares no state with the default one.
+     * Its server must be started on a port no other instance uses.
+     *
+     * @return the new {@link NetworkTablesInstance}
+     */
+    public static NetworkTablesInstance create() {
+        return new NetworkTablesInstance();
+    }
+
     /**
      * Returns the map of NetworkTables entries.
      * This map contains all the entries with their associated topics.
@@ -59,7 +90,17 @@ public class NetworkTablesInstance {
      * This method should be called before any client operations can occur.
      */
     public void startNT4Server(String address, int port) {
-        this.m_server = NT4Server.createInstance(address, port);
+        startNT4Server(address, port, null);
+    }
+
+    /**
+     * Starts the NT4 server with permessage-deflate offered to clients.
+     *
+     * @param compression the compression settings for frames sent by the server, or null to disable compression
+     * @see NetworkTablesDeflateExtension
+     */
+    public void startNT4Server(String address, int port, NetworkTablesDeflateExtension compression) {
+        this.m_server = NT4Server.createInstance(address, port, compression);
         m_server.start();
     }
 
@@ -75,6 +116,18 @@ public class NetworkTablesInstance {
         m_client.connect();
     }
 
+    /**
+     * Starts the NT4 client with permessage-deflate requested from the server.
+     *
+     * @param path        the URI for the NT4 server
+     * @param compression the compression settings for frames sent by the client, or null to disable compression
+     * @see NetworkTablesDeflateExtension
+     */
+    public void startNT4Client(URI path, NetworkTablesDeflateExtension compression) {
+        this.m_client = new NT4Client(path, compression);
+        m_client.connect();
+    }
+
     /**
      * Puts a numeric value into the specified topic.
      * The value must not be an instance of {@link NetworkTablesEntry}. If it is, an {@link IllegalArgumentException} is thrown.
@@ -86,6 +139,159 @@ public class NetworkTablesInstance {
         m_server.putTopic(topic, number);
     }
 
+    /**
+     * Puts a double value into the specified topic without allocating once the topic exists.
+     *
+     * @param topic the topic name
+     * @param value the value to put into the topic
+     */
+    public void putDouble(String topic, double value) {
+        m_server.putTopic(topic, value);
+    }
+
+    /**
+     * Puts a float value into the specified topic without allocating once the topic exists.
+     *
+     * @param topic the topic name
+     * @param value the value to put into the topic
+     */
+    public void putFloat(String topic, float value) {
+        m_server.putTopic(topic, value);
+    }
+
+    /**
+     * Puts an integer value into the specified topic without allocating once the topic exists.
+     *
+     * @param topic the topic name
+     * @param value the value to put into the topic
+     */
+    public void putInteger(String topic, long value) {
+        m_server.putTopic(topic, value);
+    }
+
+    /**
+     * Returns a handle publishing doubles to a topic, faster than {@link #putDouble} when the same topic is put
+     * every loop. The topic is created with the default value if it doesn't exist.
+     *
+     * @param topic        the topic name
+     * @param defaultValue the value of the topic if it is created
+     * @return the publisher, which should be kept and reused
+     */
+    public NetworkTablesDoublePublisher getDoublePublisher(String topic, double defaultValue) {
+        NetworkTablesEntry entry = get(topic);
+        return new NetworkTablesDoublePublisher(m_server, entry != null ? entry : m_server.putTopic(topic, defaultValue));
+    }
+
+    /**
+     * Returns a handle publishing integers to a topic, created with the default value if it doesn't exist.
+     *
+     * @param topic        the topic name
+     * @param defaultValue the value of the topic if it is created
+     * @return the publisher, which should be kept and reused
+     */
+    public NetworkTablesIntegerPublisher getIntegerPublisher(String topic, long defaultValue) {
+        NetworkTablesEntry entry = get(topic);
+        return new NetworkTablesIntegerPublisher(m_server, entry != null ? entry : m_server.putTopic(topic, defaultValue));
+    }
+
+    /**
+     * Returns a handle publishing booleans to a topic, created with the default value if it doesn't exist.
+     *
+     * @param topic        the topic name
+     * @param defaultValue the value of the topic if it is created
+     * @return the publisher, which should be kept and reused
+     */
+    public NetworkTablesBooleanPublisher getBooleanPublisher(String topic, boolean defaultValue) {
+        NetworkTablesEntry entry = get(topic);
+        return new NetworkTablesBooleanPublisher(m_server, entry != null ? entry : m_server.putTopic(topic, defaultValue));
+    }
+
+    /**
+     * Returns a handle publishing strings to a topic, created with the default value if it doesn't exist.
+     *
+     * @param topic        the topic name
+     * @param defaultValue the value of the topic if it is created
+     * @return the publisher, which should be kept and reused
+     */
+    public NetworkTablesStringPublisher getStringPublisher(String topic, String defaultValue) {
+        NetworkTablesEntry entry = get(topic);
+        return new NetworkTablesStringPublisher(m_server, entry != null ? entry : m_server.putTopic(topic, defaultValue));
+    }
+
+    /**
+     * Returns a handle publishing arrays of doubles to a topic, created with the default value if it doesn't exist.
+     *
+     * @param topic        the topic name
+     * @param defaultValue the value of the topic if it is created
+     * @return the publisher, which should be kept and reused
+     */
+    public NetworkTablesDoubleArrayPublisher getDoubleArrayPublisher(String topic, double[] defaultValue) {
+        NetworkTablesEntry entry = get(topic);
+        return new NetworkTablesDoubleArrayPublisher(m_server, entry != null ? entry : m_server.putTopic(topic, (Object) defaultValue.clone()));
+    }
+
+    /**
+     * Returns a handle reading doubles from a topic, faster than {@link #get} when the same topic is read every loop.
+     * With a queue size above 0 every update is also kept until it is read with
+     * {@link NetworkTablesSubscriber#readQueue()}, so no sample is lost between two loops.
+     *
+     * @param topic        the topic name
+     * @param defaultValue the value read while the topic doesn't exist
+     * @param queueSize    the number of updates kept for {@code readQueue}, 0 to only read the latest value
+     * @return the subscriber, which should be kept and reused
+     */
+    public NetworkTablesDoubleSubscriber getDoubleSubscriber(String topic, double defaultValue, int queueSize) {
+        return new NetworkTablesDoubleSubscriber(m_server, topic, defaultValue, queueSize);
+    }
+
+    /**
+     * Returns a handle reading integers from a topic, see {@link #getDoubleSubscriber}.
+     *
+     * @param topic        the topic name
+     * @param defaultValue the value read while the topic doesn't exist
+     * @param queueSize    the number of updates kept for {@code readQueue}, 0 to only read the latest value
+     * @return the subscriber, which should be kept and reused
+     */
+    public NetworkTablesIntegerSubscriber getIntegerSubscriber(String topic, long defaultValue, int queueSize) {
+        return new NetworkTablesIntegerSubscriber(m_server, topic, defaultValue, queueSize);
+    }
+
+    /**
+     * Returns a handle reading booleans from a topic, see {@link #getDoubleSubscriber}.
+     *
+     * @param topic        the topic name
+     * @param defaultValue the value read while the topic doesn't exist
+     * @param queueSize    the number of updates kept for {@code readQueue}, 0 to only read the latest value
+     * @return the subscriber, which should be kept and reused
+     */
+    public NetworkTablesBooleanSubscriber getBooleanSubscriber(String topic, boolean defaultValue, int queueSize) {
+        return new NetworkTablesBooleanSubscriber(m_server, topic, defaultValue, queueSize);
+    }
+
+    /**
+     * Returns a handle reading strings from a topic, see {@link #getDoubleSubscriber}.
+     *
+     * @param topic        the topic name
+     * @param defaultValue the value read while the topic doesn't exist
+     * @param queueSize    the number of updates kept for {@code readQueue}, 0 to only read the latest value
+     * @return the subscriber, which should be kept and reused
+     */
+    public NetworkTablesStringSubscriber getStringSubscriber(String topic, String defaultValue, int queueSize) {
+        return new NetworkTablesStringSubscriber(m_server, topic, defaultValue, queueSize);
+    }
+
+    /**
+     * Returns a handle reading arrays of doubles from a topic, see {@link #getDoubleSubscriber}.
+     *
+     * @param topic        the topic name
+     * @param defaultValue the value read while the topic doesn't exist
+     * @param queueSize    the number of updates kept for {@code readQueue}, 0 to only read the latest value
+     * @return the subscriber, which should be kept and reused
+     */
+    public NetworkTablesDoubleArraySubscriber getDoubleArraySubscriber(String topic, double[] defaultValue, int queueSize) {
+        return new NetworkTablesDoubleArraySubscriber(m_server, topic, defaultValue, queueSize);
+    }
+
     /**
      * Puts an array of double values into the specified topic.
      *
@@ -138,7 +344,7 @@ public class NetworkTablesInstance {
     }
 
     /**
-     * Puts a boolean value into the specified topic.
+     * Puts a boolean value into the specified topic without allocating once the topic exists.
      *
      * @param topic the topic name
      * @param b     the {@link boolean} value to put into the topic
@@ -157,6 +363,149 @@ public class NetworkTablesInstance {
         m_server.putTopic(topic, arr);
     }
 
+    /**
+     * Puts a struct value into the specified topic, the topic type is {@code struct:<simple class name>}.
+     * The schema of the struct is published under {@link NT4Server#SCHEMA_PREFIX} on first use.
+     *
+     * @param topic the topic name
+     * @param value the value to put into the topic
+     * @param <T>   the class of the value, see {@link NetworkTablesStruct} for the supported fields
+     */
+    @SuppressWarnings("unchecked")
+    public <T> void putStruct(String topic, T value) {
+        getStructPublisher(topic, (Class<T>) value.getClass(), false).set(value);
+    }
+
+    /**
+     * Puts an array of struct values into the specified topic as a single payload,
+     * the topic type is {@code struct:<simple class name>[]}.
+     *
+     * @param topic  the topic name
+     * @param values the values to put into the topic
+     * @param <T>    the class of the values, see {@link NetworkTablesStruct} for the supported fields
+     */
+    @SuppressWarnings("unchecked")
+    public <T> void putStructArray(String topic, T[] values) {
+        getStructPublisher(topic, (Class<T>) values.getClass().getComponentType(), true).setArray(values);
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> NetworkTablesStructPublisher<T> getStructPublisher(String topic, Class<T> type, boolean array) {
+        NetworkTablesStructPublisher<?> publisher = m_structPublishers.get(topic);
+        if (publisher == null || publisher.getStruct().getStructClass() != type) {
+            publisher = new NetworkTablesStructPublisher<>(m_server, topic, NetworkTablesStruct.forClass(type), array);
+            m_structPublishers.put(topic, publisher);
+        }
+        return (NetworkTablesStructPublisher<T>) publisher;
+    }
+
+    /**
+     * Reads the struct value of the specified topic.
+     *
+     * @param topic the topic name
+     * @param type  the class of the value
+     * @param <T>   the class of the value
+     * @return the unpacked value, or null if the topic doesn't exist or doesn't hold raw bytes
+     */
+    public <T> T getStruct(String topic, Class<T> type) {
+        NetworkTablesEntry entry = get(topic);
+        ByteBuffer raw = entry == null ? null : entry.getValue().getRaw();
+        if (raw == null) return null;
+        return NetworkTablesStruct.forClass(type).unpack(raw.order(ByteOrder.LITTLE_ENDIAN));
+    }
+
+    /**
+     * Reads the struct array value of the specified topic.
+     *
+     * @param topic the topic name
+     * @param type  the class of the values
+     * @param <T>   the class of the values
+     * @return the unpacked values, or null if the topic doesn't exist or doesn't hold raw bytes
+     */
+    public <T> T[] getStructArray(String topic, Class<T> type) {
+        NetworkTablesEntry entry = get(topic);
+        ByteBuffer raw = entry == null ? null : entry.getValue().getRaw();
+        if (raw == null) return null;
+        return NetworkTablesStruct.forClass(type).unpackArray(raw.order(ByteOrder.LITTLE_ENDIAN));
+    }
+
+    /**
+     * Puts a protobuf message into the specified topic, the topic type is {@code proto:<message full name>}.
+     * The descriptors of the message are published under {@link NT4Server#SCHEMA_PREFIX} on first use,
+     * and the message is sent as a single raw payload.
+     *
+     * @param topic   the topic name
+     * @param message the message to put into the topic
+     * @param <T>     the message class
+     */
+    @SuppressWarnings("unchecked")
+    public <T extends com.google.protobuf.Message> void putProto(String topic, T message) {
+        NetworkTablesProtoPublisher<?> publisher = m_protoPublishers.get(topic);
+        if (publisher == null || publisher.getProto().getDefaultInstance().getClass() != message.getClass()) {
+            publisher = new NetworkTablesProtoPublisher<>(m_server, topic, NetworkTablesProto.of((T) message.getDefaultInstanceForType()));
+            m_protoPublishers.put(topic, publisher);
+        }
+        ((NetworkTablesProtoPublisher<T>) publisher).set(message);
+    }
+
+    /**
+     * Reads the protobuf message of the specified topic. Payloads are only decoded here,
+     * and reading a topic whose value didn't change since the last call returns the same message.
+     *
+     * @param topic           the topic name
+     * @param defaultInstance the default instance of the message class, e.g. {@code Pose.getDefaultInstance()}
+     * @param <T>             the message class
+     * @return the decoded message, or null if the topic doesn't exist or doesn't hold raw bytes
+     */
+    @SuppressWarnings("unchecked")
+    public <T extends com.google.protobuf.Message> T getProto(String topic, T defaultInstance) {
+        NetworkTablesEntry entry = get(topic);
+        Object data = entry == null ? null : entry.getValue().get();
+        ByteBuffer raw = NetworkTablesValue.asRaw(data);
+        if (raw == null) return null;
+
+        DecodedProto decoded = m_decodedProtos.get(topic);
+        if (decoded == null || decoded.data != data || decoded.message.getClass() != defaultInstance.getClass()) {
+            decoded = new DecodedProto(data, NetworkTablesProto.of(defaultInstance).parse(raw));
+            m_decodedProtos.put(topic, decoded);
+        }
+        return (T) decoded.message;
+    }
+
+    /**
+     * Puts a topic whose value is read from a supplier, the supplier is polled periodically
+     * by the server's {@link NetworkTablesSampler} and changes are sent to subscribers.
+     *
+     * @param topic    the topic name
+     * @param getter   the supplier providing the value
+     * @param type     the type of the value
+     * @param periodMs the period (in milliseconds) between two samples of the supplier
+     * @return the {@link NetworkTablesEntry} of the topic
+     */
+    public NetworkTablesEntry putSampled(String topic, Supplier<?> getter, NetworkTablesValueType type, long periodMs) {
+        NetworkTablesEntry entry = m_server.putTopic(topic, new NetworkTablesValue(getter, type));
+        m_server.getSampler().add(entry, periodMs);
+        return entry;
+    }
+
+    /**
+     * Puts a topic bound to a getter and a setter. The getter is polled like {@link #putSampled},
+     * and values written by clients are passed to the setter on the server's {@link NetworkTablesSetterDispatcher}.
+     *
+     * @param topic    the topic name
+     * @param getter   the supplier providing the value
+     * @param setter   the consumer receiving values written by clients
+     * @param type     the type of the value
+     * @param periodMs the period (in milliseconds) between two samples of the getter
+     * @param <T>      the type of the bound value
+     * @return the {@link NetworkTablesEntry} of the topic
+     */
+    public <T> NetworkTablesEntry putBound(String topic, Supplier<T> getter, Consumer<T> setter, NetworkTablesValueType type, long periodMs) {
+        NetworkTablesEntry entry = m_server.putTopic(topic, new NetworkTablesValue(getter, setter, type));
+        m_server.getSampler().add(entry, periodMs);
+        return entry;
+    }
+
     /**
      * Gets the {@link NetworkTablesEntry} for the specified topic.
      * This method retrieves the entry associated with the given topic from the server.
@@ -168,6 +517,68 @@ public class NetworkTablesInstance {
         return m_server.getEntries().get(topic);
     }
 
+    /**
+     * Removes a topic from the server and unannounces it to the clients.
+     *
+     * @param topic the topic name
+     * @return true if the topic existed
+     */
+    public boolean removeTopic(String topic) {
+        m_structPublishers.remove(topic);
+        m_protoPublishers.remove(topic);
+        m_decodedProtos.remove(topic);
+        return m_server.removeTopic(topic);
+    }
+
+    /**
+     * Makes the server remove topics that aren't written for longer than a timeout, except persistent topics,
+     * schemas and sampled topics. Useful when topic names are generated, e.g. one topic per trajectory.
+     *
+     * @param idleTimeoutMs the time (in milliseconds) after its last write a topic is removed, 0 to keep all topics
+     * @see NetworkTablesSweeper
+     */
+    public void setTopicIdleTimeout(long idleTimeoutMs) {
+        m_server.setIdleTimeout(idleTimeoutMs);
+    }
+
+    /**
+     * Sends every value put since the last flush, in one frame per subscriber with a shared timestamp. Call it at the
+     * end of the robot loop with {@link #setManualFlush(boolean)} so dashboards see the values of a loop together.
+     *
+     * @return the number of topics sent
+     */
+    public int flush() {
+        return m_server.flush();
+    }
+
+    /**
+     * Defers sending the values put to subscribers until {@link #flush()} is called.
+     *
+     * @param manualFlush true to send values on flush, false to send them as soon as they are put
+     */
+    public void setManualFlush(boolean manualFlush) {
+        m_server.setManualFlush(manualFlush);
+    }
+
+    /**
+     * Defers sending the values put to subscribers and flushes them periodically.
+     *
+     * @param periodMs the period (in milliseconds) between two flushes, 0 to only flush on {@link #flush()}
+     */
+    public void setAutoFlushPeriod(long periodMs) {
+        m_server.setAutoFlushPeriod(periodMs);
+    }
+
+    /**
+     * Takes a point-in-time, immutable view of the values of all topics of the server without blocking writers,
+     * cheap enough to take every loop for logging.
+     *
+     * @return the snapshot
+     */
+    public NetworkTablesSnapshot snapshot() {
+        return m_server.snapshot();
+    }
+
     /**
      * Stops the NT4 server.
      * Attempts to stop the server and throws a {@link ServerStopException} if interrupted.
@@ -198,6 +609,19 @@ public class NetworkTablesInstance {
         return m_server;
     }
 
+    /**
+     * A decoded protobuf message and the bytes it was decoded from.
+     */
+    private static class DecodedProto {
+        final Object data;
+        final Object message;
+
+        DecodedProto(Object data, Object message) {
+            this.data = data;
+            this.message = message;
+        }
+    }
+
     /**
      * Custom exception class for invalid URI syntax errors in NT4Client initialization.
      */
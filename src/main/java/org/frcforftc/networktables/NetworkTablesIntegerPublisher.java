@@ -0,0 +1,26 @@
+package org.frcforftc.networktables;
+
+/**
+ * Publishes integers to a topic without looking the topic up, see {@link NetworkTablesPublisher}.
+ * Setting a value doesn't allocate, like the zero-garbage puts of {@link NT4Server}.
+ */
+public class NetworkTablesIntegerPublisher extends NetworkTablesPublisher {
+    NetworkTablesIntegerPublisher(NT4Server server, NetworkTablesEntry entry) {
+        super(server, entry);
+    }
+
+    /**
+     * Publishes a value, sent to the subscribers of the topic if it changed.
+     *
+     * @param value the value to publish
+     */
+    public void set(long value) {
+        NetworkTablesEntry entry = getEntry();
+        if (isPrimitive(entry, NetworkTablesValueType.Int)) {
+            getServer().setPrimitive(entry, NetworkTablesValueType.Int, value);
+        } else {
+            // Removed, or created with an object value by another put
+            setEntry(getServer().putTopic(getTopic(), value));
+        }
+    }
+}
@@ -0,0 +1,34 @@
+package org.frcforftc.networktables;
+
+/**
+ * Reads integers from a topic without looking the topic up, see {@link NetworkTablesSubscriber}.
+ */
+public class NetworkTablesIntegerSubscriber extends NetworkTablesSubscriber<Long> {
+    private final long m_defaultValue;
+
+    NetworkTablesIntegerSubscriber(NT4Server server, String topic, long defaultValue, int queueSize) {
+        super(server, topic, queueSize);
+        this.m_defaultValue = defaultValue;
+    }
+
+    /**
+     * Reads the latest value of the topic.
+     *
+     * @return the value, or the default value if the topic doesn't exist or holds another type
+     */
+    public long get() {
+        NetworkTablesEntry entry = getEntry();
+        if (entry == null) return m_defaultValue;
+        NetworkTablesPrimitiveCell primitive = entry.getPrimitive();
+        if (primitive != null && primitive.getType() == NetworkTablesValueType.Int) {
+            return primitive.getBits();
+        }
+        Long value = convert(entry.getValue().get());
+        return value == null ? m_defaultValue : value;
+    }
+
+    @Override
+    Long convert(Object value) {
+        return value instanceof Number ? ((Number) value).longValue() : null;
+    }
+}
@@ -0,0 +1,277 @@
+package org.frcforftc.networktables;
+
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Connects {@link NT4Client}s to an {@link NT4Server} in the same JVM through queues instead of sockets, for tests
+ * and benchmarks that shouldn't depend on the network stack.
+ * <p>
+ * Clients go through the same connection setup, control messages and value frames as WebSocket clients, but frames
+ * are only delivered when {@link #step()} is called, on the calling thread. Each step first hands the frames queued
+ * by the clients to the server, then the frames queued by the server to the clients, so a test stepping from a single
+ * thread sees the same sequence of events on every run. The server doesn't need to be started.
+ * <pre>{@code
+ * NetworkTablesLoopback loopback = new NetworkTablesLoopback(server);
+ * NT4Client client = loopback.createClient();
+ * client.connect();
+ * client.subscribe("drive/speed");
+ * loopback.runUntilIdle();
+ * }</pre>
+ */
+public class NetworkTablesLoopback {
+    /**
+     * Steps after which {@link #runUntilIdle()} gives up, clients and server answering each other forever
+     */
+    public static final int MAX_STEPS = 10_000;
+    private static final String PROTOCOL = "v4.1.networktables.first.wpi.edu";
+
+    private final NT4Server m_server;
+    /**
+     * Connected clients, in the order they connected
+     */
+    private final List<Pipe> m_pipes = new ArrayList<>();
+    private int m_nextPipe = 0;
+
+    /**
+     * Constructs a loopback connecting clients to the given server.
+     *
+     * @param server the server
+     */
+    public NetworkTablesLoopback(NT4Server server) {
+        this.m_server = server;
+    }
+
+    /**
+     * Creates a client connected to the server through this loopback once {@link NT4Client#connect()} is called.
+     *
+     * @return the client
+     */
+    public synchronized NT4Client createClient() {
+        return new NT4Client(new Pipe("loopback:" + m_nextPipe++));
+    }
+
+    /**
+     * @return the number of connected clients
+     */
+    public synchronized int getConnectionCount() {
+        return m_pipes.size();
+    }
+
+    /**
+     * Delivers the frames queued by the clients to the server, then the frames queued by the server to the clients,
+     * then closes the connections closed by either side. Frames queued while delivering are left for the next step.
+     *
+     * @return the number of frames and closes delivered
+     */
+    public synchronized int step() {
+        Pipe[] pipes = m_pipes.toArray(new Pipe[0]);
+        int delivered = 0;
+        for (Pipe pipe : pipes) {
+            delivered += pipe.deliverToServer();
+        }
+        for (Pipe pipe : pipes) {
+            delivered += pipe.deliverToClient();
+        }
+        for (Pipe pipe : pipes) {
+            if (pipe.isClosed()) {
+                m_pipes.remove(pipe);
+                pipe.deliverClose();
+                delivered++;
+            }
+        }
+        return delivered;
+    }
+
+    /**
+     * Steps until no frame is left to deliver.
+     *
+     * @return the number of frames and closes delivered
+     * @throws IllegalStateException if frames are still queued after {@link #MAX_STEPS} steps
+     */
+    public synchronized int runUntilIdle() {
+        int delivered = 0;
+        for (int i = 0; i < MAX_STEPS; i++) {
+            int frames = step();
+            if (frames == 0) return delivered;
+            delivered += frames;
+        }
+        throw new IllegalStateException("Frames are still queued after " + MAX_STEPS + " steps");
+    }
+
+    private synchronized void add(Pipe pipe) {
+        m_pipes.add(pipe);
+    }
+
+    /**
+     * Both directions of the connection of a client. The pipe is the transport of the client, its
+     * {@link ServerEnd} is the connection the server sees.
+     */
+    private final class Pipe implements NT4ClientTransport {
+        private final String m_name;
+        private final ServerEnd m_serverEnd;
+        /**
+         * Frames queued for each side, {@link String}s for text frames and byte arrays for binary frames
+         */
+        private final ArrayDeque<Object> m_toServer = new ArrayDeque<>();
+        private final ArrayDeque<Object> m_toClient = new ArrayDeque<>();
+        private NT4Client m_client = null;
+        private boolean m_closed = false;
+        private boolean m_closedByClient = false;
+
+        Pipe(String name) {
+            this.m_name = name;
+            this.m_serverEnd = new ServerEnd(this);
+        }
+
+        @Override
+        public URI getURI() {
+            return URI.create("loopback://localhost/" + m_name.substring(m_name.indexOf(':') + 1));
+        }
+
+        @Override
+        public void connect(NT4Client client) {
+            synchronized (this) {
+                if (m_client != null) throw new IllegalStateException("The client is already connected");
+                m_client = client;
+            }
+            add(this);
+            m_server.open(m_serverEnd, PROTOCOL);
+            client.onOpen(null);
+        }
+
+        @Override
+        public boolean sendText(String text) {
+            return queue(m_toServer, text);
+        }
+
+        @Override
+        public boolean sendBinary(ByteBuffer payload) {
+            return queue(m_toServer, copy(payload));
+        }
+
+        synchronized boolean queue(ArrayDeque<Object> queue, Object frame) {
+            if (m_client == null || m_closed) return false;
+            queue.add(frame);
+            return true;
+        }
+
+        @Override
+        public synchronized boolean isOpen() {
+            return m_client != null && !m_closed;
+        }
+
+        @Override
+        public synchronized boolean isClosed() {
+            return m_closed;
+        }
+
+        @Override
+        public void close() {
+            close(true);
+        }
+
+        synchronized void close(boolean byClient) {
+            if (m_closed) return;
+            m_closed = true;
+            m_closedByClient = byClient;
+        }
+
+        int deliverToServer() {
+            int count;
+            synchronized (this) {
+                count = m_toServer.size();
+            }
+            for (int i = 0; i < count; i++) {
+                Object frame;
+                synchronized (this) {
+                    frame = m_toServer.poll();
+                }
+                if (frame instanceof String) {
+                    m_server.onMessage(m_serverEnd, (String) frame);
+                } else {
+                    m_server.onMessage(m_serverEnd, ByteBuffer.wrap((byte[]) frame));
+                }
+            }
+            return count;
+        }
+
+        int deliverToClient() {
+            int count;
+            synchronized (this) {
+                count = m_toClient.size();
+            }
+            for (int i = 0; i < count; i++) {
+                Object frame;
+                synchronized (this) {
+                    frame = m_toClient.poll();
+                }
+                if (frame instanceof String) {
+                    m_client.onMessage((String) frame);
+                } else {
+                    m_client.onMessage(ByteBuffer.wrap((byte[]) frame));
+                }
+            }
+            return count;
+        }
+
+        void deliverClose() {
+            boolean byClient;
+            synchronized (this) {
+                m_toServer.clear();
+                m_toClient.clear();
+                byClient = m_closedByClient;
+            }
+            m_server.onClose(m_serverEnd, 1000, "", byClient);
+            m_client.onClose(1000, "", !byClient);
+        }
+
+        private byte[] copy(ByteBuffer payload) {
+            byte[] bytes = new byte[payload.remaining()];
+            int position = payload.position();
+            payload.get(bytes);
+            payload.position(position);
+            return bytes;
+        }
+    }
+
+    /**
+     * Connection of a client as seen by the server, frames sent to it are queued for the client.
+     */
+    private final class ServerEnd extends NT4LocalConnection {
+        private final Pipe m_pipe;
+
+        ServerEnd(Pipe pipe) {
+            super(m_server);
+            this.m_pipe = pipe;
+        }
+
+        @Override
+        String getName() {
+            return m_pipe.m_name;
+        }
+
+        @Override
+        boolean sendText(String text) {
+            return m_pipe.queue(m_pipe.m_toClient, text);
+        }
+
+        @Override
+        boolean sendBinary(ByteBuffer payload) {
+            return m_pipe.queue(m_pipe.m_toClient, m_pipe.copy(payload));
+        }
+
+        @Override
+        public boolean isClosed() {
+            return m_pipe.isClosed();
+        }
+
+        @Override
+        public void close() {
+            m_pipe.close(false);
+        }
+    }
+}
@@ -0,0 +1,239 @@
+package org.frcforftc.networktables;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Counters and latency histograms describing the work done by an {@link NT4Server}.
+ * Recording never allocates, the values can be read through this class or published
+ * as topics under {@link #TOPIC_PREFIX} with {@link #publish(long)}.
+ */
+public class NetworkTablesMetrics {
+    /**
+     * Prefix of the topics the metrics are published under
+     */
+    public static final String TOPIC_PREFIX = "$sys/metrics";
+    /**
+     * Minimum window (in nanoseconds) over which topic update rates are computed
+     */
+    private static final long RATE_WINDOW_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    private final NT4Server m_server;
+    private final NetworkTablesHistogram m_encodeTime = new NetworkTablesHistogram();
+    private final NetworkTablesHistogram m_decodeTime = new NetworkTablesHistogram();
+    private final NetworkTablesHistogram m_broadcastTime = new NetworkTablesHistogram();
+    private final AtomicLong m_bytesSent = new AtomicLong();
+    private final AtomicLong m_framesSent = new AtomicLong();
+    private final AtomicLong m_bytesReceived = new AtomicLong();
+    private final AtomicLong m_framesReceived = new AtomicLong();
+    private final AtomicLong m_droppedUpdates = new AtomicLong();
+
+    /**
+     * Update counts of every topic when the rates were last computed
+     */
+    private Map<String, Long> m_lastUpdateCounts = Collections.emptyMap();
+    /**
+     * Topic update rates (in updates per second) computed over the last window
+     */
+    private Map<String, Double> m_updateRates = Collections.emptyMap();
+    private long m_lastRateNanos = System.nanoTime();
+    private boolean m_published = false;
+
+    /**
+     * Constructs the metrics of a server.
+     *
+     * @param server the server the metrics describe
+     */
+    NetworkTablesMetrics(NT4Server server) {
+        this.m_server = server;
+    }
+
+    /**
+     * @return the time taken to encode binary value messages
+     */
+    public NetworkTablesHistogram getEncodeTime() {
+        return m_encodeTime;
+    }
+
+    /**
+     * @return the time taken to decode received messages
+     */
+    public NetworkTablesHistogram getDecodeTime() {
+        return m_decodeTime;
+    }
+
+    /**
+     * @return the time taken to send a message to all of its recipients
+     */
+    public NetworkTablesHistogram getBroadcastTime() {
+        return m_broadcastTime;
+    }
+
+    /**
+     * @return the number of bytes sent to all clients, before framing and compression
+     */
+    public long getBytesSent() {
+        return m_bytesSent.get();
+    }
+
+    /**
+     * @return the number of frames sent to all clients
+     */
+    public long getFramesSent() {
+        return m_framesSent.get();
+    }
+
+    /**
+     * @return the number of bytes received from all clients
+     */
+    public long getBytesReceived() {
+        return m_bytesReceived.get();
+    }
+
+    /**
+     * @return the number of frames received from all clients
+     */
+    public long getFramesReceived() {
+        return m_framesReceived.get();
+    }
+
+    /**
+     * @return the number of updates that never reached their destination, either because the client
+     * disconnected, because a newer value replaced them before a setter call, or because the receive worker of
+     * their client was full
+     */
+    public long getDroppedUpdateCount() {
+        // Reading a metric must not create the dispatcher
+        NetworkTablesSetterDispatcher dispatcher = m_server.peekSetterDispatcher();
+        return m_droppedUpdates.get() + (dispatcher == null ? 0 : dispatcher.getCoalescedCount());
+    }
+
+    /**
+     * @return the number of frames and setter calls waiting to be processed
+     */
+    public long getQueueDepth() {
+        NetworkTablesSetterDispatcher dispatcher = m_server.peekSetterDispatcher();
+        long depth = dispatcher == null ? 0 : dispatcher.getPendingCount();
+        NetworkTablesReceivePipeline pipeline = m_server.getReceivePipeline();
+        if (pipeline != null) depth += pipeline.getPendingCount();
+        for (NT4Connection connection : m_server.getNT4Connections()) {
+            depth += connection.getQueueDepth();
+        }
+        return depth;
+    }
+
+    /**
+     * @return the state of every connected client, including its bytes and frames sent
+     */
+    public List<NT4Connection> getConnections() {
+        return m_server.getNT4Connections();
+    }
+
+    /**
+     * Returns the update rate of every topic. Rates are recomputed when at least a second
+     * passed since the last computation, otherwise the previous rates are returned.
+     *
+     * @return map of topic names to their update rate in updates per second
+     */
+    public synchronized Map<String, Double> getTopicUpdateRates() {
+        long now = System.nanoTime();
+        long elapsed = now - m_lastRateNanos;
+        if (elapsed < RATE_WINDOW_NANOS) return m_updateRates;
+
+        Map<String, Long> counts = new HashMap<>();
+        Map<String, Double> rates = new TreeMap<>();
+        for (NetworkTablesEntry entry : m_server.getEntries().values()) {
+            if (entry.getTopic().startsWith(TOPIC_PREFIX)) continue;
+
+            long count = entry.getUpdateCount();
+            Long last = m_lastUpdateCounts.get(entry.getTopic());
+            counts.put(entry.getTopic(), count);
+            rates.put(entry.getTopic(), (count - (last == null ? 0 : last)) * 1e9 / elapsed);
+        }
+
+        m_lastUpdateCounts = counts;
+        m_updateRates = Collections.unmodifiableMap(rates);
+        m_lastRateNanos = now;
+        return m_updateRates;
+    }
+
+    /**
+     * Publishes the metrics as topics under {@link #TOPIC_PREFIX}, sampled by the server's {@link NetworkTablesSampler}.
+     * Calling this again has no effect.
+     *
+     * @param periodMs the period (in milliseconds) between two samples of the metrics
+     */
+    public synchronized void publish(long periodMs) {
+        if (m_published) return;
+        m_published = true;
+
+        publish("bytesSent", this::getBytesSent, NetworkTablesValueType.Int, periodMs);
+        publish("framesSent", this::getFramesSent, NetworkTablesValueType.Int, periodMs);
+        publish("bytesReceived", this::getBytesReceived, NetworkTablesValueType.Int, periodMs);
+        publish("framesReceived", this::getFramesReceived, NetworkTablesValueType.Int, periodMs);
+        publish("droppedUpdates", this::getDroppedUpdateCount, NetworkTablesValueType.Int, periodMs);
+        publish("queueDepth", this::getQueueDepth, NetworkTablesValueType.Int, periodMs);
+        publish("encodeTime", m_encodeTime, periodMs);
+        publish("decodeTime", m_decodeTime, periodMs);
+        publish("broadcastTime", m_broadcastTime, periodMs);
+
+        publish("connections/names", () -> {
+            List<NT4Connection> connections = getConnections();
+            String[] names = new String[connections.size()];
+            for (int i = 0; i < names.length; i++) names[i] = connections.get(i).getName();
+            return names;
+        }, NetworkTablesValueType.StringArray, periodMs);
+        publish("connections/bytesSent", () -> {
+            List<NT4Connection> connections = getConnections();
+            double[] bytes = new double[connections.size()];
+            for (int i = 0; i < bytes.length; i++) bytes[i] = connections.get(i).getBytesSent();
+            return bytes;
+        }, NetworkTablesValueType.DoubleArray, periodMs);
+        publish("connections/framesSent", () -> {
+            List<NT4Connection> connections = getConnections();
+            double[] frames = new double[connections.size()];
+            for (int i = 0; i < frames.length; i++) frames[i] = connections.get(i).getFramesSent();
+            return frames;
+        }, NetworkTablesValueType.DoubleArray, periodMs);
+
+        publish("topics/names", () -> getTopicUpdateRates().keySet().toArray(new String[0]), NetworkTablesValueType.StringArray, periodMs);
+        publish("topics/updateRate", () -> {
+            List<Double> rates = new ArrayList<>(getTopicUpdateRates().values());
+            double[] values = new double[rates.size()];
+            for (int i = 0; i < values.length; i++) values[i] = rates.get(i);
+            return values;
+        }, NetworkTablesValueType.DoubleArray, periodMs);
+    }
+
+    private void publish(String name, NetworkTablesHistogram histogram, long periodMs) {
+        publish(name + "/p50Us", () -> histogram.getPercentile(0.5) / 1e3, NetworkTablesValueType.Double, periodMs);
+        publish(name + "/p99Us", () -> histogram.getPercentile(0.99) / 1e3, NetworkTablesValueType.Double, periodMs);
+        publish(name + "/maxUs", () -> histogram.getMax() / 1e3, NetworkTablesValueType.Double, periodMs);
+    }
+
+    private void publish(String name, Supplier<?> getter, NetworkTablesValueType type, long periodMs) {
+        NetworkTablesEntry entry = m_server.putTopic(TOPIC_PREFIX + "/" + name, new NetworkTablesValue(getter, type));
+        m_server.getSampler().add(entry, periodMs);
+    }
+
+    void onSent(int bytes) {
+        m_bytesSent.addAndGet(bytes);
+        m_framesSent.incrementAndGet();
+    }
+
+    void onReceived(int bytes) {
+        m_bytesReceived.addAndGet(bytes);
+        m_framesReceived.incrementAndGet();
+    }
+
+    void onDropped() {
+        m_droppedUpdates.incrementAndGet();
+    }
+}
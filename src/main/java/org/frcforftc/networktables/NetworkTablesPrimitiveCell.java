@@ -0,0 +1,262 @@
+package org.frcforftc.networktables;
+
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.function.Supplier;
+
+/**
+ * Primitive value of an entry, written and read without allocating.
+ * <p>
+ * Booleans, integers, floats and doubles are stored as raw bits under a seqlock: writers take the lock by making
+ * the sequence odd, readers retry when the sequence was odd or changed while they read. Like the cells of object
+ * entries it keeps the value it replaced, so {@link NetworkTablesSnapshot}s stay consistent.
+ * <p>
+ * When its entry is given a value it can't hold, the cell is retired under the lock before its value is copied to the
+ * entry, writers that still hold the cell then fail with {@link #RETIRED} instead of writing a value nobody reads.
+ * <p>
+ * The cell is the getter of the value view of its entry, so the view doesn't need a lambda of its own.
+ */
+final class NetworkTablesPrimitiveCell implements Supplier<Object> {
+    private static final AtomicIntegerFieldUpdater<NetworkTablesPrimitiveCell> SEQUENCE = AtomicIntegerFieldUpdater.newUpdater(NetworkTablesPrimitiveCell.class, "m_sequence");
+
+    /**
+     * Result of {@link #set(long)} when the value is equal to the current one
+     */
+    static final int UNCHANGED = 0;
+    /**
+     * Result of {@link #set(long)} when the value was replaced
+     */
+    static final int CHANGED = 1;
+    /**
+     * Result of {@link #set(long)} when the cell was retired, the value must be written to the entry instead
+     */
+    static final int RETIRED = 2;
+
+    private final NetworkTablesValueType m_type;
+    /**
+     * Odd while a writer updates the value
+     */
+    private volatile int m_sequence = 0;
+    private volatile long m_bits;
+    private volatile long m_version;
+    private volatile long m_timestamp;
+    private volatile long m_previousBits = 0;
+    private volatile long m_previousVersion = Long.MAX_VALUE;
+    private volatile long m_previousTimestamp = 0;
+    /**
+     * True once the entry stopped using the cell, only accessed with the lock held
+     */
+    private boolean m_retired = false;
+
+    /**
+     * Constructs a cell holding an initial value.
+     *
+     * @param type the type of the value, see {@link #isPrimitive(NetworkTablesValueType)}
+     * @param bits the initial value as raw bits
+     */
+    NetworkTablesPrimitiveCell(NetworkTablesValueType type, long bits) {
+        this.m_type = type;
+        this.m_bits = bits;
+        this.m_version = NetworkTablesEntry.nextVersion();
+        this.m_timestamp = System.currentTimeMillis();
+    }
+
+    /**
+     * @param type a value type
+     * @return true if values of the type can be held by a primitive cell
+     */
+    static boolean isPrimitive(NetworkTablesValueType type) {
+        switch (type) {
+            case Boolean:
+            case Double:
+            case Float:
+            case Int:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * @param type  a primitive type
+     * @param value a value
+     * @return true if the value can be converted to the type by {@link #toBits(NetworkTablesValueType, Object)},
+     * numbers are converted between the numeric types
+     */
+    static boolean accepts(NetworkTablesValueType type, Object value) {
+        return type == NetworkTablesValueType.Boolean ? value instanceof Boolean : value instanceof Number;
+    }
+
+    /**
+     * Converts a boxed value to raw bits.
+     *
+     * @param type  the type of the value
+     * @param value a value accepted by {@link #accepts(NetworkTablesValueType, Object)}
+     * @return the raw bits of the value
+     */
+    static long toBits(NetworkTablesValueType type, Object value) {
+        switch (type) {
+            case Boolean:
+                return (Boolean) value ? 1 : 0;
+            case Double:
+                return java.lang.Double.doubleToLongBits(((Number) value).doubleValue());
+            case Float:
+                return java.lang.Float.floatToIntBits(((Number) value).floatValue()) & 0xffffffffL;
+            case Int:
+                return ((Number) value).longValue();
+            default:
+                throw new IllegalArgumentException("Not a primitive type: " + type);
+        }
+    }
+
+    /**
+     * Converts raw bits to a boxed value.
+     *
+     * @param type the type of the value
+     * @param bits the raw bits of the value
+     * @return the boxed value, integers are boxed as {@link Long}
+     */
+    static Object toObject(NetworkTablesValueType type, long bits) {
+        switch (type) {
+            case Boolean:
+                return bits != 0;
+            case Double:
+                return java.lang.Double.longBitsToDouble(bits);
+            case Float:
+                return java.lang.Float.intBitsToFloat((int) bits);
+            case Int:
+                return bits;
+            default:
+                throw new IllegalArgumentException("Not a primitive type: " + type);
+        }
+    }
+
+    /**
+     * @return the type of the value
+     */
+    NetworkTablesValueType getType() {
+        return m_type;
+    }
+
+    /**
+     * @return the current value as raw bits
+     */
+    long getBits() {
+        return m_bits;
+    }
+
+    /**
+     * @return the current value, boxed
+     */
+    @Override
+    public Object get() {
+        return toObject(m_type, m_bits);
+    }
+
+    /**
+     * @return the version of the current value
+     */
+    long getVersion() {
+        return m_version;
+    }
+
+    /**
+     * @return the time the current value was set in milliseconds since the epoch
+     */
+    long getTimestamp() {
+        return m_timestamp;
+    }
+
+    /**
+     * Replaces the value unless it is equal to the current one, doubles and floats are compared by their bits.
+     *
+     * @param bits the new value as raw bits
+     * @return {@link #CHANGED}, {@link #UNCHANGED}, or {@link #RETIRED} if the value wasn't written
+     */
+    int set(long bits) {
+        int sequence = lock();
+        if (m_retired) {
+            m_sequence = sequence;
+            return RETIRED;
+        }
+        if (m_bits == bits) {
+            m_sequence = sequence;
+            return UNCHANGED;
+        }
+
+        m_previousBits = m_bits;
+        m_previousVersion = m_version;
+        m_previousTimestamp = m_timestamp;
+        m_bits = bits;
+        m_version = NetworkTablesEntry.nextVersion();
+        m_timestamp = System.currentTimeMillis();
+        m_sequence = sequence + 2;
+        return CHANGED;
+    }
+
+    /**
+     * Replaces the value with a boxed one unless it is equal to the current one.
+     *
+     * @param value a value accepted by {@link #accepts(NetworkTablesValueType, Object)}
+     * @return {@link #CHANGED}, {@link #UNCHANGED}, or {@link #RETIRED} if the value wasn't written
+     */
+    int set(Object value) {
+        return set(toBits(m_type, value));
+    }
+
+    /**
+     * Makes later writes fail with {@link #RETIRED}. Every write that succeeded is part of {@link #getCell()} once
+     * this returns.
+     */
+    void retire() {
+        int sequence = lock();
+        m_retired = true;
+        m_sequence = sequence;
+    }
+
+    private int lock() {
+        while (true) {
+            int sequence = m_sequence;
+            if ((sequence & 1) == 0 && SEQUENCE.compareAndSet(this, sequence, sequence + 1)) return sequence;
+            Thread.yield();
+        }
+    }
+
+    /**
+     * @return the current value as an entry cell
+     */
+    NetworkTablesEntry.Cell getCell() {
+        return getCellAt(Long.MAX_VALUE);
+    }
+
+    /**
+     * Reads the value held at a version.
+     *
+     * @param version the version read from {@link NetworkTablesEntry#currentVersion()}
+     * @return the newest value not newer than the version as an entry cell, or null if it was already replaced twice
+     */
+    NetworkTablesEntry.Cell getCellAt(long version) {
+        while (true) {
+            int sequence = m_sequence;
+            if ((sequence & 1) != 0) {
+                Thread.yield();
+                continue;
+            }
+
+            long bits = m_bits;
+            long currentVersion = m_version;
+            long timestamp = m_timestamp;
+            long previousBits = m_previousBits;
+            long previousVersion = m_previousVersion;
+            long previousTimestamp = m_previousTimestamp;
+            if (m_sequence != sequence) continue;
+
+            if (currentVersion <= version) {
+                return new NetworkTablesEntry.Cell(new NetworkTablesValue(toObject(m_type, bits), m_type), currentVersion, timestamp);
+            }
+            if (previousVersion <= version) {
+                return new NetworkTablesEntry.Cell(new NetworkTablesValue(toObject(m_type, previousBits), m_type), previousVersion, previousTimestamp);
+            }
+            return null;
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package org.frcforftc.networktables;
+
+import com.google.protobuf.Descriptors;
+import com.google.protobuf.InvalidProtocolBufferException;
+import com.google.protobuf.Message;
+import com.google.protobuf.Parser;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Describes a protobuf message class carried by {@code proto:} typed topics.
+ * <p>
+ * protobuf-java is a compile only dependency, projects using protobuf topics add it themselves.
+ * Messages compiled from {@code src/main/proto} by the build can be published directly.
+ *
+ * @param <T> the message class
+ */
+public class NetworkTablesProto<T extends Message> {
+    /**
+     * Prefix of protobuf type strings
+     */
+    public static final String TYPE_PREFIX = "proto:";
+    /**
+     * Type string of the schema topics, holding a serialized {@code FileDescriptorProto}
+     */
+    public static final String SCHEMA_TYPE = TYPE_PREFIX + "FileDescriptorProto";
+
+    private static final Map<Class<?>, NetworkTablesProto<?>> s_cache = new ConcurrentHashMap<>();
+
+    private final T m_defaultInstance;
+    private final Parser<T> m_parser;
+
+    @SuppressWarnings("unchecked")
+    private NetworkTablesProto(T defaultInstance) {
+        this.m_defaultInstance = defaultInstance;
+        this.m_parser = (Parser<T>) defaultInstance.getParserForType();
+    }
+
+    /**
+     * Retrieves the description of a message class.
+     *
+     * @param defaultInstance the default instance of the message class, e.g. {@code Pose.getDefaultInstance()}
+     * @param <T>             the message class
+     * @return the description of the message class
+     */
+    @SuppressWarnings("unchecked")
+    public static <T extends Message> NetworkTablesProto<T> of(T defaultInstance) {
+        return (NetworkTablesProto<T>) s_cache.computeIfAbsent(defaultInstance.getClass(), c -> new NetworkTablesProto<>(defaultInstance));
+    }
+
+    /**
+     * @return the default instance of the message class
+     */
+    public T getDefaultInstance() {
+        return m_defaultInstance;
+    }
+
+    /**
+     * @return the descriptor of the message
+     */
+    public Descriptors.Descriptor getDescriptor() {
+        return m_defaultInstance.getDescriptorForType();
+    }
+
+    /**
+     * @return the type string of topics holding this message, e.g. {@code proto:frc.Pose2d}
+     */
+    public String getTypeString() {
+        return TYPE_PREFIX + getDescriptor().getFullName();
+    }
+
+    /**
+     * Returns the file declaring the message and all the files it depends on,
+     * dependencies first so each file is published after the files it imports.
+     *
+     * @return the file descriptors needed to decode the message
+     */
+    public List<Descriptors.FileDescriptor> getFileDescriptors() {
+        List<Descriptors.FileDescriptor> files = new ArrayList<>();
+        addFile(files, getDescriptor().getFile());
+        return Collections.unmodifiableList(files);
+    }
+
+    private static void addFile(List<Descriptors.FileDescriptor> files, Descriptors.FileDescriptor file) {
+        if (files.contains(file)) return;
+        for (Descriptors.FileDescriptor dependency : file.getDependencies()) {
+            addFile(files, dependency);
+        }
+        files.add(file);
+    }
+
+    /**
+     * Decodes a message.
+     *
+     * @param data the serialized message
+     * @return the decoded message
+     * @throws IllegalArgumentException if the bytes aren't a valid message
+     */
+    public T parse(byte[] data) {
+        try {
+            return m_parser.parseFrom(data);
+        } catch (InvalidProtocolBufferException e) {
+            throw new IllegalArgumentException("Invalid " + getTypeString() + " payload", e);
+        }
+    }
+
+    /**
+     * Decodes a message from a buffer without copying it.
+     *
+     * @param data the serialized message, its remaining bytes are read
+     * @return the decoded message
+     * @throws IllegalArgumentException if the bytes aren't a valid message
+     */
+    public T parse(ByteBuffer data) {
+        try {
+            return m_parser.parseFrom(data);
+        } catch (InvalidProtocolBufferException e) {
+            throw new IllegalArgumentException("Invalid " + getTypeString() + " payload", e);
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package org.frcforftc.networktables;
+
+import com.google.protobuf.CodedOutputStream;
+import com.google.protobuf.Message;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
+
+/**
+ * Publishes protobuf messages to a topic of an {@link NT4Server}.
+ * Messages are encoded into a buffer reused across calls, the encoded bytes are only copied
+ * when they differ from the current value of the topic.
+ *
+ * @param <T> the message class
+ */
+public class NetworkTablesProtoPublisher<T extends Message> {
+    private final NT4Server m_server;
+    private final String m_topic;
+    private final NetworkTablesProto<T> m_proto;
+    /**
+     * Buffer the messages are encoded into, grown when a message doesn't fit
+     */
+    private byte[] m_buffer = new byte[256];
+
+    /**
+     * Constructs a publisher, the descriptors of the message are published right away.
+     *
+     * @param server the server the topic belongs to
+     * @param topic  the topic name
+     * @param proto  the description of the message class
+     */
+    public NetworkTablesProtoPublisher(NT4Server server, String topic, NetworkTablesProto<T> proto) {
+        this.m_server = server;
+        this.m_topic = topic;
+        this.m_proto = proto;
+
+        server.publishSchema(proto);
+    }
+
+    /**
+     * @return the topic name
+     */
+    public String getTopic() {
+        return m_topic;
+    }
+
+    /**
+     * @return the description of the message class
+     */
+    public NetworkTablesProto<T> getProto() {
+        return m_proto;
+    }
+
+    /**
+     * Publishes a message.
+     *
+     * @param message the message to publish
+     */
+    public synchronized void set(T message) {
+        int size = message.getSerializedSize();
+        if (m_buffer.length < size) {
+            m_buffer = new byte[Math.max(size, m_buffer.length * 2)];
+        }
+
+        try {
+            CodedOutputStream out = CodedOutputStream.newInstance(m_buffer, 0, size);
+            message.writeTo(out);
+            out.checkNoSpaceLeft();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        if (m_server.touchTopicIfUnchanged(m_topic, m_buffer, size)) return;
+
+        m_server.putTopic(m_topic, new NetworkTablesValue(Arrays.copyOf(m_buffer, size), m_proto.getTypeString()));
+    }
+}
@@ -0,0 +1,61 @@
+package org.frcforftc.networktables;
+
+/**
+ * Handle publishing values to a single topic of an {@link NT4Server}.
+ * <p>
+ * The entry of the topic is resolved once when the handle is created, so setting a value writes straight into the
+ * entry without hashing the topic name or computing its type. Handles are thread-safe and meant to be kept, e.g.
+ * in a field of the subsystem publishing them. If the topic is removed the next value creates it again.
+ */
+public abstract class NetworkTablesPublisher {
+    private final NT4Server m_server;
+    private final String m_topic;
+    /**
+     * Entry of the topic, replaced when the topic is created again after being removed
+     */
+    private volatile NetworkTablesEntry m_entry;
+
+    /**
+     * Constructs a handle for a topic.
+     *
+     * @param server the server the topic belongs to
+     * @param entry  the entry of the topic
+     */
+    NetworkTablesPublisher(NT4Server server, NetworkTablesEntry entry) {
+        this.m_server = server;
+        this.m_topic = entry.getTopic();
+        this.m_entry = entry;
+    }
+
+    /**
+     * @return the topic name
+     */
+    public String getTopic() {
+        return m_topic;
+    }
+
+    /**
+     * @return the entry of the topic
+     */
+    public NetworkTablesEntry getEntry() {
+        return m_entry;
+    }
+
+    NT4Server getServer() {
+        return m_server;
+    }
+
+    void setEntry(NetworkTablesEntry entry) {
+        this.m_entry = entry;
+    }
+
+    /**
+     * @param entry the entry of the topic
+     * @param type  the type of the published values
+     * @return true if the entry still belongs to the server and holds a primitive of the type
+     */
+    static boolean isPrimitive(NetworkTablesEntry entry, NetworkTablesValueType type) {
+        NetworkTablesPrimitiveCell primitive = entry.getPrimitive();
+        return primitive != null && primitive.getType() == type && !entry.isRemoved();
+    }
+}
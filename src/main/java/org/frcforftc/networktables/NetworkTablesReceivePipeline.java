@@ -0,0 +1,165 @@
+package org.frcforftc.networktables;
+
+import org.java_websocket.WebSocket;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Handles the frames received by an {@link NT4Server} on a pool of workers instead of the WebSocket threads, so a
+ * burst of frames from one client doesn't delay reading the frames of the others.
+ * <p>
+ * Every connection is assigned to one worker by hashing it, and each worker handles its frames one at a time, so the
+ * frames of a connection are decoded and applied in the order they were received while different connections are
+ * handled in parallel. Frames sent while handling them are only queued by the WebSocket, the selector thread writes
+ * them to the socket.
+ * <p>
+ * Each worker holds at most a fixed number of frames. When it is full, value frames are dropped and counted, and
+ * control frames wait for room, so a client sending faster than its worker keeps up can't grow the heap without
+ * limit.
+ */
+public class NetworkTablesReceivePipeline {
+    /**
+     * Number of frames a worker holds by default
+     */
+    public static final int DEFAULT_QUEUE_CAPACITY = 1024;
+
+    private final ExecutorService[] m_workers;
+    /**
+     * Free places in the queue of each worker
+     */
+    private final Semaphore[] m_capacity;
+    /**
+     * Number of frames handed to the workers and not handled yet
+     */
+    private final AtomicInteger m_pending = new AtomicInteger();
+    /**
+     * Number of frames dropped because their worker was full
+     */
+    private final AtomicLong m_dropped = new AtomicLong();
+
+    /**
+     * Constructs a pipeline and starts its workers, each holding up to {@link #DEFAULT_QUEUE_CAPACITY} frames.
+     *
+     * @param threads the number of workers
+     */
+    public NetworkTablesReceivePipeline(int threads) {
+        this(threads, DEFAULT_QUEUE_CAPACITY);
+    }
+
+    /**
+     * Constructs a pipeline and starts its workers.
+     *
+     * @param threads       the number of workers
+     * @param queueCapacity the number of frames a worker holds before dropping value frames
+     */
+    public NetworkTablesReceivePipeline(int threads, int queueCapacity) {
+        if (threads <= 0) throw new IllegalArgumentException("A pipeline needs at least one worker: " + threads);
+        if (queueCapacity <= 0) throw new IllegalArgumentException("A worker needs room for at least one frame: " + queueCapacity);
+
+        m_workers = new ExecutorService[threads];
+        m_capacity = new Semaphore[threads];
+        for (int i = 0; i < threads; i++) {
+            m_workers[i] = NetworkTablesThreads.newSerialExecutor("NT4Server-Receive-" + i);
+            m_capacity[i] = new Semaphore(queueCapacity);
+        }
+    }
+
+    /**
+     * @return the number of workers
+     */
+    public int getThreadCount() {
+        return m_workers.length;
+    }
+
+    /**
+     * @return the number of frames received and not handled yet
+     */
+    public int getPendingCount() {
+        return m_pending.get();
+    }
+
+    /**
+     * @return the number of frames dropped because their worker was full
+     */
+    public long getDroppedCount() {
+        return m_dropped.get();
+    }
+
+    /**
+     * Runs a task on the worker of a connection, after the tasks submitted for the connection before it. Waits for
+     * room if the worker is full.
+     *
+     * @param conn the connection the task handles a frame or event of
+     * @param task the task
+     */
+    void execute(WebSocket conn, Runnable task) {
+        int worker = worker(conn);
+        m_capacity[worker].acquireUninterruptibly();
+        submit(worker, task);
+    }
+
+    /**
+     * Runs a task on the worker of a connection like {@link #execute(WebSocket, Runnable)}, unless the worker is full.
+     *
+     * @param conn the connection the task handles a frame of
+     * @param task the task
+     * @return false if the worker was full and the task was dropped
+     */
+    boolean offer(WebSocket conn, Runnable task) {
+        int worker = worker(conn);
+        if (!m_capacity[worker].tryAcquire()) {
+            m_dropped.incrementAndGet();
+            return false;
+        }
+        submit(worker, task);
+        return true;
+    }
+
+    private void submit(int worker, Runnable task) {
+        Semaphore capacity = m_capacity[worker];
+        m_pending.incrementAndGet();
+        try {
+            m_workers[worker].execute(() -> {
+                try {
+                    task.run();
+                } catch (RuntimeException e) {
+                    e.printStackTrace();
+                } finally {
+                    m_pending.decrementAndGet();
+                    capacity.release();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // The server is stopping, the frame is dropped like frames received after it stopped
+            m_pending.decrementAndGet();
+            capacity.release();
+        }
+    }
+
+    private int worker(WebSocket conn) {
+        int hash = System.identityHashCode(conn);
+        hash ^= hash >>> 16;
+        return (hash & Integer.MAX_VALUE) % m_workers.length;
+    }
+
+    /**
+     * Stops the workers once they handled the frames already received.
+     *
+     * @param timeoutMs the time (in milliseconds) to wait for the workers
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public void stop(long timeoutMs) throws InterruptedException {
+        for (ExecutorService worker : m_workers) {
+            worker.shutdown();
+        }
+        long deadline = System.currentTimeMillis() + timeoutMs;
+        for (ExecutorService worker : m_workers) {
+            worker.awaitTermination(Math.max(0, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+        }
+    }
+}
@@ -0,0 +1,150 @@
+package org.frcforftc.networktables;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Periodically samples {@link java.util.function.Supplier} backed entries of an {@link NT4Server}.
+ * Every entry is polled at its own period on a dedicated thread, and the values that changed
+ * during a tick are sent to their subscribers together in one flush.
+ */
+public class NetworkTablesSampler {
+    /**
+     * Default period (in milliseconds) between two ticks of the sampler
+     */
+    public static final long DEFAULT_TICK_PERIOD_MS = 20;
+
+    /**
+     * The server whose subscribers receive the sampled values
+     */
+    private final NT4Server m_server;
+    /**
+     * Period (in milliseconds) between two ticks of the sampler
+     */
+    private final long m_tickPeriodMs;
+    /**
+     * Map of sampled entries to their sampling state
+     */
+    private final Map<NetworkTablesEntry, Sample> m_samples = new ConcurrentHashMap<>();
+    /**
+     * Executor running the sampling ticks, created on the first call to {@link #start()}
+     */
+    private ScheduledExecutorService m_executor = null;
+
+    /**
+     * Constructs a sampler for the given server.
+     *
+     * @param server       the server whose subscribers receive the sampled values
+     * @param tickPeriodMs the period (in milliseconds) between two ticks, entries can't be sampled faster than this
+     */
+    public NetworkTablesSampler(NT4Server server, long tickPeriodMs) {
+        this.m_server = server;
+        this.m_tickPeriodMs = tickPeriodMs;
+    }
+
+    /**
+     * Starts sampling an entry, the sampler thread is started if needed.
+     *
+     * @param entry    the entry to sample, its value should be backed by a supplier
+     * @param periodMs the period (in milliseconds) between two samples of the entry
+     */
+    public void add(NetworkTablesEntry entry, long periodMs) {
+        m_samples.put(entry, new Sample(TimeUnit.MILLISECONDS.toNanos(Math.max(periodMs, m_tickPeriodMs))));
+        start();
+    }
+
+    /**
+     * Stops sampling an entry.
+     *
+     * @param entry the entry to stop sampling
+     */
+    public void remove(NetworkTablesEntry entry) {
+        m_samples.remove(entry);
+    }
+
+    /**
+     * @param entry an entry
+     * @return true if the entry is sampled
+     */
+    public boolean contains(NetworkTablesEntry entry) {
+        return m_samples.containsKey(entry);
+    }
+
+    /**
+     * Starts the sampler thread if it isn't running.
+     */
+    public synchronized void start() {
+        if (m_executor != null) return;
+
+        m_executor = NetworkTablesThreads.newScheduledExecutor("NT4Server-Sampler");
+        m_executor.scheduleAtFixedRate(this::tick, 0, m_tickPeriodMs, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stops the sampler thread, entries stay registered and are sampled again after {@link #start()}.
+     */
+    public synchronized void stop() {
+        if (m_executor == null) return;
+
+        m_executor.shutdownNow();
+        m_executor = null;
+    }
+
+    /**
+     * Samples the entries that are due and flushes the changed values.
+     */
+    void tick() {
+        long now = System.nanoTime();
+        Map<NetworkTablesEntry, Object> changed = new LinkedHashMap<>();
+
+        for (Map.Entry<NetworkTablesEntry, Sample> e : m_samples.entrySet()) {
+            NetworkTablesEntry entry = e.getKey();
+            Sample sample = e.getValue();
+            if (now - sample.nextSampleNanos < 0) continue;
+            sample.nextSampleNanos = now + sample.periodNanos;
+
+            try {
+                NetworkTablesValue value = entry.getValue();
+                Object sampled = value.get();
+                if (sample.hasValue && NetworkTablesValueType.getFromString(value.getType()).valueEquals(sample.lastValue, sampled)) {
+                    continue;
+                }
+
+                // Getters may return the same array modified in place, the copy keeps the sampled content
+                sample.lastValue = NetworkTablesValueType.copyArray(sampled);
+                sample.hasValue = true;
+                changed.put(entry, sample.lastValue);
+            } catch (RuntimeException ex) {
+                ex.printStackTrace();
+            }
+        }
+
+        if (changed.isEmpty()) return;
+        long timestamp = System.currentTimeMillis();
+        for (Map.Entry<NetworkTablesEntry, Object> e : changed.entrySet()) {
+            e.getKey().incrementUpdateCount();
+            e.getKey().callUpdateListeners(e.getValue(), timestamp);
+        }
+        m_server.sendValues(changed);
+    }
+
+    /**
+     * Sampling state of a single entry, only accessed by the sampler thread after creation.
+     */
+    private static class Sample {
+        final long periodNanos;
+        long nextSampleNanos = System.nanoTime();
+        /**
+         * Last value sent, arrays are copied
+         */
+        Object lastValue = null;
+        boolean hasValue = false;
+
+        Sample(long periodNanos) {
+            this.periodNanos = periodNanos;
+        }
+    }
+}
@@ -0,0 +1,135 @@
+package org.frcforftc.networktables;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Calls the setters of {@link NetworkTablesValue}s with values written by clients.
+ * Setters run on a dedicated thread once per tick, and only the latest value written
+ * to a topic during a tick is passed to its setter.
+ */
+public class NetworkTablesSetterDispatcher {
+    /**
+     * Default period (in milliseconds) between two setter calls of the same topic
+     */
+    public static final long DEFAULT_TICK_PERIOD_MS = 20;
+
+    /**
+     * Period (in milliseconds) between two ticks of the dispatcher
+     */
+    private final long m_tickPeriodMs;
+    /**
+     * Map of entries to the latest value written to them since the last tick
+     */
+    private final Map<NetworkTablesEntry, Object> m_pending = new ConcurrentHashMap<>();
+    /**
+     * Number of values replaced by a newer value before their setter was called
+     */
+    private final AtomicLong m_coalesced = new AtomicLong();
+    /**
+     * Executor running the setter calls, created on the first call to {@link #start()}
+     */
+    private ScheduledExecutorService m_executor = null;
+
+    /**
+     * Constructs a dispatcher calling setters at most once per tick.
+     *
+     * @param tickPeriodMs the period (in milliseconds) between two setter calls of the same topic
+     */
+    public NetworkTablesSetterDispatcher(long tickPeriodMs) {
+        this.m_tickPeriodMs = tickPeriodMs;
+    }
+
+    /**
+     * Queues a value for the setter of an entry, replacing any value still waiting for the same entry.
+     *
+     * @param entry the entry whose setter is called
+     * @param value the value written by the client
+     */
+    public void submit(NetworkTablesEntry entry, Object value) {
+        if (m_pending.put(entry, value) != null) {
+            m_coalesced.incrementAndGet();
+        }
+        start();
+    }
+
+    /**
+     * Starts the dispatcher thread if it isn't running.
+     */
+    public synchronized void start() {
+        if (m_executor != null) return;
+
+        m_executor = NetworkTablesThreads.newScheduledExecutor("NT4Server-Setters");
+        m_executor.scheduleAtFixedRate(this::tick, m_tickPeriodMs, m_tickPeriodMs, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stops the dispatcher thread, values still waiting are called after {@link #start()}.
+     */
+    public synchronized void stop() {
+        if (m_executor == null) return;
+
+        m_executor.shutdownNow();
+        m_executor = null;
+    }
+
+    /**
+     * @return the number of values replaced by a newer value before their setter was called
+     */
+    public long getCoalescedCount() {
+        return m_coalesced.get();
+    }
+
+    /**
+     * @return the number of entries waiting for their setter to be called
+     */
+    public int getPendingCount() {
+        return m_pending.size();
+    }
+
+    /**
+     * Calls the setters of all the entries written since the last tick.
+     */
+    @SuppressWarnings("unchecked")
+    void tick() {
+        for (NetworkTablesEntry entry : m_pending.keySet()) {
+            Object value = m_pending.remove(entry);
+            if (value == null) continue;
+
+            NetworkTablesValue binding = entry.getValue();
+            Consumer<Object> setter = (Consumer<Object>) binding.getSetter();
+            if (setter == null) continue;
+
+            try {
+                setter.accept(coerce(binding.get(), value));
+            } catch (RuntimeException ex) {
+                ex.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * Converts a decoded number to the boxed type the binding currently holds,
+     * NT4 only carries 64 bit integers so an int setter would otherwise receive a Long.
+     *
+     * @param current the current value of the binding
+     * @param value   the value written by the client
+     * @return the value converted to the type of the current value when both are numbers
+     */
+    private static Object coerce(Object current, Object value) {
+        if (!(value instanceof Number) || current == null || current.getClass() == value.getClass()) return value;
+
+        Number number = (Number) value;
+        if (current instanceof Integer) return number.intValue();
+        if (current instanceof Long) return number.longValue();
+        if (current instanceof Double) return number.doubleValue();
+        if (current instanceof Float) return number.floatValue();
+        if (current instanceof Short) return number.shortValue();
+        if (current instanceof Byte) return number.byteValue();
+        return value;
+    }
+}
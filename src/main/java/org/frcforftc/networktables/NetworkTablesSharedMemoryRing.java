@@ -0,0 +1,267 @@
+package org.frcforftc.networktables;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Single-producer/single-consumer ring buffer of frames in a memory-mapped file, carrying the frames of one
+ * direction of a {@link NT4SharedMemoryServer} connection between two processes on the same host.
+ * <p>
+ * The file starts with a header holding a magic number, the capacity of the data region, and the producer and
+ * consumer sequences on their own cache lines, the producer's line also holding a heartbeat the producer increments
+ * while its process is alive. Sequences count the bytes written and read since the ring was
+ * created, a sequence modulo the capacity is an offset in the data region. Every frame is a record of its length,
+ * its {@link #TEXT}, {@link #BINARY} or {@link #CLOSE} type and its payload, padded to 8 bytes. A record never wraps
+ * around the end of the data region, a padding record skips the rest of it instead.
+ * <p>
+ * The producer writes its records then publishes them by advancing the producer sequence after a release fence,
+ * the consumer reads the producer sequence, copies the records after an acquire fence then frees them by advancing
+ * the consumer sequence. Each side must be used by a single thread at a time.
+ */
+final class NetworkTablesSharedMemoryRing {
+    /**
+     * Record of a text frame, an UTF-8 encoded JSON control message
+     */
+    static final int TEXT = 1;
+    /**
+     * Record of a binary frame, MessagePack encoded values
+     */
+    static final int BINARY = 2;
+    /**
+     * Record closing the connection, with an empty payload
+     */
+    static final int CLOSE = 3;
+
+    /**
+     * Capacity (in bytes) of the data region of the rings created by default
+     */
+    static final int DEFAULT_CAPACITY = 1 << 20;
+
+    private static final int MAGIC = 0x4e543453; // "NT4S"
+    private static final int MAGIC_OFFSET = 0;
+    private static final int CAPACITY_OFFSET = 4;
+    private static final int PRODUCER_OFFSET = 64;
+    private static final int HEARTBEAT_OFFSET = 72;
+    private static final int CONSUMER_OFFSET = 128;
+    private static final int DATA_OFFSET = 192;
+    private static final int RECORD_HEADER_SIZE = 8;
+    private static final int PADDING = -1;
+
+    private final File m_file;
+    private final MappedByteBuffer m_buffer;
+    /**
+     * Views of the data region used to copy payloads, one per side so the producer and consumer don't share a position
+     */
+    private final ByteBuffer m_producerView;
+    private final ByteBuffer m_consumerView;
+    private final int m_capacity;
+    private final int m_mask;
+    /**
+     * Producer sequence, only used by the producer
+     */
+    private long m_producerSequence;
+    /**
+     * Consumer sequence, only used by the consumer
+     */
+    private long m_consumerSequence;
+
+    private NetworkTablesSharedMemoryRing(File file, MappedByteBuffer buffer, int capacity) {
+        this.m_file = file;
+        this.m_buffer = buffer;
+        this.m_capacity = capacity;
+        this.m_mask = capacity - 1;
+        this.m_producerView = buffer.duplicate();
+        this.m_consumerView = buffer.duplicate();
+        this.m_producerSequence = buffer.getLong(PRODUCER_OFFSET);
+        this.m_consumerSequence = buffer.getLong(CONSUMER_OFFSET);
+    }
+
+    /**
+     * Creates an empty ring, replacing the file if it exists.
+     *
+     * @param file     the file backing the ring
+     * @param capacity the capacity (in bytes) of the data region, a power of two
+     * @return the ring
+     * @throws IOException if the file can't be created or mapped
+     */
+    static NetworkTablesSharedMemoryRing create(File file, int capacity) throws IOException {
+        if (capacity < 4096 || Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("Capacity must be a power of two of at least 4096 bytes: " + capacity);
+        }
+
+        MappedByteBuffer buffer;
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.setLength(0);
+            raf.setLength(DATA_OFFSET + capacity);
+            buffer = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, DATA_OFFSET + capacity);
+        }
+        buffer.order(ByteOrder.nativeOrder());
+        buffer.putInt(CAPACITY_OFFSET, capacity);
+        buffer.putLong(PRODUCER_OFFSET, 0);
+        buffer.putLong(CONSUMER_OFFSET, 0);
+        buffer.putLong(HEARTBEAT_OFFSET, 0);
+        // The magic number is written last so the other side never opens a half initialized ring
+        NetworkTablesFences.release();
+        buffer.putInt(MAGIC_OFFSET, MAGIC);
+        return new NetworkTablesSharedMemoryRing(file, buffer, capacity);
+    }
+
+    /**
+     * Opens a ring created by another process.
+     *
+     * @param file the file backing the ring
+     * @return the ring, or null if the other process didn't finish creating it yet
+     * @throws IOException if the file can't be mapped
+     */
+    static NetworkTablesSharedMemoryRing open(File file) throws IOException {
+        MappedByteBuffer buffer;
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            if (raf.length() <= DATA_OFFSET) return null;
+            buffer = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, raf.length());
+        }
+        buffer.order(ByteOrder.nativeOrder());
+        if (buffer.getInt(MAGIC_OFFSET) != MAGIC) return null;
+        NetworkTablesFences.acquire();
+
+        int capacity = buffer.getInt(CAPACITY_OFFSET);
+        if (Integer.bitCount(capacity) != 1 || DATA_OFFSET + (long) capacity > buffer.capacity()) {
+            throw new IOException("Invalid shared memory ring " + file);
+        }
+        return new NetworkTablesSharedMemoryRing(file, buffer, capacity);
+    }
+
+    /**
+     * @return the file backing the ring
+     */
+    File getFile() {
+        return m_file;
+    }
+
+    /**
+     * @return the capacity (in bytes) of the data region
+     */
+    int getCapacity() {
+        return m_capacity;
+    }
+
+    /**
+     * Increments the heartbeat, called by the producer so the consumer knows its process is alive.
+     */
+    void beat() {
+        m_buffer.putLong(HEARTBEAT_OFFSET, m_buffer.getLong(HEARTBEAT_OFFSET) + 1);
+    }
+
+    /**
+     * @return the heartbeat of the producer, read by the consumer
+     */
+    long getHeartbeat() {
+        return m_buffer.getLong(HEARTBEAT_OFFSET);
+    }
+
+    /**
+     * Writes a record if the ring has room for it, called by the producer.
+     *
+     * @param type    the record type
+     * @param payload the payload, from its position to its limit. Its position is left unchanged.
+     * @return false if the consumer hasn't freed enough of the ring yet
+     * @throws IllegalArgumentException if the record is larger than the ring
+     */
+    boolean offer(int type, ByteBuffer payload) {
+        int length = payload.remaining();
+        int size = align(RECORD_HEADER_SIZE + length);
+        if (size > m_capacity) {
+            throw new IllegalArgumentException("Frame of " + length + " bytes doesn't fit a ring of " + m_capacity + " bytes");
+        }
+
+        long sequence = m_producerSequence;
+        int index = (int) (sequence & m_mask);
+        int toEnd = m_capacity - index;
+        int padding = toEnd < size ? toEnd : 0;
+
+        long consumer = m_buffer.getLong(CONSUMER_OFFSET);
+        NetworkTablesFences.acquire();
+        if (sequence + padding + size - consumer > m_capacity) return false;
+
+        if (padding != 0) {
+            m_buffer.putInt(DATA_OFFSET + index, PADDING);
+            sequence += padding;
+            index = 0;
+        }
+        m_buffer.putInt(DATA_OFFSET + index, length);
+        m_buffer.putInt(DATA_OFFSET + index + 4, type);
+        m_producerView.limit(DATA_OFFSET + index + RECORD_HEADER_SIZE + length);
+        m_producerView.position(DATA_OFFSET + index + RECORD_HEADER_SIZE);
+        int position = payload.position();
+        m_producerView.put(payload);
+        payload.position(position);
+
+        sequence += size;
+        NetworkTablesFences.release();
+        m_buffer.putLong(PRODUCER_OFFSET, sequence);
+        m_producerSequence = sequence;
+        return true;
+    }
+
+    /**
+     * Reads the records written since the last call, called by the consumer. Payloads are copied out of the ring
+     * before they are handed to the handler, so it can keep them.
+     *
+     * @param handler the handler of the records
+     * @return the number of records read
+     */
+    int poll(RecordHandler handler) {
+        long available = m_buffer.getLong(PRODUCER_OFFSET);
+        NetworkTablesFences.acquire();
+
+        long sequence = m_consumerSequence;
+        int count = 0;
+        try {
+            while (sequence < available) {
+                int index = (int) (sequence & m_mask);
+                int length = m_buffer.getInt(DATA_OFFSET + index);
+                if (length == PADDING) {
+                    sequence += m_capacity - index;
+                    continue;
+                }
+
+                int type = m_buffer.getInt(DATA_OFFSET + index + 4);
+                byte[] payload = new byte[length];
+                m_consumerView.limit(DATA_OFFSET + index + RECORD_HEADER_SIZE + length);
+                m_consumerView.position(DATA_OFFSET + index + RECORD_HEADER_SIZE);
+                m_consumerView.get(payload);
+                sequence += align(RECORD_HEADER_SIZE + length);
+
+                count++;
+                handler.onRecord(type, payload);
+            }
+        } finally {
+            // Records are freed even if the handler throws, so a bad frame is never read twice
+            if (sequence != m_consumerSequence) {
+                NetworkTablesFences.release();
+                m_buffer.putLong(CONSUMER_OFFSET, sequence);
+                m_consumerSequence = sequence;
+            }
+        }
+        return count;
+    }
+
+    private static int align(int size) {
+        return (size + 7) & ~7;
+    }
+
+    /**
+     * Handles the records read from a ring.
+     */
+    interface RecordHandler {
+        /**
+         * @param type    the record type
+         * @param payload the payload, owned by the handler
+         */
+        void onRecord(int type, byte[] payload);
+    }
+}
@@ -0,0 +1,192 @@
+package org.frcforftc.networktables;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Immutable, point-in-time view of the values of all topics.
+ * <p>
+ * A snapshot holds every update completed before it was taken and none started after, writers are never blocked:
+ * each entry keeps the value it replaced so a snapshot can step back over updates made while it was being built.
+ * If an entry changed twice during that time the snapshot is retried, yielding to the writers after the first
+ * attempts. After {@link #MAX_ATTEMPTS} attempts the newest values are used and the snapshot is not
+ * {@linkplain #isConsistent() consistent}. Values backed by a supplier are read from the supplier when the snapshot
+ * is taken.
+ * Array values are shared with the entries and must not be modified.
+ */
+public class NetworkTablesSnapshot {
+    /**
+     * Number of attempts at a consistent snapshot before falling back to the newest values
+     */
+    static final int MAX_ATTEMPTS = 64;
+    /**
+     * Number of attempts made back to back, later attempts yield to the writers first
+     */
+    static final int SPIN_ATTEMPTS = 4;
+
+    private final long m_version;
+    private final long m_timestamp;
+    private final boolean m_consistent;
+    private final Map<String, Topic> m_topics;
+
+    private NetworkTablesSnapshot(long version, boolean consistent, Map<String, Topic> topics) {
+        this.m_version = version;
+        this.m_timestamp = System.currentTimeMillis();
+        this.m_consistent = consistent;
+        this.m_topics = Collections.unmodifiableMap(topics);
+    }
+
+    /**
+     * Takes a snapshot of entries.
+     *
+     * @param entries the entries to read, usually all the entries of a server
+     * @return the snapshot
+     */
+    static NetworkTablesSnapshot of(Collection<NetworkTablesEntry> entries) {
+        for (int attempt = 1; ; attempt++) {
+            if (attempt > SPIN_ATTEMPTS) Thread.yield();
+            long version = NetworkTablesEntry.currentVersion();
+            boolean newest = attempt >= MAX_ATTEMPTS;
+            Map<String, Topic> topics = new HashMap<>(Math.max(16, entries.size() * 4 / 3 + 1));
+            boolean consistent = true;
+            long newestVersion = version;
+
+            for (NetworkTablesEntry entry : entries) {
+                NetworkTablesEntry.Cell cell = newest ? entry.getCell() : entry.getCellAt(version);
+                if (cell == null) {
+                    if (newest || entry.getCreatedVersion() > version) continue; // Created after the snapshot started
+                    consistent = false;
+                    break;
+                }
+                newestVersion = Math.max(newestVersion, cell.version);
+                topics.put(entry.getTopic(), new Topic(entry.getTopic(), entry.getId(), cell));
+            }
+
+            // The newest values may be newer than the version read first, the snapshot has the version of the newest
+            if (newest) return new NetworkTablesSnapshot(newestVersion, false, topics);
+            if (consistent) return new NetworkTablesSnapshot(version, true, topics);
+        }
+    }
+
+    /**
+     * @return the version of the snapshot, every value in it has an equal or lower version
+     */
+    public long getVersion() {
+        return m_version;
+    }
+
+    /**
+     * @return true if the snapshot holds the values of a single point in time, false if entries kept changing and it
+     * holds the newest value of each entry, read one after the other
+     */
+    public boolean isConsistent() {
+        return m_consistent;
+    }
+
+    /**
+     * @return the time the snapshot was taken in milliseconds since the epoch
+     */
+    public long getTimestamp() {
+        return m_timestamp;
+    }
+
+    /**
+     * @return map of topic names to their state
+     */
+    public Map<String, Topic> getTopics() {
+        return m_topics;
+    }
+
+    /**
+     * Retrieves the state of a topic.
+     *
+     * @param topic the topic name
+     * @return the state of the topic, or null if it didn't exist when the snapshot was taken
+     */
+    public Topic get(String topic) {
+        return m_topics.get(topic);
+    }
+
+    /**
+     * Retrieves the value of a topic.
+     *
+     * @param topic the topic name
+     * @return the value of the topic, or null if it didn't exist when the snapshot was taken
+     */
+    public Object getValue(String topic) {
+        Topic state = m_topics.get(topic);
+        return state == null ? null : state.getValue();
+    }
+
+    /**
+     * @return the number of topics in the snapshot
+     */
+    public int size() {
+        return m_topics.size();
+    }
+
+    /**
+     * State of a single topic in a snapshot.
+     */
+    public static class Topic {
+        private final String m_name;
+        private final int m_id;
+        private final String m_type;
+        private final Object m_value;
+        private final long m_timestamp;
+        private final long m_version;
+
+        private Topic(String name, int id, NetworkTablesEntry.Cell cell) {
+            this.m_name = name;
+            this.m_id = id;
+            this.m_type = cell.value.getType();
+            this.m_value = cell.value.get();
+            this.m_timestamp = cell.timestamp;
+            this.m_version = cell.version;
+        }
+
+        /**
+         * @return the topic name
+         */
+        public String getName() {
+            return m_name;
+        }
+
+        /**
+         * @return the topic ID
+         */
+        public int getId() {
+            return m_id;
+        }
+
+        /**
+         * @return the type string of the value
+         */
+        public String getType() {
+            return m_type;
+        }
+
+        /**
+         * @return the value of the topic
+         */
+        public Object getValue() {
+            return m_value;
+        }
+
+        /**
+         * @return the time the value was set in milliseconds since the epoch
+         */
+        public long getTimestamp() {
+            return m_timestamp;
+        }
+
+        /**
+         * @return the version of the value
+         */
+        public long getVersion() {
+            return m_version;
+        }
+    }
+}
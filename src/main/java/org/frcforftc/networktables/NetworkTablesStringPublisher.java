@@ -0,0 +1,24 @@
+package org.frcforftc.networktables;
+
+/**
+ * Publishes strings to a topic without looking the topic up, see {@link NetworkTablesPublisher}.
+ */
+public class NetworkTablesStringPublisher extends NetworkTablesPublisher {
+    NetworkTablesStringPublisher(NT4Server server, NetworkTablesEntry entry) {
+        super(server, entry);
+    }
+
+    /**
+     * Publishes a value, sent to the subscribers of the topic if it changed.
+     *
+     * @param value the value to publish
+     */
+    public void set(String value) {
+        NetworkTablesEntry entry = getEntry();
+        if (entry.isRemoved()) {
+            setEntry(getServer().putTopic(getTopic(), value));
+        } else {
+            getServer().setValue(entry, value);
+        }
+    }
+}
@@ -0,0 +1,30 @@
+package org.frcforftc.networktables;
+
+/**
+ * Reads strings from a topic without looking the topic up, see {@link NetworkTablesSubscriber}.
+ */
+public class NetworkTablesStringSubscriber extends NetworkTablesSubscriber<String> {
+    private final String m_defaultValue;
+
+    NetworkTablesStringSubscriber(NT4Server server, String topic, String defaultValue, int queueSize) {
+        super(server, topic, queueSize);
+        this.m_defaultValue = defaultValue;
+    }
+
+    /**
+     * Reads the latest value of the topic.
+     *
+     * @return the value, or the default value if the topic doesn't exist or holds another type
+     */
+    public String get() {
+        NetworkTablesEntry entry = getEntry();
+        if (entry == null) return m_defaultValue;
+        String value = convert(entry.getValue().get());
+        return value == null ? m_defaultValue : value;
+    }
+
+    @Override
+    String convert(Object value) {
+        return value instanceof String ? (String) value : null;
+    }
+}
@@ -0,0 +1,478 @@
+package org.frcforftc.networktables;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Serializer for WPILib struct-typed topics, built once per class from cached {@link MethodHandle}s.
+ * <p>
+ * The struct layout is made of the fields named by the {@link Fields} annotation of the class, in the order it lists them.
+ * The order in which reflection returns fields is unspecified and differs between runtimes (e.g. ART), so classes with
+ * more than one non-static, non-transient field must carry the annotation. Supported field types are {@code boolean}, {@code byte}, {@code short}, {@code int}, {@code long},
+ * {@code float}, {@code double} and other classes following the same rules, which become nested structs.
+ * The struct name is the simple name of the class, so classes mirroring the WPILib geometry types
+ * (e.g. {@code Translation2d} with {@code double x} and {@code double y}) are decoded by WPILib dashboards.
+ * <p>
+ * Values are packed little-endian as the struct format requires. Method handles need Android API 26 or above.
+ *
+ * @param <T> the serialized class
+ */
+public class NetworkTablesStruct<T> {
+    /**
+     * Prefix of struct type strings
+     */
+    public static final String TYPE_PREFIX = "struct:";
+    /**
+     * Type string of the schema topics
+     */
+    public static final String SCHEMA_TYPE = "structschema";
+
+    private static final Map<Class<?>, NetworkTablesStruct<?>> s_cache = new ConcurrentHashMap<>();
+
+    private final Class<T> m_class;
+    private final String m_schema;
+    private final int m_size;
+    private final Kind[] m_kinds;
+    private final MethodHandle[] m_getters;
+    private final NetworkTablesStruct<?>[] m_nested;
+    /**
+     * Constructor taking every field in order, null if the class has none
+     */
+    private final MethodHandle m_canonicalConstructor;
+    /**
+     * No-argument constructor and field setters, null if the class has no such constructor or final fields
+     */
+    private final MethodHandle m_defaultConstructor;
+    private final MethodHandle[] m_setters;
+
+    private NetworkTablesStruct(Class<T> type) {
+        this.m_class = type;
+
+        List<Field> fields = orderedFields(type);
+
+        MethodHandles.Lookup lookup = MethodHandles.lookup();
+        m_kinds = new Kind[fields.size()];
+        m_getters = new MethodHandle[fields.size()];
+        m_nested = new NetworkTablesStruct<?>[fields.size()];
+        StringBuilder schema = new StringBuilder();
+        int size = 0;
+        boolean settable = true;
+
+        try {
+            for (int i = 0; i < fields.size(); i++) {
+                Field field = fields.get(i);
+                field.setAccessible(true);
+                Kind kind = Kind.of(field.getType());
+                m_kinds[i] = kind;
+
+                String typeName;
+                if (kind == Kind.kStruct) {
+                    m_nested[i] = forClass(field.getType());
+                    typeName = m_nested[i].getTypeName();
+                    size += m_nested[i].getSize();
+                    m_getters[i] = lookup.unreflectGetter(field).asType(MethodType.methodType(Object.class, Object.class));
+                } else {
+                    typeName = kind.m_schemaType;
+                    size += kind.m_size;
+                    m_getters[i] = lookup.unreflectGetter(field).asType(MethodType.methodType(field.getType(), Object.class));
+                }
+                settable &= !Modifier.isFinal(field.getModifiers());
+
+                if (schema.length() > 0) schema.append(';');
+                schema.append(typeName).append(' ').append(field.getName());
+            }
+
+            m_canonicalConstructor = findCanonicalConstructor(lookup, type, fields);
+            MethodHandle defaultConstructor = null;
+            MethodHandle[] setters = null;
+            if (settable) {
+                try {
+                    Constructor<T> constructor = type.getDeclaredConstructor();
+                    constructor.setAccessible(true);
+                    defaultConstructor = lookup.unreflectConstructor(constructor).asType(MethodType.methodType(Object.class));
+                    setters = new MethodHandle[fields.size()];
+                    for (int i = 0; i < fields.size(); i++) {
+                        Class<?> fieldType = m_kinds[i] == Kind.kStruct ? Object.class : fields.get(i).getType();
+                        setters[i] = lookup.unreflectSetter(fields.get(i)).asType(MethodType.methodType(void.class, Object.class, fieldType));
+                    }
+                } catch (NoSuchMethodException e) {
+                    defaultConstructor = null;
+                    setters = null;
+                }
+            }
+            m_defaultConstructor = defaultConstructor;
+            m_setters = setters;
+        } catch (IllegalAccessException e) {
+            throw new IllegalArgumentException("Can't access the fields of " + type.getName(), e);
+        }
+
+        this.m_schema = schema.toString();
+        this.m_size = size;
+    }
+
+    /**
+     * @return the serialized fields of a class in the order of its {@link Fields} annotation
+     * @throws IllegalArgumentException if the order of the fields isn't given by the class
+     */
+    private static List<Field> orderedFields(Class<?> type) {
+        List<Field> declared = new ArrayList<>();
+        for (Field field : type.getDeclaredFields()) {
+            if (Modifier.isStatic(field.getModifiers()) || Modifier.isTransient(field.getModifiers()) || field.isSynthetic()) continue;
+            declared.add(field);
+        }
+        if (declared.isEmpty()) {
+            throw new IllegalArgumentException(type.getName() + " has no fields to serialize");
+        }
+
+        Fields order = type.getAnnotation(Fields.class);
+        if (order == null) {
+            if (declared.size() == 1) return declared;
+            throw new IllegalArgumentException(type.getName() + " has more than one field and no @NetworkTablesStruct.Fields order");
+        }
+
+        List<Field> fields = new ArrayList<>();
+        for (String name : order.value()) {
+            Field field = null;
+            for (Field candidate : declared) {
+                if (candidate.getName().equals(name)) field = candidate;
+            }
+            if (field == null || fields.contains(field)) {
+                throw new IllegalArgumentException(type.getName() + " has no serializable field " + name + " or lists it twice");
+            }
+            fields.add(field);
+        }
+        if (fields.size() != declared.size()) {
+            declared.removeAll(fields);
+            throw new IllegalArgumentException(type.getName() + " doesn't list " + declared.get(0).getName() + " in @NetworkTablesStruct.Fields, make it transient to skip it");
+        }
+        return fields;
+    }
+
+    private static MethodHandle findCanonicalConstructor(MethodHandles.Lookup lookup, Class<?> type, List<Field> fields) throws IllegalAccessException {
+        Class<?>[] parameterTypes = new Class<?>[fields.size()];
+        for (int i = 0; i < parameterTypes.length; i++) {
+            parameterTypes[i] = fields.get(i).getType();
+        }
+
+        try {
+            Constructor<?> constructor = type.getDeclaredConstructor(parameterTypes);
+            constructor.setAccessible(true);
+            return lookup.unreflectConstructor(constructor).asSpreader(Object[].class, parameterTypes.length).asType(MethodType.methodType(Object.class, Object[].class));
+        } catch (NoSuchMethodException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Retrieves the serializer of a class, building it on first use.
+     *
+     * @param type the serialized class
+     * @param <T>  the serialized class
+     * @return the serializer of the class
+     * @throws IllegalArgumentException if a field of the class can't be serialized, or the class has several fields
+     *                                  and no {@link Fields} order
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> NetworkTablesStruct<T> forClass(Class<T> type) {
+        NetworkTablesStruct<?> struct = s_cache.get(type);
+        if (struct == null) {
+            // Not computeIfAbsent, building a struct recursively builds the nested ones
+            struct = new NetworkTablesStruct<>(type);
+            NetworkTablesStruct<?> existing = s_cache.putIfAbsent(type, struct);
+            if (existing != null) struct = existing;
+        }
+        return (NetworkTablesStruct<T>) struct;
+    }
+
+    /**
+     * @return the serialized class
+     */
+    public Class<T> getStructClass() {
+        return m_class;
+    }
+
+    /**
+     * @return the struct name, the simple name of the class
+     */
+    public String getTypeName() {
+        return m_class.getSimpleName();
+    }
+
+    /**
+     * @return the type string of topics holding a single struct
+     */
+    public String getTypeString() {
+        return TYPE_PREFIX + getTypeName();
+    }
+
+    /**
+     * @return the type string of topics holding an array of structs
+     */
+    public String getArrayTypeString() {
+        return getTypeString() + "[]";
+    }
+
+    /**
+     * @return the struct schema, e.g. {@code double x;double y}
+     */
+    public String getSchema() {
+        return m_schema;
+    }
+
+    /**
+     * @return the packed size of a single struct in bytes
+     */
+    public int getSize() {
+        return m_size;
+    }
+
+    /**
+     * @return the structs used as fields of this struct
+     */
+    public List<NetworkTablesStruct<?>> getNested() {
+        List<NetworkTablesStruct<?>> nested = new ArrayList<>();
+        for (NetworkTablesStruct<?> struct : m_nested) {
+            if (struct != null && !nested.contains(struct)) nested.add(struct);
+        }
+        return Collections.unmodifiableList(nested);
+    }
+
+    /**
+     * Packs a value at the position of a buffer, the buffer must be little-endian.
+     *
+     * @param buffer the buffer to write to, its position is advanced by {@link #getSize()}
+     * @param value  the value to pack
+     */
+    public void pack(ByteBuffer buffer, T value) {
+        packObject(buffer, value);
+    }
+
+    /**
+     * Packs an array of values at the position of a buffer, the buffer must be little-endian.
+     *
+     * @param buffer the buffer to write to, its position is advanced by {@link #getSize()} times the array length
+     * @param values the values to pack
+     */
+    public void packArray(ByteBuffer buffer, T[] values) {
+        for (T value : values) {
+            packObject(buffer, value);
+        }
+    }
+
+    private void packObject(ByteBuffer buffer, Object value) {
+        try {
+            for (int i = 0; i < m_kinds.length; i++) {
+                MethodHandle getter = m_getters[i];
+                switch (m_kinds[i]) {
+                    case kBoolean:
+                        buffer.put((boolean) getter.invokeExact(value) ? (byte) 1 : (byte) 0);
+                        break;
+                    case kByte:
+                        buffer.put((byte) getter.invokeExact(value));
+                        break;
+                    case kShort:
+                        buffer.putShort((short) getter.invokeExact(value));
+                        break;
+                    case kInt:
+                        buffer.putInt((int) getter.invokeExact(value));
+                        break;
+                    case kLong:
+                        buffer.putLong((long) getter.invokeExact(value));
+                        break;
+                    case kFloat:
+                        buffer.putFloat((float) getter.invokeExact(value));
+                        break;
+                    case kDouble:
+                        buffer.putDouble((double) getter.invokeExact(value));
+                        break;
+                    case kStruct:
+                        m_nested[i].packObject(buffer, (Object) getter.invokeExact(value));
+                        break;
+                }
+            }
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable t) {
+            throw new IllegalStateException("Failed to pack " + m_class.getName(), t);
+        }
+    }
+
+    /**
+     * Packs a value into a new little-endian array.
+     *
+     * @param value the value to pack
+     * @return the packed bytes
+     */
+    public byte[] pack(T value) {
+        ByteBuffer buffer = ByteBuffer.allocate(m_size).order(ByteOrder.LITTLE_ENDIAN);
+        pack(buffer, value);
+        return buffer.array();
+    }
+
+    /**
+     * Unpacks a value from the position of a buffer, the buffer must be little-endian.
+     *
+     * @param buffer the buffer to read from, its position is advanced by {@link #getSize()}
+     * @return the unpacked value
+     * @throws UnsupportedOperationException if the class has neither a constructor taking every field in order,
+     *                                       nor a no-argument constructor and non-final fields
+     */
+    @SuppressWarnings("unchecked")
+    public T unpack(ByteBuffer buffer) {
+        return (T) unpackObject(buffer);
+    }
+
+    /**
+     * Unpacks all the values held by a buffer, the buffer must be little-endian.
+     *
+     * @param buffer the buffer to read from, all its remaining bytes are read
+     * @return the unpacked values
+     */
+    @SuppressWarnings("unchecked")
+    public T[] unpackArray(ByteBuffer buffer) {
+        T[] values = (T[]) java.lang.reflect.Array.newInstance(m_class, buffer.remaining() / m_size);
+        for (int i = 0; i < values.length; i++) {
+            values[i] = unpack(buffer);
+        }
+        return values;
+    }
+
+    /**
+     * Unpacks a value from a packed array.
+     *
+     * @param data the packed bytes
+     * @return the unpacked value
+     */
+    public T unpack(byte[] data) {
+        return unpack(ByteBuffer.wrap(data).order(ByteOrder.LITTLE_ENDIAN));
+    }
+
+    private Object unpackObject(ByteBuffer buffer) {
+        if (m_canonicalConstructor == null && m_defaultConstructor == null) {
+            throw new UnsupportedOperationException(m_class.getName() + " has no constructor taking every field and no no-argument constructor");
+        }
+
+        Object[] values = new Object[m_kinds.length];
+        for (int i = 0; i < m_kinds.length; i++) {
+            switch (m_kinds[i]) {
+                case kBoolean:
+                    values[i] = buffer.get() != 0;
+                    break;
+                case kByte:
+                    values[i] = buffer.get();
+                    break;
+                case kShort:
+                    values[i] = buffer.getShort();
+                    break;
+                case kInt:
+                    values[i] = buffer.getInt();
+                    break;
+                case kLong:
+                    values[i] = buffer.getLong();
+                    break;
+                case kFloat:
+                    values[i] = buffer.getFloat();
+                    break;
+                case kDouble:
+                    values[i] = buffer.getDouble();
+                    break;
+                case kStruct:
+                    values[i] = m_nested[i].unpackObject(buffer);
+                    break;
+            }
+        }
+
+        try {
+            if (m_canonicalConstructor != null) {
+                return (Object) m_canonicalConstructor.invokeExact(values);
+            }
+
+            Object value = (Object) m_defaultConstructor.invokeExact();
+            for (int i = 0; i < values.length; i++) {
+                m_setters[i].invoke(value, values[i]);
+            }
+            return value;
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable t) {
+            throw new IllegalStateException("Failed to unpack " + m_class.getName(), t);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return getTypeString() + " {" + m_schema + "}";
+    }
+
+    /**
+     * Order of the fields of a struct class, which is the order of its schema, of the packed values and of the
+     * parameters of the constructor taking every field. Every non-static, non-transient field must be listed.
+     * <pre>{@code
+     * @NetworkTablesStruct.Fields({"x", "y"})
+     * public class Translation2d {
+     *     public double x;
+     *     public double y;
+     * }
+     * }</pre>
+     */
+    @Retention(RetentionPolicy.RUNTIME)
+    @Target(ElementType.TYPE)
+    public @interface Fields {
+        /**
+         * @return the names of the fields in struct order
+         */
+        String[] value();
+    }
+
+    /**
+     * Kinds of struct fields with their schema type and packed size.
+     */
+    private enum Kind {
+        kBoolean("bool", 1),
+        kByte("int8", 1),
+        kShort("int16", 2),
+        kInt("int32", 4),
+        kLong("int64", 8),
+        kFloat("float", 4),
+        kDouble("double", 8),
+        kStruct(null, 0);
+
+        final String m_schemaType;
+        final int m_size;
+
+        Kind(String schemaType, int size) {
+            this.m_schemaType = schemaType;
+            this.m_size = size;
+        }
+
+        static Kind of(Class<?> type) {
+            if (type == boolean.class) return kBoolean;
+            if (type == byte.class) return kByte;
+            if (type == short.class) return kShort;
+            if (type == int.class) return kInt;
+            if (type == long.class) return kLong;
+            if (type == float.class) return kFloat;
+            if (type == double.class) return kDouble;
+            if (type.isPrimitive() || type.isArray() || type.isInterface() || type.getName().startsWith("java.")) {
+                throw new IllegalArgumentException("Unsupported struct field type: " + type.getName());
+            }
+            return kStruct;
+        }
+    }
+}
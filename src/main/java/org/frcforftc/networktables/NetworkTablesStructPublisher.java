@@ -0,0 +1,98 @@
+package org.frcforftc.networktables;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+/**
+ * Publishes struct values to a topic of an {@link NT4Server}.
+ * Values are packed into a buffer reused across calls, the packed bytes are only copied
+ * when they differ from the current value of the topic, so republishing an unchanged value doesn't allocate.
+ *
+ * @param <T> the published class
+ */
+public class NetworkTablesStructPublisher<T> {
+    private final NT4Server m_server;
+    private final String m_topic;
+    private final NetworkTablesStruct<T> m_struct;
+    /**
+     * Whether the topic holds an array of structs
+     */
+    private final boolean m_array;
+    /**
+     * Little-endian buffer the values are packed into, grown when an array doesn't fit
+     */
+    private ByteBuffer m_buffer;
+
+    /**
+     * Constructs a publisher, the schema of the struct is published right away.
+     *
+     * @param server the server the topic belongs to
+     * @param topic  the topic name
+     * @param struct the serializer of the published class
+     * @param array  true if the topic holds an array of structs
+     */
+    public NetworkTablesStructPublisher(NT4Server server, String topic, NetworkTablesStruct<T> struct, boolean array) {
+        this.m_server = server;
+        this.m_topic = topic;
+        this.m_struct = struct;
+        this.m_array = array;
+        this.m_buffer = ByteBuffer.allocate(struct.getSize()).order(ByteOrder.LITTLE_ENDIAN);
+
+        server.publishSchema(struct);
+    }
+
+    /**
+     * @return the topic name
+     */
+    public String getTopic() {
+        return m_topic;
+    }
+
+    /**
+     * @return the serializer of the published class
+     */
+    public NetworkTablesStruct<T> getStruct() {
+        return m_struct;
+    }
+
+    /**
+     * Publishes a single value.
+     *
+     * @param value the value to publish
+     * @throws IllegalStateException if the topic holds an array of structs
+     */
+    public synchronized void set(T value) {
+        if (m_array) throw new IllegalStateException(m_topic + " holds an array of " + m_struct.getTypeName());
+
+        m_buffer.clear();
+        m_struct.pack(m_buffer, value);
+        publish();
+    }
+
+    /**
+     * Publishes an array of values as a single payload.
+     *
+     * @param values the values to publish
+     * @throws IllegalStateException if the topic holds a single struct
+     */
+    public synchronized void setArray(T[] values) {
+        if (!m_array) throw new IllegalStateException(m_topic + " holds a single " + m_struct.getTypeName());
+
+        int size = m_struct.getSize() * values.length;
+        if (m_buffer.capacity() < size) {
+            m_buffer = ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+        }
+        m_buffer.clear();
+        m_struct.packArray(m_buffer, values);
+        publish();
+    }
+
+    private void publish() {
+        int length = m_buffer.position();
+        byte[] packed = m_buffer.array();
+        if (m_server.touchTopicIfUnchanged(m_topic, packed, length)) return;
+
+        m_server.putTopic(m_topic, new NetworkTablesValue(Arrays.copyOf(packed, length), m_array ? m_struct.getArrayTypeString() : m_struct.getTypeString()));
+    }
+}
@@ -0,0 +1,160 @@
+package org.frcforftc.networktables;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Handle reading a single topic of an {@link NT4Server}.
+ * <p>
+ * The entry of the topic is resolved once, reading the latest value is then a volatile read of the entry instead
+ * of a map lookup. If the topic doesn't exist yet the default value is returned, and the handle binds to the topic
+ * the first time it is read after the topic is created.
+ * <p>
+ * Subscribers created with a queue size also record every update of the topic with its timestamp in a bounded
+ * buffer, drained by {@link #readQueue()}, so updates arriving between two reads aren't lost. When the buffer is
+ * full the oldest update is dropped.
+ *
+ * @param <T> the type of the values read from the queue
+ */
+public abstract class NetworkTablesSubscriber<T> {
+    private final NT4Server m_server;
+    private final String m_topic;
+    /**
+     * Entry of the topic, null until the topic exists
+     */
+    private volatile NetworkTablesEntry m_entry = null;
+    /**
+     * Ring buffer of the updates not read yet, null if the subscriber has no queue
+     */
+    private final Object[] m_queueValues;
+    private final long[] m_queueTimestamps;
+    private int m_queueHead = 0;
+    private int m_queueSize = 0;
+    private long m_dropped = 0;
+    private volatile boolean m_closed = false;
+
+    /**
+     * Constructs a handle for a topic.
+     *
+     * @param server    the server the topic belongs to
+     * @param topic     the topic name
+     * @param queueSize the number of updates kept for {@link #readQueue()}, 0 to only read the latest value
+     */
+    NetworkTablesSubscriber(NT4Server server, String topic, int queueSize) {
+        if (queueSize < 0) throw new IllegalArgumentException("Negative queue size: " + queueSize);
+        this.m_server = server;
+        this.m_topic = topic;
+        this.m_queueValues = queueSize == 0 ? null : new Object[queueSize];
+        this.m_queueTimestamps = queueSize == 0 ? null : new long[queueSize];
+        getEntry();
+    }
+
+    /**
+     * @return the topic name
+     */
+    public String getTopic() {
+        return m_topic;
+    }
+
+    /**
+     * Retrieves the entry of the topic, binding the handle to it if the topic was created or created again since.
+     *
+     * @return the entry of the topic, or null if the topic doesn't exist
+     */
+    public NetworkTablesEntry getEntry() {
+        NetworkTablesEntry entry = m_entry;
+        if (entry != null && !entry.isRemoved()) return entry;
+
+        NetworkTablesEntry current = m_server.getEntries().get(m_topic);
+        if (current != entry) {
+            synchronized (this) {
+                boolean queued = m_queueValues != null && !m_closed;
+                if (m_entry != null && queued) m_entry.removeSubscriber(this);
+                m_entry = current;
+                if (current != null && queued) current.addSubscriber(this);
+            }
+        }
+        return current;
+    }
+
+    /**
+     * @return true if the topic exists
+     */
+    public boolean exists() {
+        return getEntry() != null;
+    }
+
+    /**
+     * @return the time the latest value was set in milliseconds since the epoch, 0 if the topic doesn't exist
+     */
+    public long getLastChange() {
+        NetworkTablesEntry entry = getEntry();
+        return entry == null ? 0 : entry.getTimestamp();
+    }
+
+    /**
+     * Reads the latest value as the type of the subscriber.
+     *
+     * @param value the value of the topic
+     * @return the converted value, or null if the value has another type
+     */
+    abstract T convert(Object value);
+
+    /**
+     * Drains the updates received since the last call, oldest first.
+     *
+     * @return the updates, values of another type than the subscriber's are skipped
+     */
+    public List<NetworkTablesTimestamped<T>> readQueue() {
+        if (m_queueValues == null) return Collections.emptyList();
+        getEntry();
+
+        synchronized (this) {
+            List<NetworkTablesTimestamped<T>> updates = new ArrayList<>(m_queueSize);
+            for (int i = 0; i < m_queueSize; i++) {
+                int index = (m_queueHead + i) % m_queueValues.length;
+                T value = convert(m_queueValues[index]);
+                if (value != null) updates.add(new NetworkTablesTimestamped<>(value, m_queueTimestamps[index]));
+                m_queueValues[index] = null;
+            }
+            m_queueHead = 0;
+            m_queueSize = 0;
+            return updates;
+        }
+    }
+
+    /**
+     * @return the number of updates dropped because the queue was full
+     */
+    public synchronized long getDroppedCount() {
+        return m_dropped;
+    }
+
+    /**
+     * Records an update of the topic, called by the entry.
+     *
+     * @param value     the new value
+     * @param timestamp the time the value was set in milliseconds since the epoch
+     */
+    synchronized void offer(Object value, long timestamp) {
+        int capacity = m_queueValues.length;
+        if (m_queueSize == capacity) {
+            m_queueHead = (m_queueHead + 1) % capacity;
+            m_queueSize--;
+            m_dropped++;
+        }
+        int index = (m_queueHead + m_queueSize) % capacity;
+        m_queueValues[index] = value;
+        m_queueTimestamps[index] = timestamp;
+        m_queueSize++;
+    }
+
+    /**
+     * Stops recording updates, the latest value can still be read.
+     */
+    public synchronized void close() {
+        m_closed = true;
+        if (m_entry != null && m_queueValues != null) m_entry.removeSubscriber(this);
+    }
+}
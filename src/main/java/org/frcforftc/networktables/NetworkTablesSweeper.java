@@ -0,0 +1,96 @@
+package org.frcforftc.networktables;
+
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Periodically removes the topics of an {@link NT4Server} that haven't been written for longer than an idle timeout,
+ * so topics with generated names don't grow the memory of long running servers without limit.
+ * <p>
+ * Persistent topics, schemas under {@link NT4Server#SCHEMA_PREFIX} and topics polled by the
+ * {@link NetworkTablesSampler} are never removed. Writing an unchanged value counts as a write.
+ */
+public class NetworkTablesSweeper {
+    /**
+     * Longest period (in milliseconds) between two sweeps, shorter idle timeouts are swept at their own period
+     */
+    public static final long DEFAULT_SWEEP_PERIOD_MS = 1000;
+
+    /**
+     * The server whose topics are swept
+     */
+    private final NT4Server m_server;
+    /**
+     * Time (in milliseconds) after its last write a topic is removed
+     */
+    private final long m_idleTimeoutMs;
+    /**
+     * Executor running the sweeps, created on the first call to {@link #start()}
+     */
+    private ScheduledExecutorService m_executor = null;
+
+    /**
+     * Constructs a sweeper for the given server.
+     *
+     * @param server        the server whose topics are swept
+     * @param idleTimeoutMs the time (in milliseconds) after its last write a topic is removed
+     */
+    public NetworkTablesSweeper(NT4Server server, long idleTimeoutMs) {
+        this.m_server = server;
+        this.m_idleTimeoutMs = idleTimeoutMs;
+    }
+
+    /**
+     * @return the time (in milliseconds) after its last write a topic is removed
+     */
+    public long getIdleTimeout() {
+        return m_idleTimeoutMs;
+    }
+
+    /**
+     * Starts the sweeper thread if it isn't running.
+     */
+    public synchronized void start() {
+        if (m_executor != null) return;
+
+        long period = Math.min(DEFAULT_SWEEP_PERIOD_MS, m_idleTimeoutMs);
+        m_executor = NetworkTablesThreads.newScheduledExecutor("NT4Server-Sweeper");
+        m_executor.scheduleAtFixedRate(this::sweep, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stops the sweeper thread.
+     */
+    public synchronized void stop() {
+        if (m_executor == null) return;
+
+        m_executor.shutdownNow();
+        m_executor = null;
+    }
+
+    /**
+     * Removes the idle topics.
+     *
+     * @return the number of topics removed
+     */
+    int sweep() {
+        long deadline = System.currentTimeMillis() - m_idleTimeoutMs;
+        int removed = 0;
+
+        for (NetworkTablesEntry entry : m_server.getEntries().values()) {
+            try {
+                if (entry.getAccessTime() > deadline || !isEvictable(entry)) continue;
+                if (m_server.removeTopic(entry)) removed++;
+            } catch (RuntimeException ex) {
+                ex.printStackTrace();
+            }
+        }
+        return removed;
+    }
+
+    private boolean isEvictable(NetworkTablesEntry entry) {
+        return !entry.isPersistent()
+                && !entry.getTopic().startsWith(NT4Server.SCHEMA_PREFIX)
+                && !m_server.isSampled(entry);
+    }
+}
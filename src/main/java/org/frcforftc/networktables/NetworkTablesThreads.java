@@ -0,0 +1,69 @@
+package org.frcforftc.networktables;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Creates the threads the library runs its background work on.
+ * <p>
+ * This is the Java 8 implementation, using daemon platform threads. The library is a multi-release JAR,
+ * on Java 21 and above it is replaced by an implementation running the same work on virtual threads.
+ */
+public final class NetworkTablesThreads {
+    private NetworkTablesThreads() {
+    }
+
+    /**
+     * @return true if the executors created by this class run their tasks on virtual threads
+     */
+    public static boolean isVirtual() {
+        return false;
+    }
+
+    /**
+     * Creates an executor running scheduled tasks one at a time.
+     *
+     * @param name the name of the thread
+     * @return the executor
+     */
+    public static ScheduledExecutorService newScheduledExecutor(String name) {
+        return Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, name);
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Creates an executor running tasks one at a time in the order they were submitted.
+     *
+     * @param name the name of the thread
+     * @return the executor
+     */
+    public static ExecutorService newSerialExecutor(String name) {
+        return Executors.newSingleThreadExecutor(r -> {
+            Thread thread = new Thread(r, name);
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Creates an executor running every submitted task on its own thread, threads are reused when idle.
+     *
+     * @param name the prefix of the thread names
+     * @return the executor
+     */
+    public static ExecutorService newTaskExecutor(String name) {
+        AtomicInteger count = new AtomicInteger();
+        ThreadFactory factory = r -> {
+            Thread thread = new Thread(r, name + "-" + count.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        };
+        return Executors.newCachedThreadPool(factory);
+    }
+}
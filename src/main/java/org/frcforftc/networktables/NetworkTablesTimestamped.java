@@ -0,0 +1,31 @@
+package org.frcforftc.networktables;
+
+/**
+ * A value of a topic with the time it was set, as read from the queue of a {@link NetworkTablesSubscriber}.
+ *
+ * @param <T> the type of the value
+ */
+public final class NetworkTablesTimestamped<T> {
+    private final T m_value;
+    private final long m_timestamp;
+
+    NetworkTablesTimestamped(T value, long timestamp) {
+        this.m_value = value;
+        this.m_timestamp = timestamp;
+    }
+
+    /**
+     * @return the value
+     */
+    public T getValue() {
+        return m_value;
+    }
+
+    /**
+     * @return the time the value was set in milliseconds since the epoch, as stamped by the client that sent it for
+     * values written by clients
+     */
+    public long getTimestamp() {
+        return m_timestamp;
+    }
+}
@@ -1,5 +1,6 @@
 package org.frcforftc.networktables;
 
+import java.nio.ByteBuffer;
 import java.util.function.Consumer;
 import java.util.function.Supplier;
 
@@ -19,17 +20,18 @@ public class NetworkTablesValue {
      * @param type  the type of the value
      */
     public NetworkTablesValue(Object value, NetworkTablesValueType type) {
-        this(() -> value, type);
+        this(new Constant(value), type);
     }
 
     /**
      * Constructs a NetworkTablesValue with a specific value and type string.
+     * Structured type strings such as {@code struct:Pose2d} are kept as is.
      *
      * @param value the value to be stored
      * @param type  the type of the value as a string
      */
     public NetworkTablesValue(Object value, String type) {
-        this(() -> value, NetworkTablesValueType.getFromString(type));
+        this(new Constant(value), null, NetworkTablesValueType.isStructured(type) ? type : NetworkTablesValueType.getFromString(type).typeString);
     }
 
     public NetworkTablesValue(Object value) {
@@ -81,6 +83,7 @@ public class NetworkTablesValue {
 
     /**
      * Retrieves the value as an object.
+     * Raw values received from clients are returned as a new read-only view on every call.
      *
      * @return the value as an object
      */
@@ -88,6 +91,95 @@ public class NetworkTablesValue {
         return m_value.get();
     }
 
+    /**
+     * Retrieves the value as stored, for encoding. Raw values received from clients are returned as the
+     * {@link NT4RawPayload} holding them, which must not be handed to users.
+     *
+     * @return the stored value
+     */
+    Object getStored() {
+        return m_value instanceof Constant ? ((Constant) m_value).m_value : m_value.get();
+    }
+
+    /**
+     * @param stored a value as stored or decoded
+     * @return the value as handed to users, a new read-only view for raw values received from clients
+     */
+    static Object view(Object stored) {
+        return stored instanceof NT4RawPayload ? ((NT4RawPayload) stored).asReadOnlyBuffer() : stored;
+    }
+
+    /**
+     * Retrieves a raw value as a read-only view. Raw values received from clients are views into the frame they
+     * arrived in and are never copied, so the view must not be kept longer than needed: it holds the whole frame in
+     * memory. Use {@link #copyRaw()} to retain the bytes.
+     *
+     * @return a read-only view of the bytes with its own position, or null if the value isn't raw
+     */
+    public ByteBuffer getRaw() {
+        return asRaw(m_value.get());
+    }
+
+    /**
+     * @param value a value
+     * @return a read-only view of the value if it is raw, null otherwise
+     */
+    static ByteBuffer asRaw(Object value) {
+        if (value instanceof ByteBuffer) return ((ByteBuffer) value).asReadOnlyBuffer();
+        if (value instanceof byte[]) return ByteBuffer.wrap((byte[]) value).asReadOnlyBuffer();
+        return null;
+    }
+
+    /**
+     * Compares a raw value with bytes without allocating.
+     *
+     * @param stored the value as stored
+     * @param bytes  the array holding the bytes
+     * @param length the number of bytes
+     * @return true if the value is raw and holds the first {@code length} bytes of the array
+     */
+    static boolean rawEquals(Object stored, byte[] bytes, int length) {
+        byte[] array;
+        int offset;
+        if (stored instanceof byte[]) {
+            array = (byte[]) stored;
+            offset = 0;
+            if (array.length != length) return false;
+        } else if (stored instanceof NT4RawPayload) {
+            NT4RawPayload payload = (NT4RawPayload) stored;
+            array = payload.array();
+            offset = payload.offset();
+            if (payload.length() != length) return false;
+        } else if (stored instanceof ByteBuffer) {
+            ByteBuffer buffer = (ByteBuffer) stored;
+            if (buffer.remaining() != length) return false;
+            for (int i = 0; i < length; i++) {
+                if (buffer.get(buffer.position() + i) != bytes[i]) return false;
+            }
+            return true;
+        } else {
+            return false;
+        }
+
+        for (int i = 0; i < length; i++) {
+            if (array[offset + i] != bytes[i]) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Copies a raw value, to keep its bytes after the received frame they are a view of is released.
+     *
+     * @return a copy of the bytes, or null if the value isn't raw
+     */
+    public byte[] copyRaw() {
+        ByteBuffer raw = getRaw();
+        if (raw == null) return null;
+        byte[] copy = new byte[raw.remaining()];
+        raw.get(copy);
+        return copy;
+    }
+
     /**
      * Retrieves the supplier for the value.
      *
@@ -109,4 +201,27 @@ public class NetworkTablesValue {
     public Consumer<?> getSetter() {
         return m_setter;
     }
+
+    /**
+     * @return true if the value is read from a getter or written through a setter instead of being held
+     */
+    boolean isBound() {
+        return m_setter != null || !(m_value instanceof Constant || m_value instanceof NetworkTablesPrimitiveCell);
+    }
+
+    /**
+     * Getter of values constructed from an object, tells them apart from values bound to a getter.
+     */
+    private static final class Constant implements Supplier<Object> {
+        private final Object m_value;
+
+        Constant(Object value) {
+            this.m_value = value;
+        }
+
+        @Override
+        public Object get() {
+            return view(m_value);
+        }
+    }
 }
@@ -2,6 +2,8 @@ package org.frcforftc.networktables;
 
 import org.checkerframework.checker.nullness.qual.NonNull;
 
+import java.nio.ByteBuffer;
+import java.util.Arrays;
 import java.util.Objects;
 
 /**
@@ -91,6 +93,7 @@ public enum NetworkTablesValueType {
 
     /**
      * Gets the {@link NetworkTablesValueType} from the given string.
+     * Structured types ({@code struct:*}, {@code proto:*} and {@code structschema}) are sent as {@link NetworkTablesValueType#Raw}.
      *
      * @param s the string representation of the value type
      * @return the corresponding {@link NetworkTablesValueType}, or {@link NetworkTablesValueType#Unknown} if not found
@@ -101,10 +104,23 @@ public enum NetworkTablesValueType {
                 return val;
             }
         }
+        if (isStructured(s)) {
+            return NetworkTablesValueType.Raw;
+        }
 
         return NetworkTablesValueType.Unknown;
     }
 
+    /**
+     * Checks whether a type string describes structured data carried as {@link NetworkTablesValueType#Raw}.
+     *
+     * @param s the type string
+     * @return true for {@code struct:*}, {@code proto:*} and {@code structschema} types
+     */
+    public static boolean isStructured(@NonNull String s) {
+        return s.startsWith("struct:") || s.startsWith("proto:") || s.equals("structschema");
+    }
+
     /**
      * Gets the {@link NetworkTablesValueType} from the given ID.
      *
@@ -127,7 +143,7 @@ public enum NetworkTablesValueType {
      * @return the corresponding {@link NetworkTablesValueType}, or {@link NetworkTablesValueType#Unknown} if not recognized
      */
     public static NetworkTablesValueType determineType(Object value) {
-        if (value instanceof Integer) {
+        if (value instanceof Integer || value instanceof Long) {
             return NetworkTablesValueType.Int;
         } else if (value instanceof Double) {
             return NetworkTablesValueType.Double;
@@ -137,7 +153,7 @@ public enum NetworkTablesValueType {
             return NetworkTablesValueType.String;
         } else if (value instanceof Boolean) {
             return NetworkTablesValueType.Boolean;
-        } else if (value instanceof byte[]) { // Raw data is usually represented as a byte array
+        } else if (isRaw(value)) { // Raw data, received values are ranges of the frame
             return NetworkTablesValueType.Raw;
         } else if (value instanceof boolean[]) {
             return NetworkTablesValueType.BooleanArray;
@@ -162,4 +178,80 @@ public enum NetworkTablesValueType {
         }
     }
 
+    /**
+     * Checks whether two values of this type are equal.
+     * Scalars are compared as primitives so boxed values with the same content are equal,
+     * and arrays are compared element by element.
+     *
+     * @param a the first value
+     * @param b the second value
+     * @return true if both values hold the same content
+     */
+    public boolean valueEquals(Object a, Object b) {
+        if (a == b) return true;
+        if (a == null || b == null) return false;
+
+        switch (this) {
+            case Boolean:
+                return a instanceof Boolean && b instanceof Boolean && ((Boolean) a).booleanValue() == ((Boolean) b).booleanValue();
+            case Double:
+            case Float:
+                return a instanceof Number && b instanceof Number
+                        && java.lang.Double.doubleToLongBits(((Number) a).doubleValue()) == java.lang.Double.doubleToLongBits(((Number) b).doubleValue());
+            case Int:
+                return a instanceof Number && b instanceof Number && ((Number) a).longValue() == ((Number) b).longValue();
+            case Raw:
+                if (a instanceof byte[] && b instanceof byte[]) return Arrays.equals((byte[]) a, (byte[]) b);
+                if (isRaw(a) && isRaw(b)) return asByteBuffer(a).equals(asByteBuffer(b));
+                break;
+            case BooleanArray:
+                if (a instanceof boolean[] && b instanceof boolean[]) return Arrays.equals((boolean[]) a, (boolean[]) b);
+                break;
+            case DoubleArray:
+                if (a instanceof double[] && b instanceof double[]) return Arrays.equals((double[]) a, (double[]) b);
+                break;
+            case IntArray:
+                if (a instanceof int[] && b instanceof int[]) return Arrays.equals((int[]) a, (int[]) b);
+                break;
+            case FloatArray:
+                if (a instanceof float[] && b instanceof float[]) return Arrays.equals((float[]) a, (float[]) b);
+                break;
+            default:
+                break;
+        }
+
+        // Boxed arrays and mismatched representations
+        return Objects.deepEquals(a, b);
+    }
+
+    /**
+     * Copies an array value, so the array of the caller can be modified after it was put.
+     * Buffers and received raw payloads are not copied, see {@link NetworkTablesValue#getRaw()}.
+     *
+     * @param value a value
+     * @return a shallow copy of the value if it is an array, the value itself otherwise
+     */
+    static Object copyArray(Object value) {
+        if (value instanceof double[]) return ((double[]) value).clone();
+        if (value instanceof float[]) return ((float[]) value).clone();
+        if (value instanceof int[]) return ((int[]) value).clone();
+        if (value instanceof long[]) return ((long[]) value).clone();
+        if (value instanceof boolean[]) return ((boolean[]) value).clone();
+        if (value instanceof byte[]) return ((byte[]) value).clone();
+        if (value instanceof Object[]) return ((Object[]) value).clone();
+        return value;
+    }
+
+    private static boolean isRaw(Object value) {
+        return value instanceof byte[] || value instanceof ByteBuffer || value instanceof NT4RawPayload;
+    }
+
+    /**
+     * @param value a byte array, a buffer or a received payload
+     * @return a buffer over the remaining bytes of the value, comparable with {@link ByteBuffer#equals(Object)}
+     */
+    private static ByteBuffer asByteBuffer(Object value) {
+        if (value instanceof NT4RawPayload) return ((NT4RawPayload) value).asReadOnlyBuffer();
+        return value instanceof ByteBuffer ? (ByteBuffer) value : ByteBuffer.wrap((byte[]) value);
+    }
 }
@@ -0,0 +1,41 @@
+package org.frcforftc.networktables;
+
+import java.lang.invoke.VarHandle;
+
+/**
+ * Memory fences ordering the plain reads and writes of memory shared with other processes,
+ * see {@link NetworkTablesSharedMemoryRing}.
+ * <p>
+ * This is the Java 21 implementation of the multi-release JAR, using the fences of {@link VarHandle}.
+ */
+final class NetworkTablesFences {
+    private NetworkTablesFences() {
+    }
+
+    /**
+     * @return true, the fences are always available
+     */
+    static boolean isAvailable() {
+        return true;
+    }
+
+    /**
+     * Checks that the fences are available before memory gets shared with other processes, they always are.
+     */
+    static void checkAvailable() {
+    }
+
+    /**
+     * Orders the reads before the fence before the reads and writes after it.
+     */
+    static void acquire() {
+        VarHandle.acquireFence();
+    }
+
+    /**
+     * Orders the reads and writes before the fence before the writes after it.
+     */
+    static void release() {
+        VarHandle.releaseFence();
+    }
+}
@@ -0,0 +1,53 @@
+package org.frcforftc.networktables;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+
+/**
+ * Creates the threads the library runs its background work on.
+ * <p>
+ * This is the Java 21 implementation of the multi-release JAR, every executor runs its tasks on virtual threads
+ * so the number of connections and scheduled tasks isn't bound by the number of platform threads.
+ */
+public final class NetworkTablesThreads {
+    private NetworkTablesThreads() {
+    }
+
+    /**
+     * @return true if the executors created by this class run their tasks on virtual threads
+     */
+    public static boolean isVirtual() {
+        return true;
+    }
+
+    /**
+     * Creates an executor running scheduled tasks one at a time.
+     *
+     * @param name the name of the thread
+     * @return the executor
+     */
+    public static ScheduledExecutorService newScheduledExecutor(String name) {
+        return Executors.newSingleThreadScheduledExecutor(Thread.ofVirtual().name(name).factory());
+    }
+
+    /**
+     * Creates an executor running tasks one at a time in the order they were submitted.
+     *
+     * @param name the name of the thread
+     * @return the executor
+     */
+    public static ExecutorService newSerialExecutor(String name) {
+        return Executors.newSingleThreadExecutor(Thread.ofVirtual().name(name).factory());
+    }
+
+    /**
+     * Creates an executor running every submitted task on its own thread.
+     *
+     * @param name the prefix of the thread names
+     * @return the executor
+     */
+    public static ExecutorService newTaskExecutor(String name) {
+        return Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name(name + "-", 0).factory());
+    }
+}
@@ -0,0 +1,152 @@
+package org.frcforftc.networktables.tools;
+
+import org.frcforftc.networktables.NT4Server;
+import org.java_websocket.WebSocketImpl;
+import org.java_websocket.drafts.Draft_6455;
+
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Allocation regression check for the zero-garbage put path of {@link NT4Server}.
+ * Runs each scenario until it is compiled, then measures the bytes the calling thread allocates per operation with
+ * {@link com.sun.management.ThreadMXBean#getThreadAllocatedBytes(long)}. The check fails when a scenario allocates
+ * more than {@link #MAX_BYTES_PER_OPERATION} bytes per operation, so a single object left on the path is caught.
+ * <p>
+ * The server isn't started, subscribers are connections that only count what is sent to them. Framing of the
+ * values by Java-WebSocket on real sockets is not measured, it allocates a frame per send.
+ * <p>
+ * Run it with {@code ./gradlew allocationCheck}, it is part of {@code ./gradlew check}. It runs with escape
+ * analysis disabled so allocations the JIT happens to remove today are reported as well.
+ */
+public class NetworkTablesAllocationCheck {
+    /**
+     * Operations run before measuring, enough for the path to be compiled
+     */
+    private static final int WARMUP = 200_000;
+    /**
+     * Operations measured per scenario
+     */
+    private static final int ITERATIONS = 1_000_000;
+    /**
+     * Allowed bytes per operation, left above zero for the allocations of the measurement itself
+     */
+    private static final double MAX_BYTES_PER_OPERATION = 0.5;
+    private static final int SUBSCRIBERS = 4;
+
+    private final com.sun.management.ThreadMXBean m_threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+    private final long m_threadId = Thread.currentThread().getId();
+    private final NT4Server m_server;
+    private final List<CountingConnection> m_subscribers = new ArrayList<>();
+
+    private NetworkTablesAllocationCheck(NT4Server server) {
+        this.m_server = server;
+    }
+
+    public static void main(String[] args) {
+        NT4Server server = NT4Server.createInstance("localhost", 5812);
+        boolean passed = new NetworkTablesAllocationCheck(server).run();
+        System.exit(passed ? 0 : 1);
+    }
+
+    private boolean run() {
+        if (!m_threads.isThreadAllocatedMemorySupported()) {
+            System.out.println("Thread allocation counters are not supported by this JVM, skipping");
+            return true;
+        }
+        m_threads.setThreadAllocatedMemoryEnabled(true);
+
+        m_server.putTopic("alloc/subscribed", 0.0);
+        for (int i = 0; i < SUBSCRIBERS; i++) {
+            CountingConnection subscriber = new CountingConnection(m_server);
+            m_server.onMessage(subscriber, "[{\"method\":\"subscribe\",\"params\":{\"topics\":[\"/alloc/subscribed\"],\"subuid\":" + i + ",\"options\":{}}}]");
+            m_subscribers.add(subscriber);
+        }
+
+        m_server.putTopic("alloc/downsampled", 0.0);
+        CountingConnection downsampled = new CountingConnection(m_server);
+        m_server.onMessage(downsampled, "[{\"method\":\"subscribe\",\"params\":{\"topics\":[\"/alloc/downsampled\"],\"subuid\":0,\"options\":{\"periodic\":0.02,\"downsample\":\"minmax\"}}}]");
+
+        double baseline = measure(i -> {
+        });
+
+        boolean passed = true;
+        passed &= check("put double", baseline, i -> m_server.putTopic("alloc/double", (double) i));
+        passed &= check("put unchanged double", baseline, i -> m_server.putTopic("alloc/unchanged", 1.0));
+        passed &= check("put float", baseline, i -> m_server.putTopic("alloc/float", (float) i));
+        passed &= check("put integer", baseline, i -> m_server.putTopic("alloc/integer", (long) i));
+        passed &= check("put boolean", baseline, i -> m_server.putTopic("alloc/boolean", (i & 1) == 0));
+        passed &= check("put double to " + SUBSCRIBERS + " subscribers", baseline, i -> m_server.putTopic("alloc/subscribed", (double) i));
+        passed &= check("put double, downsampled", baseline, i -> m_server.putTopic("alloc/downsampled", (double) i));
+        m_server.setManualFlush(true);
+        passed &= check("put double, manual flush", baseline, i -> m_server.putTopic("alloc/subscribed", (double) i));
+        m_server.setManualFlush(false);
+
+        for (CountingConnection subscriber : m_subscribers) {
+            if (subscriber.m_frames < ITERATIONS) {
+                System.out.println("FAIL subscriber received " + subscriber.m_frames + " frames, expected at least " + ITERATIONS);
+                passed = false;
+            }
+        }
+        return passed;
+    }
+
+    private boolean check(String name, double baseline, Operation operation) {
+        double bytes = Math.max(0, measure(operation) - baseline);
+        boolean passed = bytes <= MAX_BYTES_PER_OPERATION;
+        System.out.printf("%-4s %-32s %8.3f bytes/op%n", passed ? "OK" : "FAIL", name, bytes);
+        return passed;
+    }
+
+    /**
+     * @return the bytes allocated per operation
+     */
+    private double measure(Operation operation) {
+        for (int i = 0; i < WARMUP; i++) {
+            operation.run(i);
+        }
+
+        long before = m_threads.getThreadAllocatedBytes(m_threadId);
+        for (int i = 0; i < ITERATIONS; i++) {
+            operation.run(WARMUP + i);
+        }
+        long after = m_threads.getThreadAllocatedBytes(m_threadId);
+        return (after - before) / (double) ITERATIONS;
+    }
+
+    private interface Operation {
+        void run(int i);
+    }
+
+    /**
+     * Open connection counting the frames sent to it without keeping them.
+     */
+    private static class CountingConnection extends WebSocketImpl {
+        private long m_frames = 0;
+
+        CountingConnection(NT4Server server) {
+            super(server, new Draft_6455());
+        }
+
+        @Override
+        public void send(ByteBuffer bytes) {
+            m_frames++;
+            bytes.position(bytes.limit());
+        }
+
+        @Override
+        public void send(String text) {
+        }
+
+        @Override
+        public void send(byte[] bytes) {
+        }
+
+        @Override
+        public boolean isOpen() {
+            return true;
+        }
+    }
+}
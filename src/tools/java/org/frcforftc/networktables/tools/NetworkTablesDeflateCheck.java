@@ -0,0 +1,120 @@
+package org.frcforftc.networktables.tools;
+
+import org.frcforftc.networktables.NetworkTablesDeflateExtension;
+import org.java_websocket.extensions.IExtension;
+import org.java_websocket.framing.BinaryFrame;
+import org.java_websocket.framing.ContinuousFrame;
+import org.java_websocket.framing.DataFrame;
+import org.java_websocket.framing.TextFrame;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Round-trip check of {@link NetworkTablesDeflateExtension}.
+ * Frames are encoded by the extension of one side and validated and decoded by the extension of the other, the way
+ * Java-WebSocket does for a connection, without opening sockets. Messages under the threshold and messages sent
+ * with compression disabled are sent uncompressed and must be accepted by the peer, interleaved with compressed ones.
+ * <p>
+ * Run it with {@code ./gradlew deflateCheck}, it is part of {@code ./gradlew check}.
+ */
+public class NetworkTablesDeflateCheck {
+    private static final int SMALL = NetworkTablesDeflateExtension.DEFAULT_THRESHOLD / 4;
+    private static final int LARGE = NetworkTablesDeflateExtension.DEFAULT_THRESHOLD * 16;
+
+    private final Random m_random = new Random(42);
+    private final IExtension m_sender;
+    private final IExtension m_receiver;
+
+    private NetworkTablesDeflateCheck(NetworkTablesDeflateExtension sender, NetworkTablesDeflateExtension receiver) {
+        // The draft uses a copy of the extension per connection
+        this.m_sender = sender.copyInstance();
+        this.m_receiver = receiver.copyInstance();
+    }
+
+    public static void main(String[] args) {
+        boolean passed = true;
+        passed &= new NetworkTablesDeflateCheck(new NetworkTablesDeflateExtension(), new NetworkTablesDeflateExtension()).run("compressing");
+        passed &= new NetworkTablesDeflateCheck(new NetworkTablesDeflateExtension(false, 0), new NetworkTablesDeflateExtension()).run("not compressing");
+        System.exit(passed ? 0 : 1);
+    }
+
+    private boolean run(String name) {
+        boolean passed = true;
+        passed &= check(name + ", small text", new TextFrame(), SMALL);
+        passed &= check(name + ", large binary", new BinaryFrame(), LARGE);
+        passed &= check(name + ", small binary", new BinaryFrame(), SMALL);
+        passed &= check(name + ", large text", new TextFrame(), LARGE);
+        passed &= checkFragmented(name + ", fragmented", LARGE);
+        passed &= check(name + ", small text", new TextFrame(), SMALL);
+        return passed;
+    }
+
+    private boolean check(String name, DataFrame frame, int size) {
+        byte[] payload = payload(size);
+        frame.setPayload(ByteBuffer.wrap(payload.clone()));
+        frame.setFin(true);
+        try {
+            boolean[] compressed = new boolean[1];
+            byte[] received = roundTrip(frame, compressed);
+            return report(name, Arrays.equals(payload, received), compressed[0] ? "compressed" : "uncompressed");
+        } catch (Exception ex) {
+            return report(name, false, ex.toString());
+        }
+    }
+
+    private boolean checkFragmented(String name, int size) {
+        byte[] first = payload(size);
+        byte[] second = payload(size);
+        TextFrame start = new TextFrame();
+        start.setPayload(ByteBuffer.wrap(first.clone()));
+        start.setFin(false);
+        ContinuousFrame end = new ContinuousFrame();
+        end.setPayload(ByteBuffer.wrap(second.clone()));
+        end.setFin(true);
+        try {
+            boolean[] compressed = new boolean[1];
+            boolean passed = Arrays.equals(first, roundTrip(start, compressed)) & Arrays.equals(second, roundTrip(end, new boolean[1]));
+            return report(name, passed, compressed[0] ? "compressed" : "uncompressed");
+        } catch (Exception ex) {
+            return report(name, false, ex.toString());
+        }
+    }
+
+    /**
+     * @param compressed set to whether the frame was sent compressed
+     * @return the payload received by the peer
+     */
+    private byte[] roundTrip(DataFrame frame, boolean[] compressed) throws Exception {
+        m_sender.encodeFrame(frame);
+        compressed[0] = frame.isRSV1();
+        // The peer reads the payload from the wire into a buffer of its own
+        frame.setPayload(ByteBuffer.wrap(remaining(frame.getPayloadData())));
+        m_receiver.isFrameValid(frame);
+        m_receiver.decodeFrame(frame);
+        return remaining(frame.getPayloadData());
+    }
+
+    private static byte[] remaining(ByteBuffer data) {
+        byte[] bytes = new byte[data.remaining()];
+        data.duplicate().get(bytes);
+        return bytes;
+    }
+
+    /**
+     * @return text-like bytes that compress, with some noise
+     */
+    private byte[] payload(int size) {
+        byte[] payload = new byte[size];
+        for (int i = 0; i < size; i++) {
+            payload[i] = (byte) (m_random.nextInt(8) == 0 ? 'a' + m_random.nextInt(26) : "networktables/".charAt(i % 14));
+        }
+        return payload;
+    }
+
+    private static boolean report(String name, boolean passed, String detail) {
+        System.out.printf("%-4s %-36s %s%n", passed ? "OK" : "FAIL", name, detail);
+        return passed;
+    }
+}
@@ -0,0 +1,83 @@
+package org.frcforftc.networktables.tools;
+
+import org.frcforftc.networktables.NT4Server;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+
+/**
+ * Memory footprint regression check for the topics of an {@link NT4Server}.
+ * Puts {@link #TOPICS} topics of each kind and measures the heap they retain after a full collection, the topic
+ * names are created before the measurement so only the structures of the server and its entries are counted.
+ * The check fails when a kind of topic retains more than {@link #MAX_BYTES_PER_TOPIC} bytes per topic.
+ * <p>
+ * Run it with {@code ./gradlew footprintCheck}, it is part of {@code ./gradlew check}. It runs with a fixed heap
+ * and the serial collector so the heap usage read after a collection only holds reachable objects.
+ */
+public class NetworkTablesFootprintCheck {
+    /**
+     * Topics put per kind
+     */
+    private static final int TOPICS = 10_000;
+    /**
+     * Allowed retained bytes per topic
+     */
+    private static final double MAX_BYTES_PER_TOPIC = 320;
+    /**
+     * Full collections run before reading the heap usage
+     */
+    private static final int COLLECTIONS = 5;
+
+    private final MemoryMXBean m_memory = ManagementFactory.getMemoryMXBean();
+    private final NT4Server m_server;
+
+    private NetworkTablesFootprintCheck(NT4Server server) {
+        this.m_server = server;
+    }
+
+    public static void main(String[] args) {
+        NT4Server server = NT4Server.createInstance("localhost", 5813);
+        boolean passed = new NetworkTablesFootprintCheck(server).run();
+        System.exit(passed ? 0 : 1);
+    }
+
+    private boolean run() {
+        boolean passed = true;
+        passed &= check("double topics", "footprint/double/", (topic, i) -> m_server.putTopic(topic, (double) i));
+        passed &= check("boolean topics", "footprint/boolean/", (topic, i) -> m_server.putTopic(topic, (i & 1) == 0));
+        passed &= check("string topics", "footprint/string/", (topic, i) -> m_server.putTopic(topic, "value"));
+        passed &= check("double[] topics", "footprint/doubles/", (topic, i) -> m_server.putTopic(topic, new double[0]));
+        return passed;
+    }
+
+    private boolean check(String name, String prefix, Put put) {
+        String[] topics = new String[TOPICS];
+        for (int i = 0; i < TOPICS; i++) {
+            topics[i] = prefix + i;
+        }
+
+        long before = usedHeap();
+        for (int i = 0; i < TOPICS; i++) {
+            put.put(topics[i], i);
+        }
+        double bytes = (usedHeap() - before) / (double) TOPICS;
+
+        boolean passed = bytes <= MAX_BYTES_PER_TOPIC;
+        System.out.printf("%-4s %-24s %8.1f bytes/topic%n", passed ? "OK" : "FAIL", name, bytes);
+        return passed;
+    }
+
+    /**
+     * @return the bytes used on the heap after full collections
+     */
+    private long usedHeap() {
+        for (int i = 0; i < COLLECTIONS; i++) {
+            System.gc();
+        }
+        return m_memory.getHeapMemoryUsage().getUsed();
+    }
+
+    private interface Put {
+        void put(String topic, int i);
+    }
+}
@@ -0,0 +1,402 @@
+package org.frcforftc.networktables.tools;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.frcforftc.networktables.NT4Client;
+import org.frcforftc.networktables.NT4Server;
+import org.frcforftc.networktables.NetworkTablesDeflateExtension;
+import org.frcforftc.networktables.NetworkTablesMetrics;
+
+import java.io.File;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * End-to-end load generator for {@link NT4Server}.
+ * Starts a server, connects clients to it over loopback, publishes topics on the server at the
+ * configured rates and measures the time between a put and the value arriving at each subscriber.
+ * <p>
+ * Run it with {@code ./gradlew loadTest -PloadTestArgs="--clients=8 --topics=200"}, the options are:
+ * <ul>
+ *     <li>{@code --port} the port of the server, 5811 by default</li>
+ *     <li>{@code --clients} the number of clients, 4 by default</li>
+ *     <li>{@code --topics} the number of topics, 100 by default</li>
+ *     <li>{@code --rates} comma separated publish rates in Hz assigned round robin to the topics, 50 by default</li>
+ *     <li>{@code --types} comma separated topic types assigned round robin to the topics, out of
+ *     double, int, float, string, double[], int[], float[] and string[], double by default</li>
+ *     <li>{@code --arrayLength} the length of array values, 8 by default</li>
+ *     <li>{@code --fanout} the number of clients subscribing to each topic, all clients by default</li>
+ *     <li>{@code --warmup} seconds to publish before measuring, 2 by default</li>
+ *     <li>{@code --duration} seconds to measure, 10 by default</li>
+ *     <li>{@code --compression} whether permessage-deflate is negotiated, false by default</li>
+ *     <li>{@code --output} the JSON file the results are written to, build/loadtest/result.json by default</li>
+ * </ul>
+ */
+public class NetworkTablesLoadTool {
+    /**
+     * Number of send times remembered per topic, values older than this can't be matched to their send time
+     */
+    private static final int SEND_TIME_RING = 1024;
+
+    private final Options m_options;
+    private final String[] m_topicNames;
+    private final String[] m_topicTypes;
+    private final long[] m_topicPeriods;
+    private final Map<String, Integer> m_topicIndices = new HashMap<>();
+    private final AtomicLongArray m_sendTimes;
+    private volatile boolean m_recording = false;
+
+    private NetworkTablesLoadTool(Options options) {
+        this.m_options = options;
+        this.m_topicNames = new String[options.topics];
+        this.m_topicTypes = new String[options.topics];
+        this.m_topicPeriods = new long[options.topics];
+        this.m_sendTimes = new AtomicLongArray(options.topics * SEND_TIME_RING);
+
+        for (int i = 0; i < options.topics; i++) {
+            m_topicNames[i] = "load/topic" + i;
+            m_topicTypes[i] = options.types[i % options.types.length];
+            m_topicPeriods[i] = (long) (1e9 / options.rates[i % options.rates.length]);
+            m_topicIndices.put("/" + m_topicNames[i], i);
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        Options options = Options.parse(args);
+        ObjectNode result = new NetworkTablesLoadTool(options).run();
+
+        ObjectMapper mapper = new ObjectMapper();
+        File output = new File(options.output);
+        if (output.getAbsoluteFile().getParentFile() != null) {
+            output.getAbsoluteFile().getParentFile().mkdirs();
+        }
+        mapper.writerWithDefaultPrettyPrinter().writeValue(output, result);
+
+        System.out.println(mapper.writerWithDefaultPrettyPrinter().writeValueAsString(result.get("results")));
+        System.out.println("Results written to " + output.getAbsolutePath());
+        System.exit(0);
+    }
+
+    private ObjectNode run() throws Exception {
+        NT4Server server = NT4Server.createInstance("localhost", m_options.port, m_options.compression ? new NetworkTablesDeflateExtension() : null);
+        // Reruns bind the port while the socket of the previous run is still in TIME_WAIT
+        server.setReuseAddr(true);
+        server.start();
+        Thread.sleep(500); // Lets the server bind its socket
+
+        for (int i = 0; i < m_options.topics; i++) {
+            server.putTopic(m_topicNames[i], createValue(m_topicTypes[i], 0));
+        }
+
+        List<NT4Client> clients = new ArrayList<>();
+        List<LatencyRecorder> recorders = new ArrayList<>();
+        for (int c = 0; c < m_options.clients; c++) {
+            NT4Client client = new NT4Client(new URI("ws://localhost:" + m_options.port + "/nt/loadtest" + c), m_options.compression ? new NetworkTablesDeflateExtension() : null);
+            LatencyRecorder recorder = new LatencyRecorder();
+            client.setValueListener((topic, timestamp, value) -> onValue(recorder, topic, value));
+            connect(client);
+
+            for (int t = 0; t < m_options.topics; t++) {
+                if ((t + c) % m_options.clients < m_options.fanout) {
+                    client.subscribe(m_topicNames[t]);
+                }
+            }
+            clients.add(client);
+            recorders.add(recorder);
+        }
+        Thread.sleep(500); // Lets the server process the subscriptions
+
+        Publisher publisher = new Publisher(server);
+        Thread publisherThread = new Thread(publisher, "NT4LoadTool-Publisher");
+        publisherThread.setDaemon(true);
+        publisherThread.start();
+
+        Thread.sleep((long) (m_options.warmupSeconds * 1000));
+        NetworkTablesMetrics metrics = server.getMetrics();
+        long bytesSentBefore = metrics.getBytesSent();
+        long framesSentBefore = metrics.getFramesSent();
+        long publishedBefore = publisher.getPublished();
+        long start = System.nanoTime();
+        m_recording = true;
+
+        Thread.sleep((long) (m_options.durationSeconds * 1000));
+        m_recording = false;
+        double elapsed = (System.nanoTime() - start) / 1e9;
+        long published = publisher.getPublished() - publishedBefore;
+        long bytesSent = metrics.getBytesSent() - bytesSentBefore;
+        long framesSent = metrics.getFramesSent() - framesSentBefore;
+        publisher.stop();
+        publisherThread.join();
+
+        for (NT4Client client : clients) {
+            client.close();
+        }
+        server.stop(1000);
+
+        return createResult(recorders, published, bytesSent, framesSent, elapsed);
+    }
+
+    private static void connect(NT4Client client) throws InterruptedException {
+        if (!client.connectBlocking()) {
+            throw new IllegalStateException("Could not connect to the server");
+        }
+    }
+
+    private void onValue(LatencyRecorder recorder, String topic, Object value) {
+        long received = System.nanoTime();
+        if (!m_recording || topic == null) return;
+
+        Integer index = m_topicIndices.get(topic);
+        if (index == null) return;
+
+        long sequence = sequenceOf(value);
+        if (sequence < 0) return;
+        long sent = m_sendTimes.get(index * SEND_TIME_RING + (int) (sequence % SEND_TIME_RING));
+        if (sent != 0) {
+            recorder.record(received - sent);
+        }
+    }
+
+    private ObjectNode createResult(List<LatencyRecorder> recorders, long published, long bytesSent, long framesSent, double elapsed) {
+        long[] latencies = new long[0];
+        for (LatencyRecorder recorder : recorders) {
+            long[] samples = recorder.getSamples();
+            int offset = latencies.length;
+            latencies = Arrays.copyOf(latencies, offset + samples.length);
+            System.arraycopy(samples, 0, latencies, offset, samples.length);
+        }
+        Arrays.sort(latencies);
+
+        ObjectMapper mapper = new ObjectMapper();
+        ObjectNode root = mapper.createObjectNode();
+
+        ObjectNode config = root.putObject("config");
+        config.put("clients", m_options.clients);
+        config.put("topics", m_options.topics);
+        ArrayNode rates = config.putArray("ratesHz");
+        for (double rate : m_options.rates) rates.add(rate);
+        ArrayNode types = config.putArray("types");
+        for (String type : m_options.types) types.add(type);
+        config.put("arrayLength", m_options.arrayLength);
+        config.put("fanout", m_options.fanout);
+        config.put("warmupSeconds", m_options.warmupSeconds);
+        config.put("durationSeconds", m_options.durationSeconds);
+        config.put("compression", m_options.compression);
+
+        ObjectNode results = root.putObject("results");
+        results.put("elapsedSeconds", elapsed);
+        results.put("published", published);
+        results.put("received", latencies.length);
+        results.put("publishedPerSecond", published / elapsed);
+        results.put("receivedPerSecond", latencies.length / elapsed);
+        results.put("bytesSentPerSecond", bytesSent / elapsed);
+        results.put("framesSentPerSecond", framesSent / elapsed);
+
+        ObjectNode latency = results.putObject("latencyUs");
+        latency.put("p50", percentile(latencies, 0.5) / 1e3);
+        latency.put("p99", percentile(latencies, 0.99) / 1e3);
+        latency.put("p999", percentile(latencies, 0.999) / 1e3);
+        latency.put("max", latencies.length == 0 ? 0 : latencies[latencies.length - 1] / 1e3);
+        latency.put("mean", mean(latencies) / 1e3);
+        return root;
+    }
+
+    private static long percentile(long[] sorted, double percentile) {
+        if (sorted.length == 0) return 0;
+        int index = (int) Math.ceil(percentile * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(sorted.length - 1, index))];
+    }
+
+    private static double mean(long[] values) {
+        if (values.length == 0) return 0;
+        double sum = 0;
+        for (long value : values) sum += value;
+        return sum / values.length;
+    }
+
+    private Object createValue(String type, long sequence) {
+        switch (type) {
+            case "double":
+                return (double) sequence;
+            case "int":
+                return (int) sequence;
+            case "float":
+                return (float) sequence;
+            case "string":
+                return Long.toString(sequence);
+            case "double[]":
+                double[] doubles = new double[m_options.arrayLength];
+                doubles[0] = sequence;
+                return doubles;
+            case "int[]":
+                int[] ints = new int[m_options.arrayLength];
+                ints[0] = (int) sequence;
+                return ints;
+            case "float[]":
+                float[] floats = new float[m_options.arrayLength];
+                floats[0] = sequence;
+                return floats;
+            case "string[]":
+                String[] strings = new String[m_options.arrayLength];
+                Arrays.fill(strings, "");
+                strings[0] = Long.toString(sequence);
+                return strings;
+            default:
+                throw new IllegalArgumentException("Unsupported topic type: " + type);
+        }
+    }
+
+    private static long sequenceOf(Object value) {
+        if (value instanceof Number) return ((Number) value).longValue();
+        if (value instanceof String) return Long.parseLong((String) value);
+        if (value instanceof double[]) return (long) ((double[]) value)[0];
+        if (value instanceof int[]) return ((int[]) value)[0];
+        if (value instanceof float[]) return (long) ((float[]) value)[0];
+        if (value instanceof String[]) return Long.parseLong(((String[]) value)[0]);
+        return -1;
+    }
+
+    /**
+     * Puts every topic on the server when it is due.
+     */
+    private class Publisher implements Runnable {
+        private final NT4Server m_server;
+        private final long[] m_sequences = new long[m_options.topics];
+        private final long[] m_nextPublish = new long[m_options.topics];
+        private volatile boolean m_running = true;
+        private volatile long m_published = 0;
+
+        Publisher(NT4Server server) {
+            this.m_server = server;
+        }
+
+        @Override
+        public void run() {
+            long start = System.nanoTime();
+            for (int i = 0; i < m_nextPublish.length; i++) {
+                m_nextPublish[i] = start + m_topicPeriods[i] * i / m_nextPublish.length; // Spreads the topics over their period
+            }
+
+            while (m_running) {
+                long now = System.nanoTime();
+                long published = m_published;
+                for (int i = 0; i < m_topicNames.length; i++) {
+                    if (now - m_nextPublish[i] < 0) continue;
+                    m_nextPublish[i] += m_topicPeriods[i];
+
+                    long sequence = ++m_sequences[i];
+                    m_sendTimes.set(i * SEND_TIME_RING + (int) (sequence % SEND_TIME_RING), System.nanoTime());
+                    m_server.putTopic(m_topicNames[i], createValue(m_topicTypes[i], sequence));
+                    published++;
+                }
+                m_published = published;
+                Thread.yield();
+            }
+        }
+
+        long getPublished() {
+            return m_published;
+        }
+
+        void stop() {
+            m_running = false;
+        }
+    }
+
+    /**
+     * Latencies received by a single client, only written by the client's thread.
+     */
+    private static class LatencyRecorder {
+        private long[] m_samples = new long[1 << 16];
+        private int m_size = 0;
+
+        synchronized void record(long nanos) {
+            if (m_size == m_samples.length) {
+                m_samples = Arrays.copyOf(m_samples, m_samples.length * 2);
+            }
+            m_samples[m_size++] = nanos;
+        }
+
+        synchronized long[] getSamples() {
+            return Arrays.copyOf(m_samples, m_size);
+        }
+    }
+
+    /**
+     * Command line options of the tool.
+     */
+    private static class Options {
+        int port = 5811;
+        int clients = 4;
+        int topics = 100;
+        double[] rates = {50};
+        String[] types = {"double"};
+        int arrayLength = 8;
+        int fanout = -1;
+        double warmupSeconds = 2;
+        double durationSeconds = 10;
+        boolean compression = false;
+        String output = "build/loadtest/result.json";
+
+        static Options parse(String[] args) {
+            Options options = new Options();
+            for (String arg : args) {
+                if (arg.isEmpty()) continue;
+                if (!arg.startsWith("--") || !arg.contains("=")) {
+                    throw new IllegalArgumentException("Expected --option=value but got " + arg);
+                }
+
+                String key = arg.substring(2, arg.indexOf('='));
+                String value = arg.substring(arg.indexOf('=') + 1);
+                switch (key) {
+                    case "port":
+                        options.port = Integer.parseInt(value);
+                        break;
+                    case "clients":
+                        options.clients = Integer.parseInt(value);
+                        break;
+                    case "topics":
+                        options.topics = Integer.parseInt(value);
+                        break;
+                    case "rates":
+                        options.rates = Arrays.stream(value.split(",")).mapToDouble(Double::parseDouble).toArray();
+                        break;
+                    case "types":
+                        options.types = value.split(",");
+                        break;
+                    case "arrayLength":
+                        options.arrayLength = Math.max(1, Integer.parseInt(value));
+                        break;
+                    case "fanout":
+                        options.fanout = Integer.parseInt(value);
+                        break;
+                    case "warmup":
+                        options.warmupSeconds = Double.parseDouble(value);
+                        break;
+                    case "duration":
+                        options.durationSeconds = Double.parseDouble(value);
+                        break;
+                    case "compression":
+                        options.compression = Boolean.parseBoolean(value);
+                        break;
+                    case "output":
+                        options.output = value;
+                        break;
+                    default:
+                        throw new IllegalArgumentException("Unknown option " + key);
+                }
+            }
+
+            if (options.fanout < 0 || options.fanout > options.clients) {
+                options.fanout = options.clients;
+            }
+            return options;
+        }
+    }
+}
@@ -0,0 +1,113 @@
+package org.frcforftc.networktables.tools;
+
+import org.frcforftc.networktables.NT4Client;
+import org.frcforftc.networktables.NT4Server;
+import org.frcforftc.networktables.NetworkTablesLoopback;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Measures the protocol overhead of NT4 without the network: clients are connected to the server through a
+ * {@link NetworkTablesLoopback}, so the time covers encoding, fan-out and decoding on a single thread, without
+ * WebSocket framing, sockets and thread handoffs.
+ * <p>
+ * Every iteration puts a new double to every topic then delivers the frames to all the clients, which are subscribed
+ * to all the topics.
+ * Run it with {@code ./gradlew loopbackBenchmark -PloopbackBenchmarkArgs="--clients=1000 --topics=20"}, the options are:
+ * <ul>
+ *     <li>{@code --clients} the number of clients, 100 by default</li>
+ *     <li>{@code --topics} the number of topics, 10 by default</li>
+ *     <li>{@code --warmup} iterations run before measuring, 1000 by default</li>
+ *     <li>{@code --iterations} iterations measured, 10000 by default</li>
+ * </ul>
+ */
+public class NetworkTablesLoopbackBenchmark {
+    private int m_clients = 100;
+    private int m_topics = 10;
+    private int m_warmup = 1000;
+    private int m_iterations = 10000;
+
+    private final AtomicLong m_received = new AtomicLong();
+
+    public static void main(String[] args) {
+        NetworkTablesLoopbackBenchmark benchmark = new NetworkTablesLoopbackBenchmark();
+        benchmark.parse(args);
+        benchmark.run();
+        System.exit(0);
+    }
+
+    private void run() {
+        NT4Server server = NT4Server.createInstance("localhost", 5813);
+        NetworkTablesLoopback loopback = new NetworkTablesLoopback(server);
+        String[] topics = new String[m_topics];
+        for (int t = 0; t < m_topics; t++) {
+            topics[t] = "bench/topic" + t;
+            server.putTopic(topics[t], 0.0);
+        }
+
+        List<NT4Client> clients = new ArrayList<>(m_clients);
+        for (int c = 0; c < m_clients; c++) {
+            NT4Client client = loopback.createClient();
+            client.setValueListener((topic, timestamp, value) -> m_received.incrementAndGet());
+            client.connect();
+            for (String topic : topics) {
+                client.subscribe(topic);
+            }
+            clients.add(client);
+        }
+        loopback.runUntilIdle();
+
+        iterate(server, loopback, topics, 0, m_warmup);
+        m_received.set(0);
+        long start = System.nanoTime();
+        iterate(server, loopback, topics, m_warmup, m_iterations);
+        long elapsed = System.nanoTime() - start;
+
+        long expected = (long) m_iterations * m_topics * m_clients;
+        System.out.printf("%d clients, %d topics, %d iterations%n", m_clients, m_topics, m_iterations);
+        System.out.printf("received %d of %d values%n", m_received.get(), expected);
+        System.out.printf("%.1f ns per put, %.1f ns per delivered value, %.0f values/s%n",
+                elapsed / (double) (m_iterations * m_topics),
+                elapsed / (double) Math.max(1, m_received.get()),
+                m_received.get() / (elapsed / 1e9));
+    }
+
+    private static void iterate(NT4Server server, NetworkTablesLoopback loopback, String[] topics, int first, int count) {
+        for (int i = first; i < first + count; i++) {
+            for (String topic : topics) {
+                server.putTopic(topic, (double) i);
+            }
+            loopback.step();
+        }
+    }
+
+    private void parse(String[] args) {
+        for (String arg : args) {
+            if (arg.isEmpty()) continue;
+            if (!arg.startsWith("--") || !arg.contains("=")) {
+                throw new IllegalArgumentException("Expected --option=value but got " + arg);
+            }
+
+            String key = arg.substring(2, arg.indexOf('='));
+            int value = Integer.parseInt(arg.substring(arg.indexOf('=') + 1));
+            switch (key) {
+                case "clients":
+                    m_clients = value;
+                    break;
+                case "topics":
+                    m_topics = value;
+                    break;
+                case "warmup":
+                    m_warmup = value;
+                    break;
+                case "iterations":
+                    m_iterations = value;
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown option " + key);
+            }
+        }
+    }
+}